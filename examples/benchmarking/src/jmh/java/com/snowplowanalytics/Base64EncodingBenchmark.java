@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics;
+
+import com.snowplowanalytics.snowplow.tracker.Utils;
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways of Base64 encoding a context envelope of about 2 KB of JSON:
+ * serializing to a String and then encoding its bytes, or streaming the JSON through a Base64 encoder.
+ * Run with "-prof gc" and compare the "gc.alloc.rate.norm" results, the bytes allocated per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class Base64EncodingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Context {
+        Map<String, Object> envelope;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<Map<String, Object>> entities = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("deploymentId", "deployment-" + i + "-4c1f9a3e-2b7d-4e0a-9f51-1c8d2e6b7a90");
+                data.put("buildVersion", "2.14." + i + "-release+sha.8f3e2d1c");
+                data.put("tenant", "tenant-" + i);
+                data.put("region", "eu-west-1");
+                data.put("replicas", i);
+                entities.add(new SelfDescribingJson("iglu:com.acme/deployment/jsonschema/1-0-0", data).getMap());
+            }
+            envelope = new SelfDescribingJson(Constants.SCHEMA_CONTEXTS, entities).getMap();
+        }
+    }
+
+    @Benchmark
+    public String encodeJSONString(Context context) {
+        return Utils.base64Encode(Utils.mapToJSONString(context.envelope), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String streamJSONToBase64(Context context) {
+        return Utils.mapToBase64JSONString(context.envelope);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics;
+
+import com.snowplowanalytics.snowplow.tracker.Tracker;
+import com.snowplowanalytics.snowplow.tracker.configuration.TrackerConfiguration;
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.emitter.Emitter;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.events.SelfDescribing;
+import com.snowplowanalytics.snowplow.tracker.http.AbstractHttpClientAdapter;
+import com.snowplowanalytics.snowplow.tracker.http.RequestCompression;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the size of batch POST request bodies with and without compression.
+ * Each operation writes one batch of 50 events, as the BatchEmitter would send it.
+ * The "bytesPerEvent" secondary result is the number of request body bytes sent per event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CompressionBenchmark {
+    private static final int BATCH_SIZE = 50;
+
+    // Writes request bodies into a byte counter instead of a network connection
+    public static class CountingHttpClientAdapter extends AbstractHttpClientAdapter {
+        long bytesWritten = 0;
+
+        private final OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytesWritten++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytesWritten += len;
+            }
+        };
+
+        CountingHttpClientAdapter(RequestCompression compression) {
+            super("http://localhost", compression);
+        }
+
+        @Override
+        protected int doPost(String url, SelfDescribingJson payload) {
+            try {
+                writeBody(payload, counter);
+                return 200;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        protected int doPost(String url, String payload) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected int doGet(String url) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getHttpClient() {
+            return null;
+        }
+    }
+
+    // Collects tracked events, so that realistic payloads can be batched
+    public static class CollectingEmitter implements Emitter {
+        final List<TrackerPayload> payloads = new ArrayList<>();
+
+        @Override
+        public boolean add(TrackerPayload payload) {
+            return payloads.add(payload);
+        }
+
+        @Override
+        public void setBatchSize(int batchSize) {}
+
+        @Override
+        public void flushBuffer() {}
+
+        @Override
+        public int getBatchSize() {
+            return BATCH_SIZE;
+        }
+
+        @Override
+        public List<TrackerPayload> getBuffer() {
+            return payloads;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        @Param({"NONE", "GZIP"})
+        RequestCompression compression;
+
+        CountingHttpClientAdapter adapter;
+        SelfDescribingJson body;
+
+        @Setup(Level.Trial)
+        public void doSetUp() {
+            adapter = new CountingHttpClientAdapter(compression);
+
+            CollectingEmitter emitter = new CollectingEmitter();
+            Tracker tracker = new Tracker(new TrackerConfiguration("namespace", "appId"), emitter);
+
+            Map<String, Object> contextData = new HashMap<>();
+            contextData.put("userId", "3f5e2a1c-8d2b-4c0e-9a77-1f6b2c9d8e01");
+            contextData.put("plan", "enterprise");
+            contextData.put("region", "eu-west-1");
+            List<SelfDescribingJson> context = Collections.singletonList(
+                    new SelfDescribingJson("iglu:com.acme/user/jsonschema/1-0-0", contextData));
+
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                if (i % 2 == 0) {
+                    tracker.track(PageView.builder()
+                            .pageUrl("https://www.example.com/products/" + i)
+                            .pageTitle("Product " + i)
+                            .referrer("https://www.example.com/")
+                            .customContext(context)
+                            .build());
+                } else {
+                    Map<String, Object> eventData = new HashMap<>();
+                    eventData.put("sku", "SKU-" + i);
+                    eventData.put("quantity", i);
+                    tracker.track(SelfDescribing.builder()
+                            .eventData(new SelfDescribingJson("iglu:com.acme/add_to_basket/jsonschema/1-0-0", eventData))
+                            .customContext(context)
+                            .build());
+                }
+            }
+
+            List<Map<String, String>> maps = new ArrayList<>();
+            for (TrackerPayload payload : emitter.payloads) {
+                maps.add(payload.getMap());
+            }
+            body = new SelfDescribingJson(Constants.SCHEMA_PAYLOAD_DATA, maps);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireSize {
+        long bytes;
+        long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            events = 0;
+        }
+
+        public double bytesPerEvent() {
+            return events == 0 ? 0 : (double) bytes / events;
+        }
+    }
+
+    @Benchmark
+    public int postBatch(Batch batch, WireSize wireSize) {
+        long before = batch.adapter.bytesWritten;
+        int code = batch.adapter.post(batch.body);
+        wireSize.bytes += batch.adapter.bytesWritten - before;
+        wireSize.events += BATCH_SIZE;
+        return code;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics;
+
+import com.snowplowanalytics.snowplow.tracker.configuration.EmitterConfiguration;
+import com.snowplowanalytics.snowplow.tracker.configuration.NetworkConfiguration;
+import com.snowplowanalytics.snowplow.tracker.emitter.BatchEmitter;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the cost of sending a burst of events through the BatchEmitter.
+ * Each operation adds 10 000 events as fast as possible, then waits until they have all been sent.
+ * Requests complete immediately, so the result is dominated by the emitter's own task scheduling.
+ *
+ * The "tasksPerBatch" secondary result is the number of tasks scheduled on the emitter's executor
+ * for each batch sent. Run with "-prof gc" to see the allocation per burst.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class EmitterBurstBenchmark {
+    private static final int BURST_SIZE = 10000;
+
+    // Completes every request immediately, counting the events sent
+    public static class CountingHttpClientAdapter implements HttpClientAdapter {
+        final AtomicLong eventsSent = new AtomicLong(0);
+        final AtomicLong requests = new AtomicLong(0);
+
+        @Override
+        public int post(SelfDescribingJson payload) {
+            List<?> events = (List<?>) payload.getMap().get("data");
+            eventsSent.addAndGet(events.size());
+            requests.incrementAndGet();
+            return 200;
+        }
+
+        @Override
+        public int get(TrackerPayload payload) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getUrl() {
+            return null;
+        }
+
+        @Override
+        public Object getHttpClient() {
+            return null;
+        }
+    }
+
+    // Counts the tasks scheduled by the emitter
+    public static class CountingExecutor extends ScheduledThreadPoolExecutor {
+        final AtomicLong tasks = new AtomicLong(0);
+
+        CountingExecutor(int threadCount) {
+            super(threadCount);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.incrementAndGet();
+            return super.schedule(command, delay, unit);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Emitter {
+        @Param({"10", "50"})
+        int batchSize;
+
+        CountingHttpClientAdapter adapter;
+        CountingExecutor executor;
+        BatchEmitter emitter;
+        List<TrackerPayload> payloads;
+
+        @Setup(Level.Trial)
+        public void doSetUp() {
+            adapter = new CountingHttpClientAdapter();
+            executor = new CountingExecutor(4);
+            emitter = new BatchEmitter(
+                    new NetworkConfiguration(adapter),
+                    new EmitterConfiguration()
+                            .batchSize(batchSize)
+                            .bufferCapacity(BURST_SIZE * 2)
+                            .threadCount(4)
+                            .requestExecutorService(executor));
+
+            // Each event is in at most one request at a time, as every burst is sent before the next begins
+            payloads = new ArrayList<>();
+            for (int i = 0; i < BURST_SIZE; i++) {
+                payloads.add(PageView.builder()
+                        .pageUrl("https://www.example.com/" + i)
+                        .pageTitle("title")
+                        .referrer("referrer")
+                        .build()
+                        .getPayload());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            emitter.close();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Tasks {
+        long tasks;
+        long requests;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tasks = 0;
+            requests = 0;
+        }
+
+        public double tasksPerBatch() {
+            return requests == 0 ? 0 : (double) tasks / requests;
+        }
+    }
+
+    @Benchmark
+    public long burst(Emitter state, Tasks tasks) {
+        long tasksBefore = state.executor.tasks.get();
+        long requestsBefore = state.adapter.requests.get();
+        long target = state.adapter.eventsSent.get() + BURST_SIZE;
+
+        for (TrackerPayload payload : state.payloads) {
+            state.emitter.add(payload);
+        }
+        // Events left over from an incomplete batch are sent straight away
+        state.emitter.flushBuffer();
+        while (state.adapter.eventsSent.get() < target) {
+            Thread.yield();
+        }
+
+        tasks.tasks += state.executor.tasks.get() - tasksBefore;
+        tasks.requests += state.adapter.requests.get() - requestsBefore;
+        return target;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics;
+
+import com.snowplowanalytics.snowplow.tracker.Tracker;
+import com.snowplowanalytics.snowplow.tracker.configuration.TrackerConfiguration;
+import com.snowplowanalytics.snowplow.tracker.emitter.Emitter;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.payload.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of Tracker.track() from 64 threads with each built-in EventIdGenerator.
+ * Tracked events are discarded, so that the emitter doesn't affect the result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+@Threads(64)
+public class EventIdGeneratorBenchmark {
+
+    public static class DiscardingEmitter implements Emitter {
+        @Override
+        public boolean add(TrackerPayload payload) {
+            // The eventId is serialized when the event is sent
+            payload.getMap().get("eid");
+            return true;
+        }
+
+        @Override
+        public void setBatchSize(int batchSize) {}
+
+        @Override
+        public void flushBuffer() {}
+
+        @Override
+        public int getBatchSize() {
+            return 0;
+        }
+
+        @Override
+        public List<TrackerPayload> getBuffer() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @State(Scope.Benchmark)
+    public static class TrackerState {
+        @Param({"secureRandom", "threadLocalRandom", "timeOrdered", "pooled"})
+        String generator;
+
+        Tracker tracker;
+        EventIdGenerator eventIdGenerator;
+
+        PageView pageViewEvent = PageView.builder()
+                .pageUrl("url")
+                .pageTitle("title")
+                .referrer("referrer")
+                .build();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch (generator) {
+                case "threadLocalRandom":
+                    eventIdGenerator = new ThreadLocalRandomEventIdGenerator();
+                    break;
+                case "timeOrdered":
+                    eventIdGenerator = new TimeOrderedEventIdGenerator();
+                    break;
+                case "pooled":
+                    eventIdGenerator = new PooledEventIdGenerator(100_000);
+                    break;
+                default:
+                    eventIdGenerator = new SecureRandomEventIdGenerator();
+            }
+            TrackerConfiguration trackerConfig = new TrackerConfiguration("namespace", "appId")
+                    .eventIdGenerator(eventIdGenerator);
+            tracker = new Tracker(trackerConfig, new DiscardingEmitter());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (eventIdGenerator instanceof PooledEventIdGenerator) {
+                ((PooledEventIdGenerator) eventIdGenerator).close();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> trackEvent(TrackerState state) {
+        return state.tracker.track(state.pageViewEvent);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics;
+
+import com.snowplowanalytics.snowplow.tracker.emitter.BatchPayload;
+import com.snowplowanalytics.snowplow.tracker.emitter.EventStore;
+import com.snowplowanalytics.snowplow.tracker.emitter.InMemoryEventStore;
+import com.snowplowanalytics.snowplow.tracker.emitter.RingBufferEventStore;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares EventStore implementations with different numbers of producer threads.
+ * Each benchmark group has N threads adding events (as Tracker.track() would),
+ * and one thread removing batches (as the BatchEmitter would).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class EventStoreBenchmark {
+    private static final int BATCH_SIZE = 50;
+
+    @State(Scope.Group)
+    public static class Store {
+        @Param({"InMemoryEventStore", "RingBufferEventStore"})
+        String implementation;
+
+        EventStore eventStore;
+
+        TrackerPayload payload = PageView.builder()
+                .pageUrl("url")
+                .pageTitle("title")
+                .referrer("referrer")
+                .build()
+                .getPayload();
+
+        @Setup(Level.Iteration)
+        public void doSetUp() {
+            if (implementation.equals("RingBufferEventStore")) {
+                eventStore = new RingBufferEventStore(10000);
+            } else {
+                eventStore = new InMemoryEventStore(10000);
+            }
+        }
+    }
+
+    private static boolean produce(Store store) {
+        return store.eventStore.addEvent(store.payload);
+    }
+
+    private static void consume(Store store, Blackhole blackhole) {
+        BatchPayload batch = store.eventStore.getEventsBatch(BATCH_SIZE);
+        if (batch != null) {
+            store.eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+        }
+        blackhole.consume(batch);
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public boolean add1(Store store) {
+        return produce(store);
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public void drain1(Store store, Blackhole blackhole) {
+        consume(store, blackhole);
+    }
+
+    @Benchmark
+    @Group("producers8")
+    @GroupThreads(8)
+    public boolean add8(Store store) {
+        return produce(store);
+    }
+
+    @Benchmark
+    @Group("producers8")
+    @GroupThreads(1)
+    public void drain8(Store store, Blackhole blackhole) {
+        consume(store, blackhole);
+    }
+
+    @Benchmark
+    @Group("producers32")
+    @GroupThreads(32)
+    public boolean add32(Store store) {
+        return produce(store);
+    }
+
+    @Benchmark
+    @Group("producers32")
+    @GroupThreads(1)
+    public void drain32(Store store, Blackhole blackhole) {
+        consume(store, blackhole);
+    }
+
+    @Benchmark
+    @Group("producers64")
+    @GroupThreads(64)
+    public boolean add64(Store store) {
+        return produce(store);
+    }
+
+    @Benchmark
+    @Group("producers64")
+    @GroupThreads(1)
+    public void drain64(Store store, Blackhole blackhole) {
+        consume(store, blackhole);
+    }
+}
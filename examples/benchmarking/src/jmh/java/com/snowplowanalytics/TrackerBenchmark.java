@@ -16,6 +16,7 @@ import com.snowplowanalytics.snowplow.tracker.Tracker;
 import com.snowplowanalytics.snowplow.tracker.emitter.BatchEmitter;
 import com.snowplowanalytics.snowplow.tracker.emitter.Emitter;
 import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.events.Timing;
 import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
@@ -101,6 +102,12 @@ public class TrackerBenchmark {
                 .referrer("referrer")
                 .build();
 
+        Timing timingEvent = Timing.builder()
+                .category("category")
+                .variable("variable")
+                .timing(10)
+                .build();
+
         @Setup(Level.Iteration)
         public void doSetUp() {
             emitter = getEmitter();
@@ -119,4 +126,21 @@ public class TrackerBenchmark {
         trackerComponents.tracker.track(trackerComponents.pageViewEvent);
         blackhole.consume(trackerComponents);
     }
+
+    // The following benchmarks compare track() with trackFast().
+    // Run them with "-prof gc" and compare "gc.alloc.rate.norm", the bytes allocated per event.
+    @Benchmark
+    public void testTrackFastEvent(Blackhole blackhole, TrackerComponents trackerComponents, TrackerVersion trackerVersion) {
+        blackhole.consume(trackerComponents.tracker.trackFast(trackerComponents.pageViewEvent));
+    }
+
+    @Benchmark
+    public void testTrackTimingEvent(Blackhole blackhole, TrackerComponents trackerComponents, TrackerVersion trackerVersion) {
+        blackhole.consume(trackerComponents.tracker.track(trackerComponents.timingEvent));
+    }
+
+    @Benchmark
+    public void testTrackFastTimingEvent(Blackhole blackhole, TrackerComponents trackerComponents, TrackerVersion trackerVersion) {
+        blackhole.consume(trackerComponents.tracker.trackFast(trackerComponents.timingEvent));
+    }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker;
+
+// Java
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// This library
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadPairs;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+
+/**
+ * A bounded cache of encoded event contexts, used by a Tracker when events are tracked
+ * with the same context entities again and again.
+ *
+ * The entities are matched by content: two lists of entities with equal schemas and data
+ * share one contexts envelope, serialized to JSON (and base64 encoded, if configured) only once.
+ * Maps, Lists and Sets in the entity data are copied into the cache key, so changing them later
+ * causes a cache miss rather than a stale context. Other data objects are compared using their
+ * equals method and should not be changed after they are tracked.
+ *
+ * When the cache is full, the least recently used context is evicted. The cache is thread-safe.
+ */
+public class ContextCache {
+
+    private final int maximumSize;
+    private final boolean base64Encoded;
+    private final Map<Key, PayloadPairs> contexts;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates a ContextCache holding up to maximumSize encoded contexts.
+     *
+     * @param maximumSize the maximum number of contexts to keep
+     * @param base64Encoded whether contexts are base64 encoded (as "cx") or not (as "co")
+     */
+    public ContextCache(final int maximumSize, final boolean base64Encoded) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be greater than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.base64Encoded = base64Encoded;
+        this.contexts = new LinkedHashMap<Key, PayloadPairs>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PayloadPairs> eldest) {
+                return size() > ContextCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the encoded contexts envelope for a list of context entities,
+     * encoding it if it isn't cached.
+     *
+     * @param entities the context entities of an event
+     * @return the "cx" or "co" pair to add to the event payload
+     */
+    public PayloadPairs get(final List<SelfDescribingJson> entities) {
+        List<Map<String, Object>> entityMaps = new ArrayList<>(entities.size());
+        for (SelfDescribingJson entity : entities) {
+            entityMaps.add(entity.getMap());
+        }
+
+        Key key = new Key(entityMaps);
+        PayloadPairs pairs;
+        synchronized (contexts) {
+            pairs = contexts.get(key);
+        }
+        if (pairs != null) {
+            hitCount.increment();
+            return pairs;
+        }
+        missCount.increment();
+
+        // The context is encoded outside the lock. If another thread encodes the same one, the first is kept.
+        PayloadPairs encoded = encode(entityMaps);
+        Key copiedKey = new Key(copyList(entityMaps));
+        synchronized (contexts) {
+            pairs = contexts.get(copiedKey);
+            if (pairs == null) {
+                contexts.put(copiedKey, encoded);
+                pairs = encoded;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns the number of lookups that found an encoded context in the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to encode a context.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of cached contexts.
+     *
+     * @return the number of contexts
+     */
+    public int size() {
+        synchronized (contexts) {
+            return contexts.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached contexts.
+     *
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    private PayloadPairs encode(List<Map<String, Object>> entityMaps) {
+        SelfDescribingJson envelope = new SelfDescribingJson(Constants.SCHEMA_CONTEXTS, entityMaps);
+        if (base64Encoded) {
+            return new PayloadPairs(Collections.singletonMap(Parameter.CONTEXT_ENCODED, Utils.mapToBase64JSONString(envelope.getMap())));
+        }
+        return new PayloadPairs(Collections.singletonMap(Parameter.CONTEXT, envelope.toString()));
+    }
+
+    // Copies the collections in entity data, so that later changes to them don't affect a cached key
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            return copyList((List<?>) value);
+        }
+        if (value instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            for (Object element : (Set<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static List<Object> copyList(List<?> list) {
+        List<Object> copy = new ArrayList<>(list.size());
+        for (Object element : list) {
+            copy.add(copyValue(element));
+        }
+        return copy;
+    }
+
+    // The entity maps, compared by content
+    private static final class Key {
+        private final List<?> entityMaps;
+        private final int hashCode;
+
+        Key(List<?> entityMaps) {
+            this.entityMaps = entityMaps;
+            this.hashCode = entityMaps.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode && entityMaps.equals(key.entityMaps);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -19,15 +19,28 @@ import java.util.Map;
 // This library
 import com.snowplowanalytics.snowplow.tracker.configuration.SubjectConfiguration;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadPairs;
 
 /**
  * An object for managing extra event decoration.
  * All the properties are optional. However, the timezone is set by default,
  * to that of the server.
+ *
+ * The Tracker adds the pairs to each event from an immutable snapshot, which is
+ * created once and reused until one of the setters changes a pair.
+ * {@link #getSubject()} therefore returns a copy of the pairs: changing it doesn't change the Subject.
+ *
+ * Subjects returned by a {@link SubjectCache} are shared, and can't be changed:
+ * their setters throw UnsupportedOperationException. See {@link #isImmutable()}.
  */
 public class Subject {
 
-    private HashMap<String, String> standardPairs = new HashMap<>();
+    private final HashMap<String, String> standardPairs = new HashMap<>();
+    // Created when first needed, and discarded whenever a pair changes. It is only created or
+    // discarded while holding the Subject's monitor, so a snapshot of old pairs is never published.
+    private volatile PayloadPairs snapshot;
+    // Set for Subjects shared through a SubjectCache
+    private volatile boolean immutable = false;
 
     /**
      * Creates a Subject instance from a SubjectConfiguration.
@@ -60,7 +73,10 @@ public class Subject {
      * @param subject The subject from which the map is copied.
      */
     public Subject(Subject subject){
-        standardPairs.putAll(subject.getSubject());
+        synchronized (subject) {
+            standardPairs.putAll(subject.standardPairs);
+            snapshot = subject.snapshot;
+        }
     }
 
     /**
@@ -228,7 +244,7 @@ public class Subject {
      */
     public void setUserId(String userId) {
         if (userId != null) {
-            this.standardPairs.put(Parameter.UID, userId);
+            put(Parameter.UID, userId);
         }
     }
 
@@ -241,7 +257,7 @@ public class Subject {
     public void setScreenResolution(int width, int height) {
         if (width > 0 && height > 0) {
             String res = Integer.toString(width) + "x" + Integer.toString(height);
-            this.standardPairs.put(Parameter.RESOLUTION, res);
+            put(Parameter.RESOLUTION, res);
         }
     }
 
@@ -254,7 +270,7 @@ public class Subject {
     public void setViewPort(int width, int height) {
         if (width > 0 && height > 0) {
             String res = Integer.toString(width) + "x" + Integer.toString(height);
-            this.standardPairs.put(Parameter.VIEWPORT, res);
+            put(Parameter.VIEWPORT, res);
         }
     }
 
@@ -265,7 +281,7 @@ public class Subject {
      */
     public void setColorDepth(int depth) {
         if (depth > 0) {
-            this.standardPairs.put(Parameter.COLOR_DEPTH, Integer.toString(depth));
+            put(Parameter.COLOR_DEPTH, Integer.toString(depth));
         }
     }
 
@@ -277,7 +293,7 @@ public class Subject {
      */
     public void setTimezone(String timezone) {
         if (timezone != null) {
-            this.standardPairs.put(Parameter.TIMEZONE, timezone);
+            put(Parameter.TIMEZONE, timezone);
         }
     }
 
@@ -288,7 +304,7 @@ public class Subject {
      */
     public void setLanguage(String language) {
         if (language != null) {
-            this.standardPairs.put(Parameter.LANGUAGE, language);
+            put(Parameter.LANGUAGE, language);
         }
     }
 
@@ -300,7 +316,7 @@ public class Subject {
      */
     public void setIpAddress(String ipAddress) {
         if (ipAddress != null) {
-            this.standardPairs.put(Parameter.IP_ADDRESS, ipAddress);
+            put(Parameter.IP_ADDRESS, ipAddress);
         }
     }
 
@@ -312,7 +328,7 @@ public class Subject {
      */
     public void setUseragent(String useragent) {
         if (useragent != null) {
-            this.standardPairs.put(Parameter.USERAGENT, useragent);
+            put(Parameter.USERAGENT, useragent);
         }
     }
 
@@ -324,7 +340,7 @@ public class Subject {
      */
     public void setDomainUserId(String domainUserId) {
         if (domainUserId != null) {
-            this.standardPairs.put(Parameter.DOMAIN_UID, domainUserId);
+            put(Parameter.DOMAIN_UID, domainUserId);
         }
     }
 
@@ -336,7 +352,7 @@ public class Subject {
      */
     public void setDomainSessionId(String domainSessionId) {
         if (domainSessionId != null) {
-            this.standardPairs.put(Parameter.SESSION_UID, domainSessionId);
+            put(Parameter.SESSION_UID, domainSessionId);
         }
     }
 
@@ -348,16 +364,62 @@ public class Subject {
      */
     public void setNetworkUserId(String networkUserId) {
         if (networkUserId != null) {
-            this.standardPairs.put(Parameter.NETWORK_UID, networkUserId);
+            put(Parameter.NETWORK_UID, networkUserId);
+        }
+    }
+
+    private synchronized void put(String key, String value) {
+        if (immutable) {
+            throw new UnsupportedOperationException("This Subject is shared by a SubjectCache and can't be changed");
         }
+        standardPairs.put(key, value);
+        snapshot = null;
     }
 
     /**
-     * Gets the Subject pairs.
+     * Prevents any further changes, so that the Subject can be shared between threads.
+     */
+    void makeImmutable() {
+        getSnapshot();
+        immutable = true;
+    }
+
+    /**
+     * Returns whether the Subject can be changed. Subjects returned by a SubjectCache can't be.
+     *
+     * @return whether the setters will throw UnsupportedOperationException
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    /**
+     * Gets a copy of the Subject pairs.
+     * Changing the returned Map doesn't change the Subject: use the setters to change the pairs.
      *
      * @return the stored k-v pairs
      */
-    public Map<String, String> getSubject() {
-        return this.standardPairs;
+    public synchronized Map<String, String> getSubject() {
+        return new HashMap<>(standardPairs);
+    }
+
+    /**
+     * Gets an immutable snapshot of the Subject pairs, to add to event payloads.
+     * The same snapshot is returned until one of the pairs changes.
+     *
+     * @return the current pairs
+     */
+    public PayloadPairs getSnapshot() {
+        PayloadPairs current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new PayloadPairs(standardPairs);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
     }
 }
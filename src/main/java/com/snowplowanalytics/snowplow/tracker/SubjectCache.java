@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker;
+
+// Java
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// This library
+import com.snowplowanalytics.snowplow.tracker.configuration.SubjectConfiguration;
+
+/**
+ * A bounded cache of immutable Subjects, for applications that create a Subject for every
+ * incoming request. Requests from the same user, with the same SubjectConfiguration properties,
+ * share one Subject, and so one snapshot of its pairs.
+ *
+ * When the cache is full, the least recently used Subject is evicted. The cache is thread-safe.
+ *
+ * The returned Subjects can't be changed: their setters throw UnsupportedOperationException.
+ * Use {@link Subject#Subject(Subject)} to create a modifiable copy.
+ */
+public class SubjectCache {
+
+    private final int maximumSize;
+    private final Map<Key, Subject> subjects;
+
+    /**
+     * Creates a SubjectCache holding up to maximumSize Subjects.
+     *
+     * @param maximumSize the maximum number of Subjects to keep
+     */
+    public SubjectCache(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be greater than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.subjects = new LinkedHashMap<Key, Subject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Subject> eldest) {
+                return size() > SubjectCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared Subject for a SubjectConfiguration, creating it if it isn't cached.
+     * The configuration is copied, so it can be reused or changed afterwards.
+     *
+     * @param subjectConfig a SubjectConfiguration
+     * @return an immutable Subject
+     */
+    public Subject get(final SubjectConfiguration subjectConfig) {
+        Key key = new Key(subjectConfig);
+        Subject subject;
+        synchronized (subjects) {
+            subject = subjects.get(key);
+        }
+        if (subject != null) {
+            return subject;
+        }
+
+        // The Subject is created outside the lock. If another thread creates the same one, the first is kept.
+        Subject created = new Subject(subjectConfig);
+        created.makeImmutable();
+        synchronized (subjects) {
+            subject = subjects.get(key);
+            if (subject == null) {
+                subjects.put(key, created);
+                subject = created;
+            }
+        }
+        return subject;
+    }
+
+    /**
+     * Returns the number of cached Subjects.
+     *
+     * @return the number of Subjects
+     */
+    public int size() {
+        synchronized (subjects) {
+            return subjects.size();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached Subjects.
+     *
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    // The SubjectConfiguration properties, copied so that later changes to the configuration don't affect the key
+    private static final class Key {
+        private final String userId;
+        private final int screenResWidth;
+        private final int screenResHeight;
+        private final int viewPortWidth;
+        private final int viewPortHeight;
+        private final int colorDepth;
+        private final String timezone;
+        private final String language;
+        private final String ipAddress;
+        private final String useragent;
+        private final String networkUserId;
+        private final String domainUserId;
+        private final String domainSessionId;
+        private final int hashCode;
+
+        Key(SubjectConfiguration subjectConfig) {
+            userId = subjectConfig.getUserId();
+            screenResWidth = subjectConfig.getScreenResWidth();
+            screenResHeight = subjectConfig.getScreenResHeight();
+            viewPortWidth = subjectConfig.getViewPortWidth();
+            viewPortHeight = subjectConfig.getViewPortHeight();
+            colorDepth = subjectConfig.getColorDepth();
+            timezone = subjectConfig.getTimezone();
+            language = subjectConfig.getLanguage();
+            ipAddress = subjectConfig.getIpAddress();
+            useragent = subjectConfig.getUseragent();
+            networkUserId = subjectConfig.getNetworkUserId();
+            domainUserId = subjectConfig.getDomainUserId();
+            domainSessionId = subjectConfig.getDomainSessionId();
+
+            int hash = Objects.hashCode(userId);
+            hash = 31 * hash + screenResWidth;
+            hash = 31 * hash + screenResHeight;
+            hash = 31 * hash + viewPortWidth;
+            hash = 31 * hash + viewPortHeight;
+            hash = 31 * hash + colorDepth;
+            hash = 31 * hash + Objects.hashCode(timezone);
+            hash = 31 * hash + Objects.hashCode(language);
+            hash = 31 * hash + Objects.hashCode(ipAddress);
+            hash = 31 * hash + Objects.hashCode(useragent);
+            hash = 31 * hash + Objects.hashCode(networkUserId);
+            hash = 31 * hash + Objects.hashCode(domainUserId);
+            hash = 31 * hash + Objects.hashCode(domainSessionId);
+            hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && screenResWidth == key.screenResWidth
+                    && screenResHeight == key.screenResHeight
+                    && viewPortWidth == key.viewPortWidth
+                    && viewPortHeight == key.viewPortHeight
+                    && colorDepth == key.colorDepth
+                    && Objects.equals(userId, key.userId)
+                    && Objects.equals(timezone, key.timezone)
+                    && Objects.equals(language, key.language)
+                    && Objects.equals(ipAddress, key.ipAddress)
+                    && Objects.equals(useragent, key.useragent)
+                    && Objects.equals(networkUserId, key.networkUserId)
+                    && Objects.equals(domainUserId, key.domainUserId)
+                    && Objects.equals(domainSessionId, key.domainSessionId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
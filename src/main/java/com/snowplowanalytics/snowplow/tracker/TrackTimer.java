@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker;
+
+import com.snowplowanalytics.snowplow.tracker.events.Event;
+import com.snowplowanalytics.snowplow.tracker.jfr.FlightRecorderEvents;
+
+/**
+ * Times the stages of a track call for the JDK Flight Recorder Track event.
+ * Each stage ends when the next one starts, and a stage can run several times in one call,
+ * for example once per payload of an EcommerceTransaction.
+ */
+final class TrackTimer {
+
+    static final int PREPROCESSING = 0;
+    static final int PAYLOAD = 1;
+    static final int CONTEXT = 2;
+    static final int SUBJECT = 3;
+    static final int STORE = 4;
+
+    private final Object event;
+    private final long[] stageNanos = new long[5];
+    private long stageStart;
+    private int payloads;
+    private int payloadsDropped;
+
+    private TrackTimer(Object event) {
+        this.event = event;
+        this.stageStart = System.nanoTime();
+    }
+
+    /**
+     * Starts timing a track call.
+     *
+     * @return the timer, or null if the Track event is disabled
+     */
+    static TrackTimer start() {
+        Object event = FlightRecorderEvents.beginTrack();
+        return event == null ? null : new TrackTimer(event);
+    }
+
+    void endStage(int stage) {
+        long now = System.nanoTime();
+        stageNanos[stage] += now - stageStart;
+        stageStart = now;
+    }
+
+    void payloadAdded(boolean addedToBuffer) {
+        endStage(STORE);
+        payloads++;
+        if (!addedToBuffer) {
+            payloadsDropped++;
+        }
+    }
+
+    void commit(Event trackedEvent) {
+        FlightRecorderEvents.commitTrack(event, trackedEvent.getClass().getName(), payloads, payloadsDropped,
+                stageNanos[PREPROCESSING], stageNanos[PAYLOAD], stageNanos[CONTEXT], stageNanos[SUBJECT], stageNanos[STORE]);
+    }
+}
@@ -17,6 +17,10 @@ import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import com.snowplowanalytics.snowplow.tracker.emitter.Emitter;
 import com.snowplowanalytics.snowplow.tracker.events.*;
+import com.snowplowanalytics.snowplow.tracker.payload.EventId;
+import com.snowplowanalytics.snowplow.tracker.payload.EventIdGenerator;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadPairs;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadSizeProfiler;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerParameters;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
@@ -28,9 +32,16 @@ import java.util.*;
  */
 public class Tracker {
 
+    // The final context envelope, reused on each thread. It is serialized into the payload and then cleared.
+    private static final ThreadLocal<ContextScratch> CONTEXT_SCRATCH = ThreadLocal.withInitial(ContextScratch::new);
+
     private Emitter emitter;
     private Subject subject;
     private final TrackerParameters parameters;
+    private final ContextCache contextCache;
+    private final EventIdGenerator eventIdGenerator;
+    private final boolean deferredEncoding;
+    private final PayloadSizeProfiler payloadSizeProfiler;
 
     /**
      * Creates a new Snowplow Tracker.
@@ -54,6 +65,14 @@ public class Tracker {
         }
 
         this.parameters = new TrackerParameters(trackerConfig.getAppId(), trackerConfig.getPlatform(), trackerConfig.getNamespace(), Version.TRACKER, trackerConfig.isBase64Encoded());
+        this.contextCache = trackerConfig.getContextCacheSize() > 0
+                ? new ContextCache(trackerConfig.getContextCacheSize(), trackerConfig.isBase64Encoded())
+                : null;
+        this.eventIdGenerator = trackerConfig.getEventIdGenerator();
+        this.deferredEncoding = trackerConfig.isDeferredEncoding();
+        this.payloadSizeProfiler = trackerConfig.getPayloadSizeSamplingRate() > 0
+                ? new PayloadSizeProfiler(trackerConfig.getPayloadSizeSamplingRate(), trackerConfig.getPayloadSizeReportIntervalSeconds())
+                : null;
         this.emitter = emitter;
         this.subject = subject;
 
@@ -232,6 +251,34 @@ public class Tracker {
         return parameters;
     }
 
+    /**
+     * @return the cache of encoded contexts, or null if contexts are not cached
+     */
+    public ContextCache getContextCache() {
+        return contextCache;
+    }
+
+    /**
+     * @return the generator of event IDs
+     */
+    public EventIdGenerator getEventIdGenerator() {
+        return eventIdGenerator;
+    }
+
+    /**
+     * @return whether events are encoded when the Emitter first needs them, rather than when tracked
+     */
+    public boolean isDeferredEncoding() {
+        return deferredEncoding;
+    }
+
+    /**
+     * @return the profiler of the size of tracked events, or null if it is disabled
+     */
+    public PayloadSizeProfiler getPayloadSizeProfiler() {
+        return payloadSizeProfiler;
+    }
+
     // --- Event Tracking Functions
 
     /**
@@ -252,28 +299,136 @@ public class Tracker {
      * @return a list of eventIDs (UUIDs)
      */
     public List<String> track(Event event) {
+        TrackTimer timer = TrackTimer.start();
         List<String> results = new ArrayList<>();
         // a list because Ecommerce events become multiple Payloads
         List<Event> processedEvents = eventTypeSpecificPreProcessing(event);
+        if (timer != null) {
+            timer.endStage(TrackTimer.PREPROCESSING);
+        }
         for (Event processedEvent : processedEvents) {
-            // Event ID (eid) and device_created_timestamp (dtm) are generated now when
-            // the TrackerPayload is created
-            TrackerPayload payload = (TrackerPayload) processedEvent.getPayload();
-
-            addTrackerParameters(payload);
-            addContext(processedEvent, payload);
-            addSubject(processedEvent, payload);
+            TrackerPayload payload = createPayload(processedEvent, false, timer);
+            if (payloadSizeProfiler != null) {
+                payloadSizeProfiler.sample(payload);
+            }
 
             boolean addedToBuffer = emitter.add(payload);
+            if (timer != null) {
+                timer.payloadAdded(addedToBuffer);
+            }
             if (addedToBuffer) {
                 results.add(payload.getEventId());
             } else {
                 results.add(null);
             }
         }
+        if (timer != null) {
+            timer.commit(event);
+        }
         return results;
     }
 
+    /**
+     * Tracks an event like {@link #track(Event)}, without the intermediate objects that it creates.
+     *
+     * The payload is built by the event itself: Timing and ScreenView events build their
+     * self-describing payload directly instead of being converted into SelfDescribing events,
+     * and the event's context is read without copying it. No list of results is created;
+     * the eventId is returned as an {@link EventId}, which is only formatted as a String if needed.
+     * For an EcommerceTransaction, the ID of the "tr" event is returned. Its items are tracked
+     * in the same way, but their IDs are not returned.
+     *
+     * @param event the event to track
+     * @return the eventId, or null if the Emitter event buffer was full and the payload was lost
+     */
+    public EventId trackFast(Event event) {
+        TrackTimer timer = TrackTimer.start();
+        TrackerPayload payload = createPayload(event, true, timer);
+        EventId eventId = payload.generateEventId(eventIdGenerator);
+        if (payloadSizeProfiler != null) {
+            payloadSizeProfiler.sample(payload);
+        }
+        boolean addedToBuffer = emitter.add(payload);
+        if (timer != null) {
+            timer.payloadAdded(addedToBuffer);
+        }
+        if (!addedToBuffer) {
+            eventId = null;
+        }
+
+        if (event instanceof EcommerceTransaction) {
+            for (EcommerceTransactionItem item : ((EcommerceTransaction) event).getItems()) {
+                TrackerPayload itemPayload = createPayload(item, true, timer);
+                if (payloadSizeProfiler != null) {
+                    payloadSizeProfiler.sample(itemPayload);
+                }
+                addedToBuffer = emitter.add(itemPayload);
+                if (timer != null) {
+                    timer.payloadAdded(addedToBuffer);
+                }
+            }
+        }
+        if (timer != null) {
+            timer.commit(event);
+        }
+        return eventId;
+    }
+
+    /**
+     * Creates the payload of an event, with the tracker parameters, context and subject.
+     * Device_created_timestamp (dtm) is generated now when the TrackerPayload is created,
+     * and the event ID (eid) using the configured generator.
+     *
+     * With deferred encoding, only these are created now. The Subject pairs are also captured now,
+     * but the rest of the payload is built and encoded when the Emitter first needs it.
+     * Other Event implementations than AbstractEvents are always built now.
+     *
+     * The timer, if not null, records the time spent in each stage for the Flight Recorder Track event.
+     */
+    private TrackerPayload createPayload(Event event, boolean buildDirectly, TrackTimer timer) {
+        PayloadPairs subjectPairs = getSubjectPairs(event);
+        if (timer != null) {
+            timer.endStage(TrackTimer.SUBJECT);
+        }
+        if (deferredEncoding && event instanceof AbstractEvent) {
+            TrackerPayload payload = TrackerPayload.deferred(eventIdGenerator,
+                    () -> completePayload(event, getEventPayload(event, buildDirectly), subjectPairs, null));
+            if (timer != null) {
+                timer.endStage(TrackTimer.PAYLOAD);
+            }
+            return payload;
+        }
+        TrackerPayload payload = getEventPayload(event, buildDirectly);
+        payload.generateEventId(eventIdGenerator);
+        return completePayload(event, payload, subjectPairs, timer);
+    }
+
+    // Events built directly don't need converting into the events they are sent as
+    private TrackerPayload getEventPayload(Event event, boolean buildDirectly) {
+        if (buildDirectly && event instanceof AbstractEvent) {
+            return ((AbstractEvent) event).getTrackerPayload(parameters.getBase64Encoded());
+        }
+        return (TrackerPayload) event.getPayload();
+    }
+
+    private TrackerPayload completePayload(Event event, TrackerPayload payload, PayloadPairs subjectPairs, TrackTimer timer) {
+        addTrackerParameters(payload);
+        if (timer != null) {
+            timer.endStage(TrackTimer.PAYLOAD);
+        }
+        addContext(event, payload);
+        if (timer != null) {
+            timer.endStage(TrackTimer.CONTEXT);
+        }
+        if (subjectPairs != null) {
+            payload.addPairs(subjectPairs);
+        }
+        if (timer != null) {
+            timer.endStage(TrackTimer.SUBJECT);
+        }
+        return payload;
+    }
+
     private List<Event> eventTypeSpecificPreProcessing(Event event) {
         // Different event types must be processed in slightly different ways.
         // EcommerceTransaction events are an outlier, as they are processed into
@@ -315,45 +470,46 @@ public class Tracker {
     }
 
     private void addTrackerParameters(TrackerPayload payload) {
-        payload.add(Parameter.PLATFORM, parameters.getPlatform().toString());
-        payload.add(Parameter.APP_ID, parameters.getAppId());
-        payload.add(Parameter.NAMESPACE, parameters.getNamespace());
-        payload.add(Parameter.TRACKER_VERSION, parameters.getTrackerVersion());
+        payload.addPairs(parameters.getPairs());
     }
 
     private void addContext(Event event, TrackerPayload payload) {
-        List<SelfDescribingJson> entities = event.getContext();
+        // AbstractEvents return a copy of their context, which is only needed by callers that change it
+        List<SelfDescribingJson> entities = event instanceof AbstractEvent
+                ? ((AbstractEvent) event).getContextView()
+                : event.getContext();
 
         // Build the final context and add it to the payload
         if (entities != null && entities.size() > 0) {
-            SelfDescribingJson envelope = getFinalContext(entities);
-            payload.addMap(envelope.getMap(), parameters.getBase64Encoded(), Parameter.CONTEXT_ENCODED, Parameter.CONTEXT);
-        }
-    }
-
-    /**
-     * Builds the final event context.
-     *
-     * @param entities the base event context
-     * @return the final event context json with many entities inside
-     */
-    private SelfDescribingJson getFinalContext(List<SelfDescribingJson> entities) {
-        List<Map<String, Object>> entityMaps = new LinkedList<>();
-        for (SelfDescribingJson selfDescribingJson : entities) {
-            entityMaps.add(selfDescribingJson.getMap());
+            if (contextCache != null) {
+                payload.addPairs(contextCache.get(entities));
+                return;
+            }
+            ContextScratch scratch = CONTEXT_SCRATCH.get();
+            try {
+                for (SelfDescribingJson selfDescribingJson : entities) {
+                    scratch.entityMaps.add(selfDescribingJson.getMap());
+                }
+                scratch.envelope.put(Parameter.SCHEMA, Constants.SCHEMA_CONTEXTS);
+                scratch.envelope.put(Parameter.DATA, scratch.entityMaps);
+                payload.addMap(scratch.envelope, parameters.getBase64Encoded(), Parameter.CONTEXT_ENCODED, Parameter.CONTEXT);
+            } finally {
+                scratch.entityMaps.clear();
+                scratch.envelope.clear();
+            }
         }
-        return new SelfDescribingJson(Constants.SCHEMA_CONTEXTS, entityMaps);
     }
 
-    private void addSubject(Event event, TrackerPayload payload) {
+    private PayloadPairs getSubjectPairs(Event event) {
         Subject eventSubject = event.getSubject();
 
         // Add subject if available
         if (eventSubject != null) {
-            payload.addMap(new HashMap<>(eventSubject.getSubject()));
+            return eventSubject.getSnapshot();
         } else if (subject != null) {
-            payload.addMap(new HashMap<>(subject.getSubject()));
+            return subject.getSnapshot();
         }
+        return null;
     }
 
     /**
@@ -366,4 +522,8 @@ public class Tracker {
         emitter.close();
     }
 
+    private static final class ContextScratch {
+        final List<Map<String, Object>> entityMaps = new ArrayList<>();
+        final Map<String, Object> envelope = new LinkedHashMap<>();
+    }
 }
@@ -12,13 +12,20 @@
  */
 package com.snowplowanalytics.snowplow.tracker;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.net.URL;
 import java.net.URLEncoder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +37,98 @@ public class Utils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Utils.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectWriter streamingWriter = objectMapper.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    // Buffers larger than this are not kept for reuse, so one huge event doesn't pin memory to a thread
+    private static final int MAX_RETAINED_ENCODING_BUFFER = 64 * 1024;
+    private static final ThreadLocal<Base64Buffer> base64Buffer = ThreadLocal.withInitial(Base64Buffer::new);
+
+    // A reusable stream that Base64 encodes the bytes written to it into its buffer.
+    // Base64.Encoder.wrap() isn't used, as it allocates an 8 KB buffer for every stream.
+    private static final class Base64Buffer extends OutputStream {
+        private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+                .getBytes(StandardCharsets.US_ASCII);
+
+        // Jackson's UTF-8 generator escapes supplementary characters as surrogate pairs, whereas
+        // String.getBytes() encodes them as 4 bytes. Writing chars through a UTF-8 Writer gives the same bytes.
+        final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+        private byte[] buf = new byte[1024];
+        private int count;
+        // Up to two bytes waiting for a complete 3 byte group
+        private int pending;
+        private int pendingCount;
+
+        void reset() {
+            count = 0;
+            pending = 0;
+            pendingCount = 0;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        @Override
+        public void write(int b) {
+            pending = (pending << 8) | (b & 0xff);
+            if (++pendingCount == 3) {
+                ensureCapacity(4);
+                encodeGroup(pending);
+                pending = 0;
+                pendingCount = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int end = off + len;
+            while (pendingCount != 0 && off < end) {
+                write(b[off++]);
+            }
+            int groups = (end - off) / 3;
+            ensureCapacity(groups * 4);
+            for (int i = 0; i < groups; i++) {
+                encodeGroup((b[off] & 0xff) << 16 | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff));
+                off += 3;
+            }
+            while (off < end) {
+                write(b[off++]);
+            }
+        }
+
+        // Encodes the pending bytes with padding, and returns the encoded String
+        String finish() {
+            ensureCapacity(4);
+            if (pendingCount == 1) {
+                buf[count++] = ALPHABET[(pending >> 2) & 0x3f];
+                buf[count++] = ALPHABET[(pending << 4) & 0x3f];
+                buf[count++] = '=';
+                buf[count++] = '=';
+            } else if (pendingCount == 2) {
+                buf[count++] = ALPHABET[(pending >> 10) & 0x3f];
+                buf[count++] = ALPHABET[(pending >> 4) & 0x3f];
+                buf[count++] = ALPHABET[(pending << 2) & 0x3f];
+                buf[count++] = '=';
+            }
+            pending = 0;
+            pendingCount = 0;
+            return new String(buf, 0, count, StandardCharsets.US_ASCII);
+        }
+
+        private void encodeGroup(int bits) {
+            buf[count++] = ALPHABET[(bits >> 18) & 0x3f];
+            buf[count++] = ALPHABET[(bits >> 12) & 0x3f];
+            buf[count++] = ALPHABET[(bits >> 6) & 0x3f];
+            buf[count++] = ALPHABET[bits & 0x3f];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+            }
+        }
+    }
 
     // Tracker Utils
 
@@ -92,8 +191,9 @@ public class Utils {
      * @return the timezone id string
      */
     public static String getTimezone() {
-        TimeZone tz = Calendar.getInstance().getTimeZone();
-        return tz.getID();
+        // Unlike Calendar.getInstance(), this doesn't create and initialise a calendar,
+        // and it still reflects any later change to the default timezone
+        return TimeZone.getDefault().getID();
     }
 
     // Payload Utils
@@ -127,6 +227,47 @@ public class Utils {
         return jString;
     }
 
+    /**
+     * Processes a Map into a Base64 encoded JSON String, or returns an empty String if it fails.
+     * The result equals base64Encode(mapToJSONString(map), UTF_8), including for characters outside
+     * the Basic Multilingual Plane, but the JSON is streamed through a UTF-8 encoder and a Base64 encoder
+     * into a reused per-thread buffer, so neither the JSON String nor its UTF-8 bytes are created.
+     *
+     * @param map the map to process into a Base64 encoded JSON String
+     * @return the final Base64 encoded String
+     */
+    public static String mapToBase64JSONString(Map<String, ?> map) {
+        Base64Buffer buffer = base64Buffer.get();
+        buffer.reset();
+        String encoded;
+        try {
+            streamingWriter.writeValue(buffer.writer, map);
+            encoded = buffer.finish();
+        } catch (IOException e) {
+            LOGGER.error("Could not process Map into Base64 encoded JSON String");
+            LOGGER.debug("Could not process Map {} into Base64 encoded JSON String: {}", map, e.getMessage());
+            // The writer may still hold part of the JSON
+            base64Buffer.remove();
+            return "";
+        }
+        if (buffer.capacity() > MAX_RETAINED_ENCODING_BUFFER) {
+            base64Buffer.remove();
+        }
+        return encoded;
+    }
+
+    /**
+     * Serializes a Map as UTF-8 encoded JSON directly into an OutputStream,
+     * without building an intermediate String. The stream is flushed but not closed.
+     *
+     * @param map the map to serialize
+     * @param outputStream the stream to write the JSON to
+     * @throws IOException if the map could not be serialized or written
+     */
+    public static void writeJSON(Map<String, ?> map, OutputStream outputStream) throws IOException {
+        streamingWriter.writeValue(outputStream, map);
+    }
+
     /**
      * Builds a QueryString from a Map of Name-Value pairs.
      * 
@@ -195,4 +336,34 @@ public class Utils {
         }
         return len;
     }
+
+    /**
+     * Count the number of bytes a string will occupy as a quoted JSON string value,
+     * UTF-8 encoded, including the escaping of quotes, backslashes and control characters.
+     *
+     * @param s the String to process
+     * @return number of bytes of s in a JSON document
+     */
+    public static long getJSONStringByteSize(String s) {
+        long len = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char code = s.charAt(i);
+            if (code == '"' || code == '\\') {
+                len += 2;
+            } else if (code < 0x20) {
+                // \b, \t, \n, \f and \r have short escapes, other control characters use \\u00XX
+                len += (code == '\b' || code == '\t' || code == '\n' || code == '\f' || code == '\r') ? 2 : 6;
+            } else if (code <= 0x7f) {
+                len += 1;
+            } else if (code <= 0x7ff) {
+                len += 2;
+            } else if (Character.isSurrogate(code)) {
+                // Each half of a surrogate pair is written as a \\uXXXX escape
+                len += 6;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
 }
@@ -13,6 +13,7 @@
 package com.snowplowanalytics.snowplow.tracker.configuration;
 
 import com.snowplowanalytics.snowplow.tracker.emitter.EmitterCallback;
+import com.snowplowanalytics.snowplow.tracker.emitter.EmitterLatencyListener;
 import com.snowplowanalytics.snowplow.tracker.emitter.EventStore;
 
 import java.util.Map;
@@ -21,12 +22,19 @@ import java.util.concurrent.ScheduledExecutorService;
 public class EmitterConfiguration {
 
     private int batchSize; // Optional
+    private int minBatchSize; // Optional
+    private int maxBatchSize; // Optional
+    private long latencyTargetMs; // Optional
+    private long maxBatchBytes; // Optional
+    private long lingerMs; // Optional
     private int bufferCapacity; // Optional
     private EventStore eventStore;  // Optional
     private Map<Integer, Boolean> customRetryForStatusCodes;  // Optional
     private int threadCount; // Optional
+    private boolean useVirtualThreads; // Optional
     private ScheduledExecutorService requestExecutorService; // Optional
     private EmitterCallback callback; // Optional
+    private EmitterLatencyListener latencyListener; // Optional
 
     // Getters and Setters
 
@@ -38,6 +46,46 @@ public class EmitterConfiguration {
         return batchSize;
     }
 
+    /**
+     * Returns the smallest batch size that adaptive batch sizing can choose.
+     * @return the minimum batch size, or 0 if the batch size is not adaptive
+     */
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    /**
+     * Returns the largest batch size that adaptive batch sizing can choose.
+     * @return the maximum batch size, or 0 if the batch size is not adaptive
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the 99th percentile request latency that adaptive batch sizing keeps under.
+     * @return the latency target in milliseconds, or 0 if the batch size is not adaptive
+     */
+    public long getLatencyTargetMs() {
+        return latencyTargetMs;
+    }
+
+    /**
+     * Returns the maximum size in bytes of a POST request body.
+     * @return the maximum batch size in bytes
+     */
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds that an event waits in the buffer before being sent.
+     * @return the linger time, or 0 if disabled
+     */
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
     /**
      * Returns the maximum number of events to buffer in memory.
      * @return maximum buffer capacity
@@ -70,6 +118,14 @@ public class EmitterConfiguration {
         return threadCount;
     }
 
+    /**
+     * Returns whether events are sent using virtual threads, when the JVM supports them.
+     * @return whether virtual threads are used
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
     /**
      * Returns the ScheduledExecutorService used for sending events.
      * @return ScheduledExecutorService object
@@ -88,6 +144,15 @@ public class EmitterConfiguration {
         return callback;
     }
 
+    /**
+     * Returns the listener which is called with the latency of each batch successfully sent to the collector.
+     *
+     * @return EmitterLatencyListener object
+     */
+    public EmitterLatencyListener getLatencyListener() {
+        return latencyListener;
+    }
+
     // Constructor
 
     /**
@@ -100,12 +165,19 @@ public class EmitterConfiguration {
      */
     public EmitterConfiguration() {
         batchSize = 50;
+        minBatchSize = 0;
+        maxBatchSize = 0;
+        latencyTargetMs = 0;
+        maxBatchBytes = Long.MAX_VALUE;
+        lingerMs = 0;
         bufferCapacity = 10000;
         eventStore = null;
         customRetryForStatusCodes = null;
         threadCount = 50;
+        useVirtualThreads = false;
         requestExecutorService = null;
         callback = null;
+        latencyListener = null;
     }
 
     // Builder methods
@@ -121,6 +193,52 @@ public class EmitterConfiguration {
         return this;
     }
 
+    /**
+     * Tunes the batch size while events are sent, within minBatchSize and maxBatchSize (by default it is fixed).
+     * The batch size starts at batchSize, and grows while batches fill up and the 99th percentile of
+     * the request latency stays under latencyTargetMs, so that each request carries more events.
+     * It is halved as soon as a request fails, and when the 99th percentile latency of the last 100 requests
+     * (or of the last minute, at low request rates) is above the target.
+     * The current batch size and the changes are available from BatchEmitter.getMetrics().
+     *
+     * @param minBatchSize the smallest batch size
+     * @param maxBatchSize the largest batch size
+     * @param latencyTargetMs the 99th percentile request latency to keep under, in milliseconds
+     * @return itself
+     */
+    public EmitterConfiguration adaptiveBatchSize(int minBatchSize, int maxBatchSize, long latencyTargetMs) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyTargetMs = latencyTargetMs;
+        return this;
+    }
+
+    /**
+     * Limits the size of each POST request body in bytes (by default there is no limit).
+     * A request is sent when either batchSize events, or maxBatchBytes of events, are buffered.
+     * Events too large to be sent within this limit on their own are not buffered: they are reported
+     * to the EmitterCallback with FailureType.EVENT_TOO_LARGE.
+     *
+     * @param maxBatchBytes the maximum size in bytes of one HTTP request body
+     * @return itself
+     */
+    public EmitterConfiguration maxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * Sends buffered events once the oldest of them has waited lingerMs, even if the batch isn't full.
+     * The default is 0, meaning events are only sent when a batch is full or the buffer is flushed.
+     *
+     * @param lingerMs the maximum time in milliseconds an event waits in the buffer
+     * @return itself
+     */
+    public EmitterConfiguration lingerMs(long lingerMs) {
+        this.lingerMs = lingerMs;
+        return this;
+    }
+
     /**
      * The default buffer capacity is 10 000 events.
      * When the buffer is full (due to network outage), new events are lost.
@@ -167,6 +285,21 @@ public class EmitterConfiguration {
         return this;
     }
 
+    /**
+     * Send events using virtual threads instead of a fixed thread pool (default is false).
+     * Each request runs on a new virtual thread, and a single platform thread schedules sending and retries,
+     * so the thread count doesn't need to be sized for collector latency.
+     * Virtual threads require Java 21 or later; on older JVMs, the thread pool is used.
+     * Ignored if a custom requestExecutorService is set.
+     *
+     * @param useVirtualThreads whether to use virtual threads
+     * @return itself
+     */
+    public EmitterConfiguration useVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
     /**
      * Set a custom ScheduledExecutorService to send http requests (default is ScheduledThreadPoolExecutor).
      * <p>
@@ -191,4 +324,16 @@ public class EmitterConfiguration {
         this.callback = callback;
         return this;
     }
+
+    /**
+     * Provide an EmitterLatencyListener to be notified of how long the events of each batch
+     * waited in the buffer, and how long the collector took to acknowledge them.
+     *
+     * @param latencyListener an EmitterLatencyListener
+     * @return itself
+     */
+    public EmitterConfiguration latencyListener(EmitterLatencyListener latencyListener) {
+        this.latencyListener = latencyListener;
+        return this;
+    }
 }
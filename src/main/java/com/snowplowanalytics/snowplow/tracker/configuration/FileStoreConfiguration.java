@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.configuration;
+
+import java.io.File;
+
+public class FileStoreConfiguration {
+
+    private final File directory; // Required
+    private int bufferCapacity; // Optional
+    private int segmentSize; // Optional
+    private int syncEveryEvents; // Optional
+    private long syncIntervalMillis; // Optional
+
+    // Getters and Setters
+
+    /**
+     * Returns the directory where the event log segments are stored.
+     * @return the storage directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the maximum number of events to buffer.
+     * @return maximum buffer capacity
+     */
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * Returns the size in bytes of each memory-mapped log segment file.
+     * @return segment size in bytes
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns the number of written events after which the log is synced to disk.
+     * @return events per sync
+     */
+    public int getSyncEveryEvents() {
+        return syncEveryEvents;
+    }
+
+    /**
+     * Returns the maximum time between syncs of the log to disk.
+     * @return sync interval in milliseconds
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    // Constructor
+
+    /**
+     * Create a FileStoreConfiguration instance. The default configuration is:
+     * maximum 10 000 events buffered;
+     * 8 MB log segment files;
+     * and the log synced to disk every 1000 events or every 100 ms, whichever comes first.
+     *
+     * @param directory the directory to store the event log in
+     */
+    public FileStoreConfiguration(File directory) {
+        this.directory = directory;
+        bufferCapacity = 10000;
+        segmentSize = 8 * 1024 * 1024;
+        syncEveryEvents = 1000;
+        syncIntervalMillis = 100;
+    }
+
+    // Builder methods
+
+    /**
+     * The default buffer capacity is 10 000 events.
+     * When the buffer is full (due to network outage), new events are lost.
+     *
+     * @param bufferCapacity The maximum number of events to buffer
+     * @return itself
+     */
+    public FileStoreConfiguration bufferCapacity(int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+        return this;
+    }
+
+    /**
+     * The default segment size is 8 MB. A single event cannot be larger than one segment.
+     * The segment size is stored in each segment file, and a store can't be reopened
+     * with a different segment size while segments from the previous process remain.
+     *
+     * @param segmentSize the size in bytes of each log segment file
+     * @return itself
+     */
+    public FileStoreConfiguration segmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * The log is synced to disk in the background once this many events have been written since
+     * the last sync (default is 1000). Events are not synced individually.
+     *
+     * @param syncEveryEvents the number of events per sync
+     * @return itself
+     */
+    public FileStoreConfiguration syncEveryEvents(int syncEveryEvents) {
+        this.syncEveryEvents = syncEveryEvents;
+        return this;
+    }
+
+    /**
+     * The log is synced to disk at least this often if there are unsynced writes (default is 100 ms).
+     * This bounds how many recent events can be lost if the machine (not only the JVM) crashes.
+     *
+     * @param syncIntervalMillis the maximum time between syncs in milliseconds
+     * @return itself
+     */
+    public FileStoreConfiguration syncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        return this;
+    }
+}
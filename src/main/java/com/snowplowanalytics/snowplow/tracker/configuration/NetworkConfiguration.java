@@ -13,6 +13,7 @@
 package com.snowplowanalytics.snowplow.tracker.configuration;
 
 import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
+import com.snowplowanalytics.snowplow.tracker.http.RequestCompression;
 import okhttp3.CookieJar;
 
 
@@ -21,6 +22,8 @@ public class NetworkConfiguration {
     private HttpClientAdapter httpClientAdapter = null; // Optional
     private String collectorUrl = null; // Required if not specifying a httpClientAdapter
     private CookieJar cookieJar = null; // Optional
+    private int maxConcurrentRequests = 50; // Optional
+    private RequestCompression requestCompression = RequestCompression.NONE; // Optional
 
     // Getters and Setters
 
@@ -48,6 +51,22 @@ public class NetworkConfiguration {
         return cookieJar;
     }
 
+    /**
+     * Returns the maximum number of concurrent requests made by the default OkHttpClientAdapter.
+     * @return maximum concurrent requests
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Returns the compression applied to POST request bodies by the default OkHttpClientAdapter.
+     * @return RequestCompression
+     */
+    public RequestCompression getRequestCompression() {
+        return requestCompression;
+    }
+
     // Constructors
 
     /**
@@ -106,4 +125,33 @@ public class NetworkConfiguration {
         this.cookieJar = cookieJar;
         return this;
     }
+
+    /**
+     * Sets the maximum number of POST requests the BatchEmitter will have in flight at once (default is 50).
+     * Once this many requests are waiting for a response, events stay in the emitter buffer until
+     * a request completes, so that bufferCapacity still limits the number of events held while the collector is slow.
+     * Waiting for a response doesn't hold an emitter thread with an asynchronous httpClientAdapter.
+     *
+     * @param maxConcurrentRequests the maximum number of concurrent requests
+     * @return itself
+     */
+    public NetworkConfiguration maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Compresses POST request bodies sent by the default OkHttpClientAdapter (default is RequestCompression.NONE).
+     * With RequestCompression.GZIP, batches are gzipped as they are written to the request,
+     * and sent with the "Content-Encoding: gzip" header. The collector must accept gzip request bodies.
+     * Will be ignored if a custom httpClientAdapter is provided; pass a RequestCompression to
+     * the adapter's constructor instead.
+     *
+     * @param requestCompression the compression to use
+     * @return itself
+     */
+    public NetworkConfiguration requestCompression(RequestCompression requestCompression) {
+        this.requestCompression = requestCompression;
+        return this;
+    }
 }
@@ -13,6 +13,8 @@
 package com.snowplowanalytics.snowplow.tracker.configuration;
 
 import com.snowplowanalytics.snowplow.tracker.DevicePlatform;
+import com.snowplowanalytics.snowplow.tracker.payload.EventIdGenerator;
+import com.snowplowanalytics.snowplow.tracker.payload.SecureRandomEventIdGenerator;
 
 
 public class TrackerConfiguration {
@@ -20,6 +22,11 @@ public class TrackerConfiguration {
     private final String appId; // Required
     private DevicePlatform platform; // Optional
     private boolean base64Encoded; // Optional
+    private int contextCacheSize; // Optional
+    private EventIdGenerator eventIdGenerator; // Optional
+    private boolean deferredEncoding; // Optional
+    private double payloadSizeSamplingRate; // Optional
+    private long payloadSizeReportIntervalSeconds; // Optional
 
     // Getters and Setters
 
@@ -55,6 +62,46 @@ public class TrackerConfiguration {
         return base64Encoded;
     }
 
+    /**
+     * Returns the maximum number of encoded contexts the tracker caches.
+     * @return context cache size, or 0 if contexts are not cached
+     */
+    public int getContextCacheSize() {
+        return contextCacheSize;
+    }
+
+    /**
+     * Returns the generator of event IDs.
+     * @return the EventIdGenerator
+     */
+    public EventIdGenerator getEventIdGenerator() {
+        return eventIdGenerator;
+    }
+
+    /**
+     * Returns whether events are encoded when the Emitter first needs them, rather than when tracked.
+     * @return true if encoding is deferred
+     */
+    public boolean isDeferredEncoding() {
+        return deferredEncoding;
+    }
+
+    /**
+     * Returns the fraction of events measured by the payload size profiler.
+     * @return the sampling rate, or 0 if the profiler is disabled
+     */
+    public double getPayloadSizeSamplingRate() {
+        return payloadSizeSamplingRate;
+    }
+
+    /**
+     * Returns the minimum time between the log lines of the payload size profiler.
+     * @return the report interval in seconds, or 0 if reports are not logged
+     */
+    public long getPayloadSizeReportIntervalSeconds() {
+        return payloadSizeReportIntervalSeconds;
+    }
+
     // Constructor
 
     /**
@@ -69,6 +116,11 @@ public class TrackerConfiguration {
         this.appId = appId;
         this.platform = DevicePlatform.ServerSideApp;
         this.base64Encoded = true;
+        this.contextCacheSize = 0;
+        this.eventIdGenerator = new SecureRandomEventIdGenerator();
+        this.deferredEncoding = false;
+        this.payloadSizeSamplingRate = 0;
+        this.payloadSizeReportIntervalSeconds = 60;
     }
 
     // Builder methods
@@ -94,4 +146,92 @@ public class TrackerConfiguration {
         this.base64Encoded = base64Encoded;
         return this;
     }
+
+    /**
+     * The maximum number of encoded event contexts to cache (default is 0, no caching).
+     * When events are tracked with the same context entities again and again,
+     * a {@link com.snowplowanalytics.snowplow.tracker.ContextCache} avoids serializing
+     * and encoding the same contexts for every event.
+     *
+     * @param contextCacheSize the maximum number of cached contexts
+     * @return itself
+     */
+    public TrackerConfiguration contextCacheSize(int contextCacheSize) {
+        if (contextCacheSize < 0) {
+            throw new IllegalArgumentException("contextCacheSize must not be negative");
+        }
+        this.contextCacheSize = contextCacheSize;
+        return this;
+    }
+
+    /**
+     * The generator of event IDs (default is {@link SecureRandomEventIdGenerator}, random UUIDs
+     * from UUID.randomUUID()). Applications tracking from many threads can use
+     * a generator that doesn't contend on a shared SecureRandom, such as
+     * {@link com.snowplowanalytics.snowplow.tracker.payload.ThreadLocalRandomEventIdGenerator},
+     * {@link com.snowplowanalytics.snowplow.tracker.payload.TimeOrderedEventIdGenerator} or
+     * {@link com.snowplowanalytics.snowplow.tracker.payload.PooledEventIdGenerator}.
+     *
+     * @param eventIdGenerator the EventIdGenerator to use
+     * @return itself
+     */
+    public TrackerConfiguration eventIdGenerator(EventIdGenerator eventIdGenerator) {
+        if (eventIdGenerator == null) {
+            throw new IllegalArgumentException("eventIdGenerator cannot be null");
+        }
+        this.eventIdGenerator = eventIdGenerator;
+        return this;
+    }
+
+    /**
+     * Whether to defer building and encoding event payloads until the Emitter needs them (default is false).
+     * When true, tracking an event only generates its eventId, takes its timestamp and captures
+     * the Subject pairs. The rest of the payload, including the JSON serialization and base64 encoding
+     * of self-describing data and contexts, is built on an Emitter thread just before the event is sent.
+     * The eventIds returned by the Tracker are those that are sent. If the payload can't be built,
+     * the event is dropped and reported to the EmitterCallback with FailureType.EVENT_BUILD_FAILURE.
+     *
+     * Events, and their contexts, must not be changed after they are tracked.
+     * The payload is still built when tracked if the Emitter measures each event as it is added,
+     * such as a BatchEmitter with maxBatchBytes set, or when events are stored in a file.
+     *
+     * @param deferredEncoding whether to defer encoding to the Emitter
+     * @return itself
+     */
+    public TrackerConfiguration deferredEncoding(boolean deferredEncoding) {
+        this.deferredEncoding = deferredEncoding;
+        return this;
+    }
+
+    /**
+     * The fraction of events, from 0 to 1, whose size is attributed to their parameters, self-describing
+     * event schemas and context entity schemas by a PayloadSizeProfiler (default is 0, disabled).
+     * Sampled events are parsed when tracked, so this should be kept low, such as 0.001.
+     * The results are available from Tracker.getPayloadSizeProfiler().
+     *
+     * @param payloadSizeSamplingRate the fraction of events to measure
+     * @return itself
+     */
+    public TrackerConfiguration payloadSizeSamplingRate(double payloadSizeSamplingRate) {
+        if (!(payloadSizeSamplingRate >= 0 && payloadSizeSamplingRate <= 1)) {
+            throw new IllegalArgumentException("payloadSizeSamplingRate must be between 0 and 1");
+        }
+        this.payloadSizeSamplingRate = payloadSizeSamplingRate;
+        return this;
+    }
+
+    /**
+     * The minimum time between the log lines in which the payload size profiler reports
+     * its largest contributors (default is 60 seconds). 0 disables the log lines.
+     *
+     * @param payloadSizeReportIntervalSeconds the report interval in seconds
+     * @return itself
+     */
+    public TrackerConfiguration payloadSizeReportIntervalSeconds(long payloadSizeReportIntervalSeconds) {
+        if (payloadSizeReportIntervalSeconds < 0) {
+            throw new IllegalArgumentException("payloadSizeReportIntervalSeconds must not be negative");
+        }
+        this.payloadSizeReportIntervalSeconds = payloadSizeReportIntervalSeconds;
+        return this;
+    }
 }
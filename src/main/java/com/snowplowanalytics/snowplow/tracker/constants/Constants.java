@@ -27,6 +27,10 @@ public class Constants {
     public static final String SCHEMA_USER_TIMINGS = "iglu:com.snowplowanalytics.snowplow/timing/jsonschema/1-0-0";
 
     public static final String POST_CONTENT_TYPE = "application/json; charset=utf-8";
+    // Bytes of the POST request body outside the events: {"schema":"...","data":[]}
+    public static final int POST_WRAPPER_BYTES = ("{\"schema\":\"" + SCHEMA_PAYLOAD_DATA + "\",\"data\":[]}").length();
+    // Bytes added to each event in a POST request: the separating comma and ,"stm":"1234567890123"
+    public static final int POST_EVENT_OVERHEAD_BYTES = 23;
 
     public static final String EVENT_PAGE_VIEW = "pv";
     public static final String EVENT_STRUCTURED = "se";
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tunes the batch size of a BatchEmitter within bounds, with additive increase and multiplicative
+ * decrease (AIMD), so that requests carry as many events as the collector handles within a latency target.
+ *
+ * The batch size is halved as soon as a request fails, so that it shrinks while the collector is struggling,
+ * however long the retry backoff makes each window of responses.
+ * Latency is judged over windows of {@link #WINDOW} responses, or of {@link #WINDOW_MILLIS} at low request rates,
+ * and a failure starts a new window. If the 99th percentile of a window's request latencies is above the target,
+ * the batch size is halved. A full window is large enough for the 99th percentile to leave out the slowest response,
+ * so the batch size is only halved for latency if more than 1% of the responses are slower than the target.
+ * Otherwise, if at least half of the window's batches were full, so that larger batches would
+ * send more events per request, the batch size grows by a twentieth of the range between the bounds.
+ * Batches that leave before they are full, because of lingerMs or a flush, don't grow the batch size.
+ *
+ * It isn't thread-safe: the BatchEmitter synchronizes on it.
+ */
+final class AdaptiveBatchSizer {
+
+    static final int WINDOW = 100;
+    static final long WINDOW_MILLIS = 60000;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long latencyTargetMs;
+    private final int increaseStep;
+    private final EmitterMetrics metrics;
+    private final LongSupplier nanoClock;
+
+    private final long[] latencies = new long[WINDOW];
+    private int responses;
+    private int fullBatches;
+    private long windowStart;
+
+    AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long latencyTargetMs, EmitterMetrics metrics) {
+        this(minBatchSize, maxBatchSize, latencyTargetMs, metrics, System::nanoTime);
+    }
+
+    AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long latencyTargetMs, EmitterMetrics metrics, LongSupplier nanoClock) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyTargetMs = latencyTargetMs;
+        this.increaseStep = Math.max(1, (maxBatchSize - minBatchSize) / 20);
+        this.metrics = metrics;
+        this.nanoClock = nanoClock;
+    }
+
+    int clamp(int batchSize) {
+        return Math.min(maxBatchSize, Math.max(minBatchSize, batchSize));
+    }
+
+    /**
+     * Records the response to a request, and returns the batch size to use from now on.
+     *
+     * @param batchSize the current batch size
+     * @param events the number of events in the request
+     * @param latencyMs the request latency, or 0 if there was no response
+     * @param successful whether the request succeeded
+     * @return the new batch size
+     */
+    int onResponse(int batchSize, int events, long latencyMs, boolean successful) {
+        if (!successful) {
+            responses = 0;
+            fullBatches = 0;
+            return changeTo(batchSize, clamp(batchSize / 2));
+        }
+
+        long now = nanoClock.getAsLong();
+        if (responses == 0) {
+            windowStart = now;
+        }
+        latencies[responses++] = latencyMs;
+        if (events >= batchSize) {
+            fullBatches++;
+        }
+        if (responses < WINDOW && now - windowStart < TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS)) {
+            return batchSize;
+        }
+
+        int newBatchSize = batchSize;
+        if (percentile99() > latencyTargetMs) {
+            newBatchSize = clamp(batchSize / 2);
+        } else if (fullBatches * 2 >= responses) {
+            newBatchSize = clamp(batchSize + increaseStep);
+        }
+        responses = 0;
+        fullBatches = 0;
+        return changeTo(batchSize, newBatchSize);
+    }
+
+    private int changeTo(int batchSize, int newBatchSize) {
+        if (newBatchSize < batchSize) {
+            metrics.batchSizeDecreased();
+        } else if (newBatchSize > batchSize) {
+            metrics.batchSizeIncreased();
+        }
+        return newBatchSize;
+    }
+
+    // Nearest-rank percentile of the window, which is then discarded.
+    // A window cut short by WINDOW_MILLIS may have too few responses to leave any out.
+    private long percentile99() {
+        Arrays.sort(latencies, 0, responses);
+        return latencies[(int) Math.ceil(0.99 * responses) - 1];
+    }
+}
@@ -13,12 +13,20 @@
 package com.snowplowanalytics.snowplow.tracker.emitter;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.snowplowanalytics.snowplow.tracker.configuration.EmitterConfiguration;
 import com.snowplowanalytics.snowplow.tracker.configuration.NetworkConfiguration;
@@ -26,6 +34,7 @@ import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
 import com.snowplowanalytics.snowplow.tracker.http.OkHttpClientAdapter;
+import com.snowplowanalytics.snowplow.tracker.jfr.FlightRecorderEvents;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
@@ -41,6 +50,11 @@ import org.slf4j.LoggerFactory;
  * When a new event (TrackerPayload) is received and added to the buffer, the BatchEmitter checks the
  * number of buffered events. If it is equal to or greater than the `batchSize`, an attempt is made to send
  * a batch of events as one request. Events are sent asynchronously.
+ * A burst of events is sent by a bounded number of tasks, each sending batches until the buffer is
+ * below `batchSize`, rather than by one task for every event added.
+ * If `lingerMs` is set, the buffered events are also sent once the oldest of them has waited that long.
+ * With adaptive batch sizing, the `batchSize` is tuned after every few responses, within bounds,
+ * from the request latency and whether batches fill up.
  *
  * If the request is unsuccessful, the events are returned to the buffer. A delay is introduced for all
  * event sending attempts. This increases exponentially until a request succeeds, when it is reset to 0.
@@ -51,16 +65,43 @@ import org.slf4j.LoggerFactory;
 public class BatchEmitter implements Emitter, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BatchEmitter.class);
-    private boolean isClosing = false;
+    private volatile boolean isClosing = false;
     private final AtomicInteger retryDelay;
     private final int maximumRetryDelay = 600000; // ms (10 min)
-    private int batchSize;
+    // Changed by adaptive batch sizing on the threads that complete requests
+    private volatile int batchSize;
+    private final AdaptiveBatchSizer batchSizer;
+    private final long maxBatchBytes;
+    // Request size of the events added since the last send was triggered, if maxBatchBytes is set
+    private final AtomicLong bytesSinceLastSend = new AtomicLong(0);
+    private final long lingerMs;
+    // A single timer for the oldest buffered event, armed only while events are waiting
+    private final Object lingerLock = new Object();
+    private volatile ScheduledFuture<?> lingerTimer;
+    // Set while a send started by the linger timer waits out the retry delay, so that later expiries
+    // during an outage don't start sends of their own
+    private final AtomicBoolean lingerSendScheduled = new AtomicBoolean(false);
+    // Full batches are sent by at most maxDrainTasks scheduled tasks, rather than one task per add()
+    private final int maxDrainTasks;
+    private final AtomicInteger drainTasks = new AtomicInteger(0);
+    // The number of send attempts requested by add() since a drain task last checked
+    private final AtomicInteger drainRequests = new AtomicInteger(0);
+    private final Runnable drainTask = this::drainFullBatches;
 
     private final HttpClientAdapter httpClientAdapter;
     private final ScheduledExecutorService executor;
+    private final ExecutorService requestExecutor;
     private final EventStore eventStore;
     private final Map<Integer, Boolean> customRetryForStatusCodes;
     private final EmitterCallback callback;
+    private final EmitterLatencyListener latencyListener;
+    private final Set<CompletableFuture<Integer>> requestsInFlight = ConcurrentHashMap.newKeySet();
+    // A permit is held from taking a batch out of the EventStore until its request completes,
+    // so that events wait in the bounded buffer rather than in the HTTP client while the collector is slow
+    private final Semaphore requestPermits;
+    // Set when a drain task stopped because every permit was held
+    private final AtomicBoolean drainBlocked = new AtomicBoolean(false);
+    private final EmitterMetrics metrics;
 
     /**
      * @deprecated Use NetworkConfiguration/EmitterConfiguration classes instead
@@ -252,6 +293,26 @@ public class BatchEmitter implements Emitter, Closeable {
         if (emitterConfig.getBufferCapacity() <= 0) {
             throw new IllegalArgumentException("bufferCapacity must be greater than 0");
         }
+        if (emitterConfig.getMaxBatchBytes() <= Constants.POST_WRAPPER_BYTES) {
+            throw new IllegalArgumentException("maxBatchBytes must be greater than " + Constants.POST_WRAPPER_BYTES);
+        }
+        if (emitterConfig.getLingerMs() < 0) {
+            throw new IllegalArgumentException("lingerMs must not be negative");
+        }
+        if (emitterConfig.getMaxBatchSize() != 0) {
+            if (emitterConfig.getMinBatchSize() <= 0) {
+                throw new IllegalArgumentException("minBatchSize must be greater than 0");
+            }
+            if (emitterConfig.getMaxBatchSize() < emitterConfig.getMinBatchSize()) {
+                throw new IllegalArgumentException("maxBatchSize must not be less than minBatchSize");
+            }
+            if (emitterConfig.getLatencyTargetMs() <= 0) {
+                throw new IllegalArgumentException("latencyTargetMs must be greater than 0");
+            }
+        }
+        if (networkConfig.getMaxConcurrentRequests() <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be greater than 0");
+        }
 
         if (networkConfig.getHttpClientAdapter() != null) {
             httpClientAdapter = networkConfig.getHttpClientAdapter();
@@ -265,15 +326,20 @@ public class BatchEmitter implements Emitter, Closeable {
             } else {
                 client = new OkHttpClient.Builder().build();
             }
+            // Requests are enqueued asynchronously, so the Dispatcher limits how many are in flight
+            client.dispatcher().setMaxRequests(networkConfig.getMaxConcurrentRequests());
+            client.dispatcher().setMaxRequestsPerHost(networkConfig.getMaxConcurrentRequests());
 
-            httpClientAdapter = OkHttpClientAdapter.builder() // use okhttp as a default
-                    .url(networkConfig.getCollectorUrl())
-                    .httpClient(client)
-                    .build();
+            // use okhttp as a default
+            httpClientAdapter = new OkHttpClientAdapter(networkConfig.getCollectorUrl(), client, networkConfig.getRequestCompression());
         }
 
         retryDelay = new AtomicInteger(0);
         batchSize = emitterConfig.getBatchSize();
+        maxBatchBytes = emitterConfig.getMaxBatchBytes();
+        lingerMs = emitterConfig.getLingerMs();
+        maxDrainTasks = emitterConfig.getThreadCount();
+        requestPermits = new Semaphore(networkConfig.getMaxConcurrentRequests());
 
         if (emitterConfig.getCallback() != null) {
             callback = emitterConfig.getCallback();
@@ -286,11 +352,22 @@ public class BatchEmitter implements Emitter, Closeable {
             };
         }
 
+        latencyListener = emitterConfig.getLatencyListener();
+
         if (emitterConfig.getEventStore() != null) {
             eventStore = emitterConfig.getEventStore();
         } else {
             eventStore = new InMemoryEventStore(emitterConfig.getBufferCapacity());
         }
+        metrics = new EmitterMetrics(eventStore::size, requestsInFlight::size, this::getBatchSize);
+
+        if (emitterConfig.getMaxBatchSize() != 0) {
+            batchSizer = new AdaptiveBatchSizer(emitterConfig.getMinBatchSize(), emitterConfig.getMaxBatchSize(),
+                    emitterConfig.getLatencyTargetMs(), metrics);
+            batchSize = batchSizer.clamp(batchSize);
+        } else {
+            batchSizer = null;
+        }
 
         if (emitterConfig.getCustomRetryForStatusCodes() != null) {
             customRetryForStatusCodes = emitterConfig.getCustomRetryForStatusCodes();
@@ -298,10 +375,25 @@ public class BatchEmitter implements Emitter, Closeable {
             customRetryForStatusCodes = new HashMap<>();
         }
 
+        ExecutorService virtualThreadExecutor = null;
+        if (emitterConfig.getRequestExecutorService() == null && emitterConfig.isUseVirtualThreads()) {
+            try {
+                virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor("snowplow-emitter-virtual-request-thread-");
+            } catch (UnsupportedOperationException e) {
+                LOGGER.warn("{}. Using a pool of {} threads instead", e.getMessage(), emitterConfig.getThreadCount());
+            }
+        }
+
         if (emitterConfig.getRequestExecutorService() != null) {
             executor = emitterConfig.getRequestExecutorService();
+            requestExecutor = null;
+        } else if (virtualThreadExecutor != null) {
+            // One platform thread times the sends, and each send runs on its own virtual thread
+            executor = Executors.newSingleThreadScheduledExecutor(new EmitterThreadFactory());
+            requestExecutor = virtualThreadExecutor;
         } else {
             executor = Executors.newScheduledThreadPool(emitterConfig.getThreadCount(), new EmitterThreadFactory());
+            requestExecutor = null;
         }
     }
 
@@ -326,16 +418,49 @@ public class BatchEmitter implements Emitter, Closeable {
      */
     @Override
     public boolean add(final TrackerPayload payload) {
+        // Events are only measured if requests are limited in size, so that deferred payloads stay deferred
+        long eventBytes = 0;
+        if (maxBatchBytes != Long.MAX_VALUE) {
+            eventBytes = BatchPayload.requestByteSize(payload);
+        }
+        // A deferred payload may already have been built, for example to measure it
+        if (payload.isFailed()) {
+            dropFailedEvents(Collections.singletonList(payload));
+            return false;
+        }
+        if (eventBytes > maxEventBytes()) {
+            LOGGER.error("Event of {} bytes is larger than the maximum request size of {} bytes: event dropped", eventBytes, maxBatchBytes);
+            metrics.eventsDropped(FailureType.EVENT_TOO_LARGE, 1);
+            callback.onFailure(FailureType.EVENT_TOO_LARGE, false, Collections.singletonList(payload));
+            return false;
+        }
+
         boolean result = eventStore.addEvent(payload);
+        if (result) {
+            metrics.eventAccepted();
+        }
 
         if (!isClosing) {
-            if (eventStore.size() >= batchSize) {
-                executor.schedule(getPostRequestRunnable(batchSize), retryDelay.get(), TimeUnit.MILLISECONDS);
+            boolean batchFull = eventStore.size() >= batchSize;
+            if (result && maxBatchBytes != Long.MAX_VALUE) {
+                batchFull |= bytesSinceLastSend.addAndGet(eventBytes) >= maxEventBytes();
+            }
+            if (batchFull) {
+                bytesSinceLastSend.set(0);
+                cancelLingerTimer();
+                requestDrain();
+            } else if (result) {
+                startLingerTimer();
             }
         }
         
-        if (!result) {
+        if (!result && payload.isFailed()) {
+            // Stores that serialize events build deferred payloads when they are added
+            dropFailedEvents(Collections.singletonList(payload));
+        } else if (!result) {
             LOGGER.error("Unable to add payload to emitter, emitter buffer is full");
+            metrics.eventsDropped(FailureType.TRACKER_STORAGE_FULL, 1);
+            FlightRecorderEvents.bufferFull(1, false);
             callback.onFailure(FailureType.TRACKER_STORAGE_FULL, false, Collections.singletonList(payload));
         }
 
@@ -344,10 +469,12 @@ public class BatchEmitter implements Emitter, Closeable {
 
     /**
      * Forces all the payloads currently in the buffer to be sent immediately, as a single request.
+     * If maxBatchBytes is set, the payloads are sent in as many requests as needed to keep within it.
      */
     @Override
     public void flushBuffer() {
-        executor.schedule(getPostRequestRunnable(eventStore.size()), 0, TimeUnit.MILLISECONDS);
+        cancelLingerTimer();
+        schedule(getPostRequestRunnable(eventStore.size()), 0);
     }
 
     /**
@@ -362,6 +489,7 @@ public class BatchEmitter implements Emitter, Closeable {
 
     /**
      * Customize the emitter batch size to any valid integer greater than zero.
+     * With adaptive batch sizing, it is kept within the configured bounds, and tuned from there.
      *
      * @param batchSize number of events to send in one request
      */
@@ -370,6 +498,12 @@ public class BatchEmitter implements Emitter, Closeable {
         if (batchSize <= 0) {
             throw new IllegalArgumentException("batchSize must be greater than 0");
         }
+        if (batchSizer != null) {
+            synchronized (batchSizer) {
+                this.batchSize = batchSizer.clamp(batchSize);
+            }
+            return;
+        }
         this.batchSize = batchSize;
     }
 
@@ -383,6 +517,38 @@ public class BatchEmitter implements Emitter, Closeable {
         return batchSize;
     }
 
+    /**
+     * Gets the maximum size in bytes of a POST request body
+     *
+     * @return the maximum batch size in bytes
+     */
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    // The byte budget for the events in one request, excluding the request wrapper
+    private long maxEventBytes() {
+        return maxBatchBytes - Constants.POST_WRAPPER_BYTES;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds that an event waits in the buffer
+     *
+     * @return the linger time, or 0 if disabled
+     */
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    /**
+     * Returns the counters, gauges and latency histograms of this emitter.
+     *
+     * @return the emitter metrics
+     */
+    public EmitterMetrics getMetrics() {
+        return metrics;
+    }
+
     int getRetryDelay() {
         return retryDelay.get();
     }
@@ -413,6 +579,130 @@ public class BatchEmitter implements Emitter, Closeable {
         return !dontRetryStatusCodes.contains(code);
     }
 
+    private void schedule(Runnable request, long delayMillis) {
+        if (requestExecutor == null) {
+            executor.schedule(request, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            executor.schedule(() -> requestExecutor.execute(request), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Arms the linger timer, unless it is disabled or already running for an older event
+    private void startLingerTimer() {
+        if (lingerMs == 0 || lingerTimer != null) {
+            return;
+        }
+        synchronized (lingerLock) {
+            if (lingerTimer == null && !isClosing) {
+                lingerTimer = executor.schedule(this::lingerExpired, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void cancelLingerTimer() {
+        if (lingerTimer == null) {
+            return;
+        }
+        synchronized (lingerLock) {
+            if (lingerTimer != null) {
+                lingerTimer.cancel(false);
+                lingerTimer = null;
+            }
+        }
+    }
+
+    private void lingerExpired() {
+        synchronized (lingerLock) {
+            lingerTimer = null;
+        }
+        if (!isClosing && eventStore.size() > 0 && lingerSendScheduled.compareAndSet(false, true)) {
+            bytesSinceLastSend.set(0);
+            schedule(this::sendLingeringEvents, retryDelay.get());
+        }
+    }
+
+    private void sendLingeringEvents() {
+        lingerSendScheduled.set(false);
+        getPostRequestRunnable(eventStore.size()).run();
+    }
+
+    /**
+     * Makes sure a drain task will send the full batches in the buffer.
+     * If maxDrainTasks are already scheduled or running, no task is added:
+     * one of them will run again once it has finished.
+     */
+    private void requestDrain() {
+        drainRequests.incrementAndGet();
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        int running;
+        while ((running = drainTasks.get()) < maxDrainTasks) {
+            if (drainTasks.compareAndSet(running, running + 1)) {
+                schedule(drainTask, retryDelay.get());
+                return;
+            }
+        }
+    }
+
+    // Sends batches until the buffer no longer holds a full batch, by count or by bytes
+    private void drainFullBatches() {
+        try {
+            int attempts = drainRequests.getAndSet(0);
+            while (acquireRequestPermit()) {
+                BatchPayload batchedEvents;
+                try {
+                    batchedEvents = getEventsBatch(batchSize);
+                } catch (Exception e) {
+                    releaseRequestPermit();
+                    throw e;
+                }
+                if (batchedEvents == null || batchedEvents.size() == 0) {
+                    releaseRequestPermit();
+                    break;
+                }
+                sendBatch(batchedEvents);
+                if (retryDelay.get() > 0) {
+                    // After a failure, each add() that asked for a send gets one attempt, as the events
+                    // would otherwise be sent again immediately. Later adds retry after the retry delay.
+                    attempts += drainRequests.getAndSet(0);
+                    if (--attempts <= 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("BatchEmitter event sending error: {}", e.getMessage());
+        } finally {
+            drainTasks.decrementAndGet();
+        }
+
+        // A batch may have filled up after this task last checked, while no other task could be scheduled
+        if (!isClosing && drainRequests.get() > 0) {
+            scheduleDrain();
+        } else if (eventStore.size() > 0) {
+            startLingerTimer();
+        }
+    }
+
+    // Doesn't wait for a permit: once one is released, the drain is requested again
+    private boolean acquireRequestPermit() {
+        if (requestPermits.tryAcquire()) {
+            return true;
+        }
+        drainBlocked.set(true);
+        // A request may have completed before the flag was set
+        return requestPermits.tryAcquire();
+    }
+
+    private void releaseRequestPermit() {
+        requestPermits.release();
+        if (drainBlocked.getAndSet(false) && !isClosing) {
+            requestDrain();
+        }
+    }
+
     /**
      * Returns a Runnable POST Request operation
      *
@@ -421,77 +711,224 @@ public class BatchEmitter implements Emitter, Closeable {
      */
     private Runnable getPostRequestRunnable(int numberOfEvents) {
         return () -> {
-            BatchPayload batchedEvents = null;
-
-            // If the InMemoryEventStore queue is full when events are returned for retry,
-            // newer events are removed to make space
-            List<TrackerPayload> eventsDeletedFromStorage = new ArrayList<>();
-
-            try {
-                batchedEvents = eventStore.getEventsBatch(numberOfEvents);
-
-                if (batchedEvents == null || batchedEvents.size() == 0) {
+            // Batches are also limited by maxBatchBytes, so the events may need more than one request
+            int remaining = numberOfEvents;
+            while (remaining > 0) {
+                // An explicit send of these events waits for a request to complete, rather than being dropped
+                try {
+                    requestPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                BatchPayload batchedEvents;
+                try {
+                    batchedEvents = getEventsBatch(remaining);
+                } catch (Exception e) {
+                    releaseRequestPermit();
+                    LOGGER.error("BatchEmitter event sending error: {}", e.getMessage());
                     return;
                 }
 
-                List<TrackerPayload> eventsInRequest = new ArrayList<>(batchedEvents.getPayloads());
-                final SelfDescribingJson post = getFinalPost(eventsInRequest);
-                final int code = httpClientAdapter.post(post);
-
-                // Process results
-                if (isSuccessfulSend(code)) {
-                    LOGGER.debug("BatchEmitter successfully sent {} events: code: {}", eventsInRequest.size(), code);
-                    retryDelay.set(0);
-                    eventStore.cleanupAfterSendingAttempt(false, batchedEvents.getBatchId());
-                    callback.onSuccess(eventsInRequest);
+                if (batchedEvents == null || batchedEvents.size() == 0) {
+                    releaseRequestPermit();
+                    break;
+                }
+                remaining -= batchedEvents.size();
+                sendBatch(batchedEvents);
+            }
 
-                } else if (!shouldRetry(code)) {
-                    LOGGER.debug("BatchEmitter failed to send {} events. No retry for code {}: events dropped", eventsInRequest.size(), code);
-                    eventStore.cleanupAfterSendingAttempt(false, batchedEvents.getBatchId());
-                    callback.onFailure(FailureType.REJECTED_BY_COLLECTOR, false, eventsInRequest);
+            // Events that didn't fit in this send still need to leave within lingerMs
+            if (eventStore.size() > 0) {
+                startLingerTimer();
+            }
+        };
+    }
 
-                } else {
-                    LOGGER.error("BatchEmitter failed to send {} events: code: {}", eventsInRequest.size(), code);
-                    eventsDeletedFromStorage = eventStore.cleanupAfterSendingAttempt(true, batchedEvents.getBatchId());
+    private BatchPayload getEventsBatch(int numberToGet) {
+        Object batchWait = FlightRecorderEvents.beginBatchWait();
+        // Events are only measured if requests are limited in size, as measuring a deferred payload
+        // would build it while the EventStore is locked
+        BatchPayload batchedEvents = maxBatchBytes == Long.MAX_VALUE
+                ? eventStore.getEventsBatch(numberToGet)
+                : eventStore.getEventsBatch(numberToGet, maxEventBytes());
+        FlightRecorderEvents.commitBatchWait(batchWait, numberToGet, batchedEvents == null ? 0 : batchedEvents.size());
+        return batchedEvents;
+    }
 
-                    if (code == -1) {
-                        callback.onFailure(FailureType.HTTP_CONNECTION_FAILURE, true, eventsInRequest);
+    // Must be called holding a request permit, which is released once the request completes
+    private void sendBatch(final BatchPayload batchedEvents) {
+        List<TrackerPayload> builtEvents = batchedEvents.getPayloads();
+        try {
+            builtEvents = buildEvents(batchedEvents);
+            if (builtEvents.isEmpty()) {
+                eventStore.cleanupAfterSendingAttempt(false, batchedEvents.getBatchId());
+                releaseRequestPermit();
+                return;
+            }
+            final List<TrackerPayload> eventsInRequest = builtEvents;
+            final long sentTimestamp = System.currentTimeMillis();
+            final SelfDescribingJson post = getFinalPost(eventsInRequest, sentTimestamp);
+
+            // The request completes without holding this thread, so many batches can be in flight at once
+            final Object requestEvent = FlightRecorderEvents.beginRequest();
+            final long requestStart = System.nanoTime();
+            final CompletableFuture<Integer> request = httpClientAdapter.postAsync(post);
+            requestsInFlight.add(request);
+            request.whenComplete((code, exception) -> {
+                try {
+                    FlightRecorderEvents.commitRequest(requestEvent, eventsInRequest.size(), exception == null ? code : -1);
+                    if (exception != null) {
+                        adjustBatchSize(eventsInRequest.size(), 0, false);
+                        processRequestError(batchedEvents, eventsInRequest, exception);
                     } else {
-                        callback.onFailure(FailureType.REJECTED_BY_COLLECTOR, true, eventsInRequest);
-                    }
-
-                    if (!eventsDeletedFromStorage.isEmpty()) {
-                        callback.onFailure(FailureType.TRACKER_STORAGE_FULL, false, eventsDeletedFromStorage);
+                        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart);
+                        metrics.requestCompleted(latencyMs);
+                        // Rejected events, such as with a 400, don't show that the collector is overloaded
+                        adjustBatchSize(eventsInRequest.size(), latencyMs, !shouldRetry(code));
+                        if (isSuccessfulSend(code)) {
+                            recordSentBatch(eventsInRequest, sentTimestamp);
+                        }
+                        processRequestResult(batchedEvents, eventsInRequest, code);
                     }
+                } finally {
+                    requestsInFlight.remove(request);
+                    releaseRequestPermit();
+                }
+            });
+        } catch (Exception e) {
+            processRequestError(batchedEvents, builtEvents, e);
+            releaseRequestPermit();
+        }
+    }
 
-                    // exponentially increase retry backoff time after the first failure, up to the maximum wait time
-                    if (!retryDelay.compareAndSet(0, 100)) {
-                        retryDelay.updateAndGet(this::calculateRetryDelay);
-                    }
+    // Builds any deferred payloads, now that they have left the EventStore, and drops those that fail.
+    // Payloads that had already failed were reported then, and are still left out if their batch is retried.
+    private List<TrackerPayload> buildEvents(BatchPayload batchedEvents) {
+        List<TrackerPayload> builtEvents = new ArrayList<>(batchedEvents.size());
+        List<TrackerPayload> failedEvents = null;
+        for (TrackerPayload payload : batchedEvents.getPayloads()) {
+            boolean deferred = payload.isDeferred();
+            if (payload.build()) {
+                builtEvents.add(payload);
+            } else if (deferred) {
+                if (failedEvents == null) {
+                    failedEvents = new ArrayList<>();
                 }
+                failedEvents.add(payload);
+            }
+        }
+        if (failedEvents != null) {
+            dropFailedEvents(failedEvents);
+        }
+        return builtEvents;
+    }
+
+    private void dropFailedEvents(List<TrackerPayload> failedEvents) {
+        LOGGER.error("Unable to build the payloads of {} events: events dropped", failedEvents.size());
+        metrics.eventsDropped(FailureType.EVENT_BUILD_FAILURE, failedEvents.size());
+        callback.onFailure(FailureType.EVENT_BUILD_FAILURE, false, failedEvents);
+    }
+
+    private void adjustBatchSize(int events, long latencyMs, boolean successful) {
+        if (batchSizer == null) {
+            return;
+        }
+        synchronized (batchSizer) {
+            batchSize = batchSizer.onResponse(batchSize, events, latencyMs, successful);
+        }
+    }
+
+    private void recordSentBatch(List<TrackerPayload> eventsInRequest, long sentTimestamp) {
+        long ackTimestamp = System.currentTimeMillis();
+        long maxTimeInBuffer = 0;
+        // The events already hold their stm, so their size is exact apart from the separating commas
+        long bytes = Constants.POST_WRAPPER_BYTES + eventsInRequest.size() - 1;
+        for (TrackerPayload payload : eventsInRequest) {
+            bytes += payload.getByteSize();
+            long createdTimestamp = payload.getDeviceCreatedTimestamp();
+            long timeInBuffer = sentTimestamp - createdTimestamp;
+            metrics.eventDelivered(timeInBuffer, ackTimestamp - createdTimestamp);
+            maxTimeInBuffer = Math.max(maxTimeInBuffer, timeInBuffer);
+        }
+        metrics.batchSent(eventsInRequest.size(), bytes);
+
+        if (latencyListener != null) {
+            try {
+                latencyListener.onBatchDelivered(new BatchLatency(
+                        eventsInRequest.size(), maxTimeInBuffer, ackTimestamp - sentTimestamp, metrics));
             } catch (Exception e) {
-                LOGGER.error("BatchEmitter event sending error: {}", e.getMessage());
-                if (batchedEvents != null) {
-                    eventsDeletedFromStorage = eventStore.cleanupAfterSendingAttempt(true, batchedEvents.getBatchId());
-                    callback.onFailure(FailureType.EMITTER_REQUEST_FAILURE, true, new ArrayList<>(batchedEvents.getPayloads()));
+                LOGGER.error("EmitterLatencyListener error: {}", e.getMessage());
+            }
+        }
+    }
 
-                    if (!eventsDeletedFromStorage.isEmpty()) {
-                        callback.onFailure(FailureType.TRACKER_STORAGE_FULL, false, eventsDeletedFromStorage);
-                    }
-                }
+    private void processRequestResult(BatchPayload batchedEvents, List<TrackerPayload> eventsInRequest, int code) {
+        // If the InMemoryEventStore queue is full when events are returned for retry,
+        // newer events are removed to make space
+        List<TrackerPayload> eventsDeletedFromStorage;
+
+        if (isSuccessfulSend(code)) {
+            LOGGER.debug("BatchEmitter successfully sent {} events: code: {}", eventsInRequest.size(), code);
+            retryDelay.set(0);
+            eventStore.cleanupAfterSendingAttempt(false, batchedEvents.getBatchId());
+            callback.onSuccess(eventsInRequest);
+
+        } else if (!shouldRetry(code)) {
+            LOGGER.debug("BatchEmitter failed to send {} events. No retry for code {}: events dropped", eventsInRequest.size(), code);
+            metrics.batchFailed(FailureType.REJECTED_BY_COLLECTOR, eventsInRequest.size(), false);
+            eventStore.cleanupAfterSendingAttempt(false, batchedEvents.getBatchId());
+            callback.onFailure(FailureType.REJECTED_BY_COLLECTOR, false, eventsInRequest);
+
+        } else {
+            LOGGER.error("BatchEmitter failed to send {} events: code: {}", eventsInRequest.size(), code);
+            eventsDeletedFromStorage = eventStore.cleanupAfterSendingAttempt(true, batchedEvents.getBatchId());
+
+            FailureType failureType = code == -1 ? FailureType.HTTP_CONNECTION_FAILURE : FailureType.REJECTED_BY_COLLECTOR;
+            metrics.batchFailed(failureType, eventsInRequest.size(), true);
+            callback.onFailure(failureType, true, eventsInRequest);
+
+            if (!eventsDeletedFromStorage.isEmpty()) {
+                metrics.eventsDropped(FailureType.TRACKER_STORAGE_FULL, eventsDeletedFromStorage.size());
+                FlightRecorderEvents.bufferFull(eventsDeletedFromStorage.size(), true);
+                callback.onFailure(FailureType.TRACKER_STORAGE_FULL, false, eventsDeletedFromStorage);
             }
-        };
+
+            // exponentially increase retry backoff time after the first failure, up to the maximum wait time
+            int backoff = 100;
+            if (!retryDelay.compareAndSet(0, backoff)) {
+                backoff = retryDelay.updateAndGet(this::calculateRetryDelay);
+            }
+            FlightRecorderEvents.retry(eventsInRequest.size(), failureType.name(), code, backoff);
+            startLingerTimer();
+        }
+    }
+
+    private void processRequestError(BatchPayload batchedEvents, List<TrackerPayload> eventsInRequest, Throwable exception) {
+        LOGGER.error("BatchEmitter event sending error: {}", exception.getMessage());
+        List<TrackerPayload> eventsDeletedFromStorage = eventStore.cleanupAfterSendingAttempt(true, batchedEvents.getBatchId());
+        metrics.batchFailed(FailureType.EMITTER_REQUEST_FAILURE, eventsInRequest.size(), true);
+        callback.onFailure(FailureType.EMITTER_REQUEST_FAILURE, true, new ArrayList<>(eventsInRequest));
+        FlightRecorderEvents.retry(eventsInRequest.size(), FailureType.EMITTER_REQUEST_FAILURE.name(), -1, retryDelay.get());
+
+        if (!eventsDeletedFromStorage.isEmpty()) {
+            metrics.eventsDropped(FailureType.TRACKER_STORAGE_FULL, eventsDeletedFromStorage.size());
+            FlightRecorderEvents.bufferFull(eventsDeletedFromStorage.size(), true);
+            callback.onFailure(FailureType.TRACKER_STORAGE_FULL, false, eventsDeletedFromStorage);
+        }
+        startLingerTimer();
     }
 
     /**
      * Constructs the SelfDescribingJson to be sent to the endpoint
      *
      * @param events the event buffer
+     * @param sentTime the device sent timestamp (stm) to add to the events
      * @return the constructed POST payload
      */
-    private SelfDescribingJson getFinalPost(final List<TrackerPayload> events) {
+    private SelfDescribingJson getFinalPost(final List<TrackerPayload> events, final long sentTime) {
         final List<Map<String, String>> toSendPayloads = new ArrayList<>();
-        final String sentTimestamp = Long.toString(System.currentTimeMillis());
+        final String sentTimestamp = Long.toString(sentTime);
 
         for (TrackerPayload payload : events) {
             payload.add(Parameter.DEVICE_SENT_TIMESTAMP, sentTimestamp);
@@ -547,6 +984,36 @@ public class BatchEmitter implements Emitter, Closeable {
                 Thread.currentThread().interrupt();
             }
         }
+
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            try {
+                if (!requestExecutor.awaitTermination(closeTimeout, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Emitter virtual threads did not terminate");
+                }
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Requests are completed by the HTTP client, not the executor, so wait for them separately
+        try {
+            CompletableFuture.allOf(requestsInFlight.toArray(new CompletableFuture<?>[0]))
+                    .get(closeTimeout, TimeUnit.SECONDS);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            LOGGER.warn("Emitter requests did not complete: {}", e.getMessage());
+        }
+
+        // A durable EventStore keeps any unsent events for the next run
+        if (eventStore instanceof Closeable) {
+            try {
+                ((Closeable) eventStore).close();
+            } catch (IOException e) {
+                LOGGER.warn("Event store did not close cleanly: {}", e.getMessage());
+            }
+        }
     }
 
     /**
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+/**
+ * The latency of a batch of events successfully sent to the event collector,
+ * passed to an {@link EmitterLatencyListener}.
+ *
+ * An event's time in buffer is the time between its creation (dtm) and the sending of the request (stm).
+ * The delivery latency is the time between sending the request and the collector's acknowledgement,
+ * and the end-to-end latency is their sum. Times are in milliseconds, from the device clock.
+ * Percentiles over the events sent by the emitter are available from its {@link EmitterMetrics}:
+ * since the emitter was created, or over the last one to two minutes from the recent histograms.
+ */
+public final class BatchLatency {
+
+    private final int eventCount;
+    private final long maxTimeInBuffer;
+    private final long deliveryLatency;
+    private final EmitterMetrics metrics;
+
+    BatchLatency(int eventCount, long maxTimeInBuffer, long deliveryLatency, EmitterMetrics metrics) {
+        this.eventCount = eventCount;
+        this.maxTimeInBuffer = maxTimeInBuffer;
+        this.deliveryLatency = deliveryLatency;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the number of events in the batch
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the longest time in buffer of the events in the batch
+     */
+    public long getMaxTimeInBuffer() {
+        return maxTimeInBuffer;
+    }
+
+    /**
+     * @return the time from sending the request to the collector's acknowledgement
+     */
+    public long getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * @return the longest end-to-end latency of the events in the batch
+     */
+    public long getMaxEndToEndLatency() {
+        return maxTimeInBuffer + deliveryLatency;
+    }
+
+    /**
+     * Returns the metrics of the emitter. For recent percentiles, for example to spot events waiting
+     * in the buffer during a traffic trough, use {@link EmitterMetrics#getRecentTimeInBuffer()}
+     * rather than the cumulative {@link EmitterMetrics#getTimeInBuffer()}.
+     *
+     * @return the same EmitterMetrics as {@link BatchEmitter#getMetrics()}, with cumulative and recent latency histograms
+     */
+    public EmitterMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchLatency{" +
+                "eventCount=" + eventCount +
+                ", maxTimeInBuffer=" + maxTimeInBuffer +
+                ", deliveryLatency=" + deliveryLatency +
+                '}';
+    }
+}
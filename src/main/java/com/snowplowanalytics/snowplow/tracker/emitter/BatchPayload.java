@@ -12,8 +12,10 @@
  */
 package com.snowplowanalytics.snowplow.tracker.emitter;
 
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -40,4 +42,38 @@ public class BatchPayload {
     public int size() {
         return payloads.size();
     }
+
+    /**
+     * Returns the number of bytes an event adds to a POST request body.
+     *
+     * @param payload the event
+     * @return the size of the event in a request
+     */
+    static long requestByteSize(TrackerPayload payload) {
+        return payload.getByteSize() + Constants.POST_EVENT_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Counts how many events from the start of a buffer make up a full batch: either numberToGet events,
+     * or as many events as fit within maxBytes, if they fill it or the next event doesn't fit.
+     * The first event is always included, even if it doesn't fit.
+     *
+     * @param events the buffered events, oldest first
+     * @param numberToGet the maximum number of events in the batch
+     * @param maxBytes the maximum request size of the events in the batch
+     * @return the number of events in the batch, or -1 if there aren't enough events for a full batch
+     */
+    static int countFullBatch(Iterator<TrackerPayload> events, int numberToGet, long maxBytes) {
+        int count = 0;
+        long bytes = 0;
+        while (count < numberToGet && events.hasNext()) {
+            long eventBytes = requestByteSize(events.next());
+            if (count > 0 && bytes + eventBytes > maxBytes) {
+                return count;
+            }
+            bytes += eventBytes;
+            count++;
+        }
+        return count == numberToGet || bytes >= maxBytes ? count : -1;
+    }
 }
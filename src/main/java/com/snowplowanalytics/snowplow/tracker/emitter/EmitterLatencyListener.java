@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+/**
+ * This interface allows the user to be notified of the latency of each batch of events
+ * successfully sent to the event collector, for example to alert when events wait too long
+ * in the buffer because the batchSize is too large for the traffic.
+ *
+ * The listener is called on the thread that completed the request, so it should return quickly.
+ * Exceptions it throws are logged and ignored.
+ */
+public interface EmitterLatencyListener {
+    void onBatchDelivered(BatchLatency latency);
+}
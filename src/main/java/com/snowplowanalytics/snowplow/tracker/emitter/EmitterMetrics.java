@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters, gauges and latency histograms describing the behaviour of a BatchEmitter,
+ * returned by {@link BatchEmitter#getMetrics()}.
+ *
+ * The counters are striped LongAdders, so that events added from many threads don't contend on them.
+ * The counters and histograms can be read at any time without locking. The counters are cumulative
+ * from the creation of the emitter. Each latency is recorded in two histograms: a cumulative one, and a
+ * recent one with only the values of the last one to two minutes, whose percentiles follow changes in latency.
+ * The recent histograms are the ones published by {@link EmitterMetricsBinder}.
+ *
+ * An event is counted as accepted when it is added to the buffer. Each accepted event is later counted
+ * as sent, or as dropped, unless it is still buffered. Events in a failed request that will be retried
+ * are counted as retried each time. Dropped events are counted by the {@link FailureType} reported
+ * to the EmitterCallback, and failed requests by the FailureType of the failure.
+ */
+public final class EmitterMetrics {
+
+    private static final FailureType[] FAILURE_TYPES = FailureType.values();
+    // Recent histograms hold the values of the current and previous windows
+    static final long RECENT_WINDOW_MILLIS = 60000;
+
+    private final LongAdder eventsAccepted = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder eventsRetried = new LongAdder();
+    private final LongAdder[] eventsDropped = newCounters();
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder[] batchesFailed = newCounters();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder batchSizeIncreases = new LongAdder();
+    private final LongAdder batchSizeDecreases = new LongAdder();
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final LatencyHistogram timeInBuffer = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final LatencyHistogram recentRequestLatency = new LatencyHistogram(RECENT_WINDOW_MILLIS, System::nanoTime);
+    private final LatencyHistogram recentTimeInBuffer = new LatencyHistogram(RECENT_WINDOW_MILLIS, System::nanoTime);
+    private final LatencyHistogram recentEndToEndLatency = new LatencyHistogram(RECENT_WINDOW_MILLIS, System::nanoTime);
+    private final IntSupplier bufferSize;
+    private final IntSupplier batchesInFlight;
+    private final IntSupplier batchSize;
+
+    EmitterMetrics(IntSupplier bufferSize, IntSupplier batchesInFlight, IntSupplier batchSize) {
+        this.bufferSize = bufferSize;
+        this.batchesInFlight = batchesInFlight;
+        this.batchSize = batchSize;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[FAILURE_TYPES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    // --- Recording, by the BatchEmitter
+
+    void eventAccepted() {
+        eventsAccepted.increment();
+    }
+
+    void eventsDropped(FailureType failureType, int count) {
+        eventsDropped[failureType.ordinal()].add(count);
+    }
+
+    void batchSent(int events, long bytes) {
+        batchesSent.increment();
+        eventsSent.add(events);
+        bytesSent.add(bytes);
+    }
+
+    void batchFailed(FailureType failureType, int events, boolean willRetry) {
+        batchesFailed[failureType.ordinal()].increment();
+        if (willRetry) {
+            eventsRetried.add(events);
+        } else {
+            eventsDropped[failureType.ordinal()].add(events);
+        }
+    }
+
+    void requestCompleted(long latencyMs) {
+        requestLatency.recordValue(latencyMs);
+        recentRequestLatency.recordValue(latencyMs);
+    }
+
+    void eventDelivered(long timeInBufferMs, long endToEndLatencyMs) {
+        timeInBuffer.recordValue(timeInBufferMs);
+        recentTimeInBuffer.recordValue(timeInBufferMs);
+        endToEndLatency.recordValue(endToEndLatencyMs);
+        recentEndToEndLatency.recordValue(endToEndLatencyMs);
+    }
+
+    void batchSizeIncreased() {
+        batchSizeIncreases.increment();
+    }
+
+    void batchSizeDecreased() {
+        batchSizeDecreases.increment();
+    }
+
+    // --- Counters
+
+    /**
+     * @return the number of events added to the buffer
+     */
+    public long getEventsAccepted() {
+        return eventsAccepted.sum();
+    }
+
+    /**
+     * @return the number of events sent in successful requests
+     */
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    /**
+     * @return the number of events in failed requests that were retried, counted once per failed attempt
+     */
+    public long getEventsRetried() {
+        return eventsRetried.sum();
+    }
+
+    /**
+     * @return the total number of events that were lost
+     */
+    public long getEventsDropped() {
+        long total = 0;
+        for (LongAdder counter : eventsDropped) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @param failureType the reason the events were lost
+     * @return the number of events that were lost for this reason
+     */
+    public long getEventsDropped(FailureType failureType) {
+        return eventsDropped[failureType.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of successful requests
+     */
+    public long getBatchesSent() {
+        return batchesSent.sum();
+    }
+
+    /**
+     * @param failureType the type of failure
+     * @return the number of requests that failed with this type of failure
+     */
+    public long getBatchesFailed(FailureType failureType) {
+        return batchesFailed[failureType.ordinal()].sum();
+    }
+
+    /**
+     * Returns the size of the successful request bodies, as measured by the events' byte sizes.
+     * If requests are compressed, fewer bytes are sent over the network.
+     *
+     * @return the number of bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * @return the number of times adaptive batch sizing increased the batch size
+     */
+    public long getBatchSizeIncreases() {
+        return batchSizeIncreases.sum();
+    }
+
+    /**
+     * @return the number of times adaptive batch sizing decreased the batch size
+     */
+    public long getBatchSizeDecreases() {
+        return batchSizeDecreases.sum();
+    }
+
+    // --- Gauges
+
+    /**
+     * @return the number of events currently in the buffer, as reported by the EventStore
+     */
+    public int getBufferSize() {
+        return bufferSize.getAsInt();
+    }
+
+    /**
+     * @return the number of requests currently waiting for a response
+     */
+    public int getBatchesInFlight() {
+        return batchesInFlight.getAsInt();
+    }
+
+    /**
+     * @return the current batch size, which changes over time with adaptive batch sizing
+     */
+    public int getBatchSize() {
+        return batchSize.getAsInt();
+    }
+
+    // --- Histograms
+
+    /**
+     * Returns the round-trip times, in milliseconds, of the requests that received a response,
+     * whether successful or not, since the creation of the emitter.
+     *
+     * @return the request latency histogram
+     */
+    public LatencyHistogram getRequestLatency() {
+        return requestLatency;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that each successfully sent event waited between its
+     * creation (dtm) and the sending of its request (stm), since the creation of the emitter.
+     *
+     * @return the time in buffer histogram
+     */
+    public LatencyHistogram getTimeInBuffer() {
+        return timeInBuffer;
+    }
+
+    /**
+     * Returns the time, in milliseconds, between the creation (dtm) of each successfully sent event
+     * and the collector's acknowledgement of its request. Unlike the time in buffer, it includes
+     * the request latency, and is measured from the device clock. It covers the events sent since
+     * the creation of the emitter.
+     *
+     * @return the end-to-end latency histogram
+     */
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    /**
+     * Returns the request latency of the last one to two minutes. See {@link #getRequestLatency()}.
+     *
+     * @return the recent request latency histogram
+     */
+    public LatencyHistogram getRecentRequestLatency() {
+        return recentRequestLatency;
+    }
+
+    /**
+     * Returns the time in buffer of the events sent in the last one to two minutes. See {@link #getTimeInBuffer()}.
+     *
+     * @return the recent time in buffer histogram
+     */
+    public LatencyHistogram getRecentTimeInBuffer() {
+        return recentTimeInBuffer;
+    }
+
+    /**
+     * Returns the end-to-end latency of the events sent in the last one to two minutes. See {@link #getEndToEndLatency()}.
+     *
+     * @return the recent end-to-end latency histogram
+     */
+    public LatencyHistogram getRecentEndToEndLatency() {
+        return recentEndToEndLatency;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Registers the {@link EmitterMetrics} of a BatchEmitter with a Micrometer MeterRegistry.
+ * It requires the optional micrometer-core dependency ("micrometerSupport" feature).
+ *
+ * The meters read the EmitterMetrics when they are published, so recording events costs nothing extra.
+ * Counters by FailureType have a "failure_type" tag. The recent latency histograms, covering the last
+ * one to two minutes, are published as gauges of their 50th, 90th, 99th and 100th percentiles,
+ * with a "percentile" tag. The cumulative histograms aren't published, as their percentiles
+ * hardly move once the emitter has been running for a while.
+ */
+public class EmitterMetricsBinder implements MeterBinder {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final EmitterMetrics metrics;
+    private final Iterable<Tag> tags;
+
+    /**
+     * Creates a binder for the metrics of an emitter.
+     *
+     * @param metrics the emitter metrics
+     */
+    public EmitterMetricsBinder(EmitterMetrics metrics) {
+        this(metrics, Collections.<Tag>emptyList());
+    }
+
+    /**
+     * Creates a binder for the metrics of an emitter, adding tags to each meter,
+     * for example to tell apart the emitters of several trackers.
+     *
+     * @param metrics the emitter metrics
+     * @param tags the tags to add
+     */
+    public EmitterMetricsBinder(EmitterMetrics metrics, Iterable<Tag> tags) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.tags = Objects.requireNonNull(tags);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, "snowplow.emitter.events.accepted", "events", "Events added to the buffer", EmitterMetrics::getEventsAccepted);
+        counter(registry, "snowplow.emitter.events.sent", "events", "Events sent in successful requests", EmitterMetrics::getEventsSent);
+        counter(registry, "snowplow.emitter.events.retried", "events", "Events in failed requests that were retried", EmitterMetrics::getEventsRetried);
+        counter(registry, "snowplow.emitter.batches.sent", "requests", "Successful requests", EmitterMetrics::getBatchesSent);
+        counter(registry, "snowplow.emitter.bytes.sent", "bytes", "Size of the successful request bodies", EmitterMetrics::getBytesSent);
+        counter(registry, "snowplow.emitter.batch_size.increases", "changes", "Batch size increases by adaptive batch sizing", EmitterMetrics::getBatchSizeIncreases);
+        counter(registry, "snowplow.emitter.batch_size.decreases", "changes", "Batch size decreases by adaptive batch sizing", EmitterMetrics::getBatchSizeDecreases);
+
+        for (FailureType failureType : FailureType.values()) {
+            FunctionCounter.builder("snowplow.emitter.events.dropped", metrics, m -> m.getEventsDropped(failureType))
+                    .tags(tags)
+                    .tag("failure_type", failureType.name())
+                    .description("Events that were lost")
+                    .baseUnit("events")
+                    .register(registry);
+            FunctionCounter.builder("snowplow.emitter.batches.failed", metrics, m -> m.getBatchesFailed(failureType))
+                    .tags(tags)
+                    .tag("failure_type", failureType.name())
+                    .description("Requests that failed")
+                    .baseUnit("requests")
+                    .register(registry);
+        }
+
+        Gauge.builder("snowplow.emitter.buffer.size", metrics, EmitterMetrics::getBufferSize)
+                .tags(tags)
+                .description("Events in the buffer")
+                .baseUnit("events")
+                .register(registry);
+        Gauge.builder("snowplow.emitter.batches.in_flight", metrics, EmitterMetrics::getBatchesInFlight)
+                .tags(tags)
+                .description("Requests waiting for a response")
+                .baseUnit("requests")
+                .register(registry);
+        Gauge.builder("snowplow.emitter.batch_size", metrics, EmitterMetrics::getBatchSize)
+                .tags(tags)
+                .description("The number of events sent in a full batch")
+                .baseUnit("events")
+                .register(registry);
+
+        histogram(registry, "snowplow.emitter.request.latency", "Collector round-trip time", metrics.getRecentRequestLatency());
+        histogram(registry, "snowplow.emitter.time_in_buffer", "Time from event creation to sending", metrics.getRecentTimeInBuffer());
+        histogram(registry, "snowplow.emitter.end_to_end.latency", "Time from event creation to acknowledgement by the collector", metrics.getRecentEndToEndLatency());
+    }
+
+    private void counter(MeterRegistry registry, String name, String unit, String description, ToDoubleFunction<EmitterMetrics> count) {
+        FunctionCounter.builder(name, metrics, count)
+                .tags(tags)
+                .description(description)
+                .baseUnit(unit)
+                .register(registry);
+    }
+
+    private void histogram(MeterRegistry registry, String name, String description, LatencyHistogram histogram) {
+        for (double percentile : PERCENTILES) {
+            Gauge.builder(name, histogram, h -> h.getValueAtPercentile(percentile))
+                    .tags(tags)
+                    .tag("percentile", Double.toString(percentile / 100))
+                    .description(description)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+    }
+}
@@ -37,6 +37,23 @@ public interface EventStore {
      */
     BatchPayload getEventsBatch(int numberToGet);
 
+    /**
+     * Remove some TrackerPayloads from the buffer, limiting the size of the batch in bytes as well as events.
+     * The batch holds numberToGet events, or fewer if the next event would take the total size of the batch
+     * over maxBytes. The size of each event is its getByteSize(), plus Constants.POST_EVENT_OVERHEAD_BYTES.
+     * A batch always contains at least one event, even if that event is larger than maxBytes.
+     *
+     * If there are fewer than numberToGet events buffered, and they all fit within maxBytes,
+     * no events are removed. The default implementation ignores maxBytes.
+     *
+     * @param numberToGet the maximum number of payloads to get
+     * @param maxBytes the maximum total size of the payloads
+     * @return a BatchPayload wrapper
+     */
+    default BatchPayload getEventsBatch(int numberToGet, long maxBytes) {
+        return getEventsBatch(numberToGet);
+    }
+
     /**
      * Get a copy of all the TrackerPayloads in the buffer.
      *
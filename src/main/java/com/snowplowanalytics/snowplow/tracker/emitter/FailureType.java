@@ -32,6 +32,12 @@ public enum FailureType {
      */
     TRACKER_STORAGE_FULL,
 
+    /**
+     * The event is too large to be sent within the maxBatchBytes request size limit, even on its own.
+     * It is not added to the buffer, and is never retried.
+     */
+    EVENT_TOO_LARGE,
+
     /**
      * An exception or unsuccessful POST request in the HttpClientAdapter.
      */
@@ -40,5 +46,11 @@ public enum FailureType {
     /**
      * An exception during POST request in BatchEmitter.
      */
-    EMITTER_REQUEST_FAILURE
+    EMITTER_REQUEST_FAILURE,
+
+    /**
+     * The payload of an event tracked with deferred encoding could not be built, for example because
+     * the event's getPayload() threw an exception. The event is not sent, and is never retried.
+     */
+    EVENT_BUILD_FAILURE
 }
@@ -92,6 +92,32 @@ public class InMemoryEventStore implements EventStore {
         return batchedEvents;
     }
 
+    /**
+     * Remove some TrackerPayloads from the buffer, limited by both count and total byte size.
+     * They are wrapped as a BatchPayload to return, and also stored in a separate collection
+     * until the result of their POST request is known.
+     *
+     * @param numberToGet the maximum number of payloads to get
+     * @param maxBytes the maximum total size of the payloads
+     * @return a BatchPayload wrapper, or null
+     */
+    @Override
+    public BatchPayload getEventsBatch(int numberToGet, long maxBytes) {
+        List<TrackerPayload> eventsToSend = new ArrayList<>();
+
+        synchronized (eventBuffer) {
+            int count = BatchPayload.countFullBatch(eventBuffer.iterator(), numberToGet, maxBytes);
+            if (count < 0) {
+                return null;
+            }
+            eventBuffer.drainTo(eventsToSend, count);
+        }
+
+        BatchPayload batchedEvents = new BatchPayload(batchId.getAndIncrement(), eventsToSend);
+        eventsBeingSent.put(batchedEvents.getBatchId(), batchedEvents.getPayloads());
+        return batchedEvents;
+    }
+
     /**
      * Finish processing events after a request has been made. If the request was successful,
      * the events are deleted from the InMemoryEventStore. If not, they are reinserted at the beginning
@@ -108,15 +134,18 @@ public class InMemoryEventStore implements EventStore {
         List<TrackerPayload> removedEvents = new ArrayList<>();
 
         // Events that didn't send are inserted at the head of the eventBuffer
-        // for immediate resending.
+        // for immediate resending. This holds the same monitor as getEventsBatch, so that events
+        // aren't inserted between a batch being measured and being drained.
         if (needRetry) {
-            while (events.size() > 0) {
-                TrackerPayload payloadToReinsert = events.remove(0);
-                boolean result = eventBuffer.offerFirst(payloadToReinsert);
-                if (!result) {
-                    LOGGER.error("Event buffer is full. Dropping newer payload to reinsert older payload");
-                    removedEvents.add(eventBuffer.removeLast());
-                    eventBuffer.offerFirst(payloadToReinsert);
+            synchronized (eventBuffer) {
+                while (events.size() > 0) {
+                    TrackerPayload payloadToReinsert = events.remove(0);
+                    boolean result = eventBuffer.offerFirst(payloadToReinsert);
+                    if (!result) {
+                        LOGGER.error("Event buffer is full. Dropping newer payload to reinsert older payload");
+                        removedEvents.add(eventBuffer.removeLast());
+                        eventBuffer.offerFirst(payloadToReinsert);
+                    }
                 }
             }
         }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A histogram of latencies in milliseconds, in the style of HdrHistogram.
+ *
+ * Values are counted in buckets with a fixed relative precision: each power of two is split into
+ * 32 sub-buckets, so a value is reported at most about 3% above the value recorded. Values below 32
+ * are counted exactly. Recording is lock-free and never allocates, and the histogram has a fixed size
+ * of about 15 KB. Reads are not atomic snapshots: values recorded while a percentile is computed
+ * may or may not be included.
+ *
+ * A histogram is either cumulative, counting every value since it was created, or recent, counting
+ * only the values of the current and previous windows of a fixed length. A recent histogram therefore
+ * covers between one and two windows, so its percentiles follow changes in latency. When a window ends,
+ * its counts become the previous window's, and new counts are allocated for the next one.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKET_COUNT each have a bucket, then each power of two up to 2^62 has SUB_BUCKET_COUNT
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    // 0 for a cumulative histogram
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+    private volatile Counts current = new Counts();
+    private volatile Counts previous = Counts.EMPTY;
+    private volatile long windowEnd;
+
+    /**
+     * Creates a cumulative histogram.
+     */
+    public LatencyHistogram() {
+        this(0, System::nanoTime);
+    }
+
+    // Creates a recent histogram, with the values of the current and previous windows
+    LatencyHistogram(long windowMillis, LongSupplier nanoClock) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.nanoClock = nanoClock;
+        this.windowEnd = nanoClock.getAsLong() + windowNanos;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the latency in milliseconds
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        Counts counts = currentCounts();
+        counts.counts.incrementAndGet(bucketIndex(value));
+        counts.totalCount.increment();
+        counts.sum.add(value);
+        counts.max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the total count
+     */
+    public long getTotalCount() {
+        Counts current = currentCounts();
+        return previous.totalCount.sum() + current.totalCount.sum();
+    }
+
+    /**
+     * Returns the largest value recorded, exactly.
+     *
+     * @return the maximum, or 0 if no values were recorded
+     */
+    public long getMaxValue() {
+        Counts current = currentCounts();
+        return Math.max(previous.max.get(), current.max.get());
+    }
+
+    /**
+     * Returns the mean of the values recorded, exactly.
+     *
+     * @return the mean, or 0 if no values were recorded
+     */
+    public double getMean() {
+        Counts current = currentCounts();
+        Counts previous = this.previous;
+        long count = previous.totalCount.sum() + current.totalCount.sum();
+        return count == 0 ? 0 : (double) (previous.sum.sum() + current.sum.sum()) / count;
+    }
+
+    /**
+     * Returns the value that the given percentage of the recorded values are below or equal to,
+     * as the highest value in its bucket.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the value at the percentile, or 0 if no values were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        Counts current = currentCounts();
+        Counts previous = this.previous;
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += previous.counts.get(i) + current.counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long max = Math.max(previous.max.get(), current.max.get());
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += previous.counts.get(i) + current.counts.get(i);
+            if (seen >= target) {
+                // The bucket's highest value can be above any value actually recorded
+                return Math.min(highestValueInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    // Starts a new window if the current one has ended
+    private Counts currentCounts() {
+        if (windowNanos == 0 || nanoClock.getAsLong() - windowEnd < 0) {
+            return current;
+        }
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            if (now - windowEnd >= 0) {
+                // If no value arrived during a whole window, the previous window is empty too
+                previous = now - windowEnd < windowNanos ? current : Counts.EMPTY;
+                current = new Counts();
+                windowEnd = now + windowNanos;
+            }
+            return current;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        // The top SUB_BUCKET_BITS + 1 bits of the value, from SUB_BUCKET_COUNT to 2 * SUB_BUCKET_COUNT - 1
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (subBucket - SUB_BUCKET_COUNT);
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static final class Counts {
+        // Never recorded into
+        static final Counts EMPTY = new Counts();
+
+        final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        final LongAdder totalCount = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    }
+}
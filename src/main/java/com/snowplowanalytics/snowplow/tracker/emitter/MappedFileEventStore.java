@@ -0,0 +1,765 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.snowplowanalytics.snowplow.tracker.configuration.FileStoreConfiguration;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Buffers events (as TrackerPayloads) for sending via the BatchEmitter, and persists them
+ * in an append-only log of memory-mapped segment files, so that buffered events survive a restart
+ * or crash of the JVM.
+ *
+ * Every event added to the store is appended to the log. When the BatchEmitter takes a batch of events,
+ * the batch ID and the events it contains are logged. The batch is committed in the log once the result of its
+ * request is known and the events are not going to be retried. Segment files are deleted once all their
+ * events are committed.
+ *
+ * When a MappedFileEventStore is created, the log is replayed to rebuild the buffer. Events that were
+ * buffered or being sent (in an uncommitted batch) when the previous process stopped are buffered again,
+ * oldest first. Events are therefore delivered at least once.
+ *
+ * The log is synced to disk in groups, in the background: after a configured number of events, or after
+ * a configured time, whichever comes first. A full segment is synced in the background when the log
+ * moves on to a new segment. Adding an event never waits for a sync.
+ * If the JVM process dies, the operating system still writes out the memory-mapped pages; only a crash
+ * of the whole machine can lose the events written since the last sync.
+ *
+ * The retry semantics are the same as for InMemoryEventStore.
+ */
+public class MappedFileEventStore implements EventStore, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileEventStore.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, String>> MAP_TYPE =
+            new TypeReference<LinkedHashMap<String, String>>() {};
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Each segment starts with a header: magic number (int), segment size (int).
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int SEGMENT_MAGIC = 0x53504C47;
+
+    // Each record is: body length (int), CRC32 of the body (int), body.
+    // The body is: record type (byte), record value (long), record data (bytes).
+    private static final int HEADER_SIZE = 8;
+    private static final int BODY_PREFIX_SIZE = 9;
+    private static final byte EVENT = 1; // value is the event sequence number, data is the payload JSON
+    private static final byte BATCH = 2; // value is the batch ID, data is the event sequence numbers
+    private static final byte COMMIT = 3; // value is the batch ID, no data
+    private static final byte DISCARD = 4; // value is unused, data is the event sequence numbers
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final File directory;
+    private final int bufferCapacity;
+    private final int segmentSize;
+    private final int syncEveryEvents;
+
+    private final Object lock = new Object();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ArrayDeque<StoredEvent> eventBuffer = new ArrayDeque<>();
+    private final Map<Long, List<StoredEvent>> eventsBeingSent = new HashMap<>();
+    private Segment activeSegment;
+    private long nextSequence = 0;
+    private long nextBatchId = 1;
+    private int unsyncedEvents = 0;
+    private boolean unsyncedWrites = false;
+    private boolean closed = false;
+    private boolean unmapSegments = true;
+    private volatile int size = 0;
+
+    private final AtomicBoolean syncScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService syncExecutor;
+
+    /**
+     * Create a MappedFileEventStore. Any events found in the log directory are restored into the buffer.
+     *
+     * @param storeConfig a FileStoreConfiguration object
+     * @throws IOException if the log directory can't be created, read or written
+     */
+    public MappedFileEventStore(FileStoreConfiguration storeConfig) throws IOException {
+        // Precondition checks
+        Objects.requireNonNull(storeConfig.getDirectory(), "directory cannot be null");
+        if (storeConfig.getBufferCapacity() <= 0) {
+            throw new IllegalArgumentException("bufferCapacity must be greater than 0");
+        }
+        if (storeConfig.getSegmentSize() < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024 bytes");
+        }
+        if (storeConfig.getSyncEveryEvents() <= 0) {
+            throw new IllegalArgumentException("syncEveryEvents must be greater than 0");
+        }
+        if (storeConfig.getSyncIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("syncIntervalMillis must be greater than 0");
+        }
+
+        directory = storeConfig.getDirectory();
+        bufferCapacity = storeConfig.getBufferCapacity();
+        segmentSize = storeConfig.getSegmentSize();
+        syncEveryEvents = storeConfig.getSyncEveryEvents();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create event store directory " + directory);
+        }
+        recover();
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snowplow-event-store-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = storeConfig.getSyncIntervalMillis();
+        syncExecutor.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add TrackerPayload to buffer and append it to the log. Returns false if the buffer was full,
+     * the event could not be written, or it is a deferred payload that could not be built. Note that the event is lost in this case.
+     *
+     * @param trackerPayload the payload to add
+     * @return success or not
+     */
+    @Override
+    public boolean addEvent(TrackerPayload trackerPayload) {
+        byte[] json = trackerPayload.toJSONBytes();
+        // A deferred payload that couldn't be built must not be stored and sent
+        if (trackerPayload.isFailed()) {
+            return false;
+        }
+
+        synchronized (lock) {
+            if (closed || size >= bufferCapacity) {
+                return false;
+            }
+            long sequence = nextSequence;
+            Segment segment;
+            try {
+                segment = writeRecord(EVENT, sequence, json);
+            } catch (IOException e) {
+                LOGGER.error("Could not write event to storage: {}", e.getMessage());
+                return false;
+            }
+            nextSequence++;
+            segment.liveEvents++;
+            eventBuffer.addLast(new StoredEvent(sequence, segment, trackerPayload));
+            size = eventBuffer.size();
+
+            if (++unsyncedEvents >= syncEveryEvents && syncScheduled.compareAndSet(false, true)) {
+                syncExecutor.execute(this::sync);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove some TrackerPayloads from the buffer. They are wrapped as a BatchPayload to return,
+     * and the batch is logged until the result of its POST request is known.
+     * Returns null once the store is closed.
+     *
+     * @param numberToGet how many payloads to get
+     * @return a BatchPayload wrapper, or null
+     */
+    @Override
+    public BatchPayload getEventsBatch(int numberToGet) {
+        synchronized (lock) {
+            if (closed || size < numberToGet || numberToGet <= 0) {
+                return null;
+            }
+            List<StoredEvent> events = new ArrayList<>(numberToGet);
+            List<TrackerPayload> payloads = new ArrayList<>(numberToGet);
+            while (events.size() < numberToGet) {
+                StoredEvent event = eventBuffer.pollFirst();
+                events.add(event);
+                payloads.add(event.payload);
+            }
+            size = eventBuffer.size();
+
+            long batchId = nextBatchId++;
+            writeSequenceRecords(BATCH, batchId, events);
+            eventsBeingSent.put(batchId, events);
+            return new BatchPayload(batchId, payloads);
+        }
+    }
+
+    /**
+     * Remove some TrackerPayloads from the buffer, limited by both count and total byte size.
+     * The batch is logged until the result of its POST request is known.
+     *
+     * @param numberToGet the maximum number of payloads to get
+     * @param maxBytes the maximum total size of the payloads
+     * @return a BatchPayload wrapper, or null
+     */
+    @Override
+    public BatchPayload getEventsBatch(int numberToGet, long maxBytes) {
+        synchronized (lock) {
+            final Iterator<StoredEvent> stored = eventBuffer.iterator();
+            Iterator<TrackerPayload> payloads = new Iterator<TrackerPayload>() {
+                @Override
+                public boolean hasNext() {
+                    return stored.hasNext();
+                }
+
+                @Override
+                public TrackerPayload next() {
+                    return stored.next().payload;
+                }
+            };
+            int count = BatchPayload.countFullBatch(payloads, numberToGet, maxBytes);
+            return count < 0 ? null : getEventsBatch(count);
+        }
+    }
+
+    /**
+     * Finish processing events after a request has been made. If the request was successful,
+     * the batch is committed in the log. If not, the events are reinserted at the beginning
+     * of the buffer for another attempt. This does nothing once the store is closed: the batch stays
+     * uncommitted in the log, and its events are restored when the store is reopened.
+     *
+     * @param needRetry if true, move events back to the buffer instead of deleting
+     * @param batchId the ID of the batch of events
+     * @return newer TrackerPayloads deleted from the buffer to make space for older payloads
+     */
+    @Override
+    public List<TrackerPayload> cleanupAfterSendingAttempt(boolean needRetry, long batchId) {
+        List<TrackerPayload> removedEvents = new ArrayList<>();
+
+        synchronized (lock) {
+            if (closed) {
+                return removedEvents;
+            }
+            List<StoredEvent> events = eventsBeingSent.remove(batchId);
+            if (events == null) {
+                return removedEvents;
+            }
+
+            if (!needRetry) {
+                writeControlRecord(COMMIT, batchId, new byte[0]);
+                release(events);
+                return removedEvents;
+            }
+
+            ListIterator<StoredEvent> iterator = events.listIterator(events.size());
+            while (iterator.hasPrevious()) {
+                eventBuffer.addFirst(iterator.previous());
+            }
+
+            List<StoredEvent> discarded = new ArrayList<>();
+            while (eventBuffer.size() > bufferCapacity) {
+                StoredEvent event = eventBuffer.pollLast();
+                discarded.add(event);
+                removedEvents.add(event.payload);
+            }
+            size = eventBuffer.size();
+
+            if (!discarded.isEmpty()) {
+                LOGGER.error("Event buffer is full. Dropping {} newer payloads to reinsert older payloads", discarded.size());
+                writeSequenceRecords(DISCARD, 0, discarded);
+                release(discarded);
+            }
+        }
+        return removedEvents;
+    }
+
+    /**
+     * Get a copy of all the TrackerPayloads in the buffer. This does not include any events
+     * currently being sent by the BatchEmitter.
+     *
+     * @return List of all the stored events
+     */
+    @Override
+    public List<TrackerPayload> getAllEvents() {
+        synchronized (lock) {
+            List<TrackerPayload> payloads = new ArrayList<>(eventBuffer.size());
+            for (StoredEvent event : eventBuffer) {
+                payloads.add(event.payload);
+            }
+            return payloads;
+        }
+    }
+
+    /**
+     * Get the current size of the buffer. This does not include any events
+     * currently being sent by the BatchEmitter.
+     *
+     * @return number of events currently in the buffer
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Syncs the log to disk and stops the background sync thread.
+     * Events can't be added after the store is closed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        syncExecutor.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = syncExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!terminated) {
+            // The sync thread may still be using a segment, so the segments are left to be unmapped by GC
+            LOGGER.warn("Event log sync thread did not stop within {} seconds", CLOSE_TIMEOUT_SECONDS);
+            synchronized (lock) {
+                unmapSegments = false;
+            }
+        }
+        sync();
+        List<Segment> rolledSegments = new ArrayList<>();
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                if (segment.syncPending) {
+                    rolledSegments.add(segment);
+                }
+            }
+        }
+        for (Segment segment : rolledSegments) {
+            syncRolledSegment(segment);
+        }
+        synchronized (lock) {
+            for (Segment segment : segments.values()) {
+                segment.close(unmapSegments);
+            }
+        }
+    }
+
+    // --- Log writing
+
+    private Segment writeRecord(byte type, long value, byte[] data) throws IOException {
+        int bodyLength = BODY_PREFIX_SIZE + data.length;
+        int recordLength = HEADER_SIZE + bodyLength;
+        if (recordLength > segmentSize - SEGMENT_HEADER_SIZE) {
+            throw new IOException("record of " + recordLength + " bytes is larger than the segment size");
+        }
+        if (activeSegment.position + recordLength > segmentSize) {
+            rollSegment();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (value >>> shift));
+        }
+        crc.update(data, 0, data.length);
+
+        // The length is written last, so that a partially written record reads as the end of the log
+        MappedByteBuffer buffer = activeSegment.buffer;
+        int position = activeSegment.position;
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(type);
+        buffer.putLong(value);
+        buffer.put(data);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, bodyLength);
+
+        activeSegment.position += recordLength;
+        unsyncedWrites = true;
+        return activeSegment;
+    }
+
+    private void writeControlRecord(byte type, long value, byte[] data) {
+        try {
+            writeRecord(type, value, data);
+        } catch (IOException e) {
+            LOGGER.error("Could not write batch information to storage: {}", e.getMessage());
+        }
+    }
+
+    // A list of sequence numbers that doesn't fit in one segment is split over several records,
+    // which are merged again on recovery
+    private void writeSequenceRecords(byte type, long value, List<StoredEvent> events) {
+        int maxPerRecord = (segmentSize - SEGMENT_HEADER_SIZE - HEADER_SIZE - BODY_PREFIX_SIZE) / 8;
+        for (int from = 0; from < events.size(); from += maxPerRecord) {
+            int to = Math.min(events.size(), from + maxPerRecord);
+            writeControlRecord(type, value, sequencesOf(events.subList(from, to)));
+        }
+    }
+
+    // The full segment is synced in the background, and isn't deleted until it has been
+    private void rollSegment() throws IOException {
+        Segment full = activeSegment;
+        activeSegment = openSegment(full.index + 1);
+        segments.put(activeSegment.index, activeSegment);
+        full.syncPending = true;
+        try {
+            syncExecutor.execute(() -> syncRolledSegment(full));
+        } catch (RejectedExecutionException e) {
+            // The store is closed, so there is no sync thread
+            full.buffer.force();
+            full.syncPending = false;
+        }
+    }
+
+    private void syncRolledSegment(Segment segment) {
+        try {
+            segment.buffer.force();
+        } catch (Exception e) {
+            LOGGER.error("Could not sync event log to disk: {}", e.getMessage());
+        }
+        synchronized (lock) {
+            segment.syncPending = false;
+            deleteCompletedSegments();
+        }
+    }
+
+    private void release(List<StoredEvent> events) {
+        for (StoredEvent event : events) {
+            event.segment.liveEvents--;
+        }
+        deleteCompletedSegments();
+    }
+
+    // Segments are deleted oldest first, so that a surviving batch or commit record never refers to
+    // an event in a deleted segment that wasn't itself committed
+    private void deleteCompletedSegments() {
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == activeSegment || oldest.liveEvents > 0 || oldest.syncPending) {
+                return;
+            }
+            segments.remove(oldest.index);
+            oldest.close(unmapSegments);
+            if (!oldest.file.delete()) {
+                LOGGER.warn("Could not delete completed event log segment {}", oldest.file);
+            }
+        }
+    }
+
+    private void sync() {
+        Segment segment;
+        synchronized (lock) {
+            syncScheduled.set(false);
+            if (!unsyncedWrites || activeSegment == null) {
+                return;
+            }
+            segment = activeSegment;
+            unsyncedWrites = false;
+            unsyncedEvents = 0;
+        }
+        try {
+            segment.buffer.force();
+        } catch (Exception e) {
+            LOGGER.error("Could not sync event log to disk: {}", e.getMessage());
+        }
+    }
+
+    // --- Log recovery
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        TreeMap<Long, File> segmentFiles = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    long index = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segmentFiles.put(index, file);
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file in event store directory: {}", name);
+                }
+            }
+        }
+
+        TreeMap<Long, RecoveredEvent> events = new TreeMap<>();
+        Map<Long, long[]> batches = new HashMap<>();
+        Set<Long> committedBatches = new HashSet<>();
+        Set<Long> completedEvents = new HashSet<>();
+        long maxSequence = -1;
+        long maxBatchId = 0;
+
+        for (long index : segmentFiles.keySet()) {
+            Segment segment = openSegment(index);
+            segments.put(index, segment);
+            MappedByteBuffer buffer = segment.buffer;
+
+            int position = SEGMENT_HEADER_SIZE;
+            while (position + HEADER_SIZE <= segmentSize) {
+                int bodyLength = buffer.getInt(position);
+                if (bodyLength < BODY_PREFIX_SIZE || position + HEADER_SIZE + bodyLength > segmentSize) {
+                    break;
+                }
+                byte[] body = new byte[bodyLength];
+                buffer.position(position + HEADER_SIZE);
+                buffer.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, bodyLength);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    LOGGER.warn("Corrupt record in event log segment {} at offset {}", segment.file, position);
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte type = record.get();
+                long value = record.getLong();
+                switch (type) {
+                    case EVENT:
+                        byte[] json = new byte[record.remaining()];
+                        record.get(json);
+                        events.put(value, new RecoveredEvent(segment, json));
+                        maxSequence = Math.max(maxSequence, value);
+                        break;
+                    case BATCH:
+                        long[] sequences = readSequences(record);
+                        batches.merge(value, sequences, MappedFileEventStore::concat);
+                        maxBatchId = Math.max(maxBatchId, value);
+                        for (long sequence : sequences) {
+                            maxSequence = Math.max(maxSequence, sequence);
+                        }
+                        break;
+                    case COMMIT:
+                        committedBatches.add(value);
+                        maxBatchId = Math.max(maxBatchId, value);
+                        break;
+                    case DISCARD:
+                        for (long sequence : readSequences(record)) {
+                            completedEvents.add(sequence);
+                            maxSequence = Math.max(maxSequence, sequence);
+                        }
+                        break;
+                    default:
+                        LOGGER.warn("Unknown record type {} in event log segment {}", type, segment.file);
+                }
+                position += HEADER_SIZE + bodyLength;
+            }
+
+            segment.position = position;
+            // Clear anything left by a partially written record, so it can't be misread later
+            if (position + 4 <= segmentSize && buffer.getInt(position) != 0) {
+                for (int i = position; i < segmentSize; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        for (long batchId : committedBatches) {
+            long[] sequences = batches.get(batchId);
+            if (sequences != null) {
+                for (long sequence : sequences) {
+                    completedEvents.add(sequence);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, RecoveredEvent> entry : events.entrySet()) {
+            if (completedEvents.contains(entry.getKey())) {
+                continue;
+            }
+            RecoveredEvent recovered = entry.getValue();
+            try {
+                TrackerPayload payload = new TrackerPayload(objectMapper.readValue(recovered.json, MAP_TYPE));
+                recovered.segment.liveEvents++;
+                eventBuffer.addLast(new StoredEvent(entry.getKey(), recovered.segment, payload));
+            } catch (Exception e) {
+                LOGGER.error("Could not restore stored event: {}", e.getMessage());
+            }
+        }
+
+        nextSequence = maxSequence + 1;
+        nextBatchId = maxBatchId + 1;
+        size = eventBuffer.size();
+
+        if (segments.isEmpty()) {
+            activeSegment = openSegment(0);
+            segments.put(0L, activeSegment);
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+        }
+        deleteCompletedSegments();
+
+        if (size > 0) {
+            LOGGER.info("Restored {} events from event store directory {}", size, directory);
+        }
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The header is checked before mapping, as mapping would resize a segment of a different size
+            int magic = 0;
+            int storedSize = 0;
+            if (randomAccessFile.length() >= SEGMENT_HEADER_SIZE) {
+                magic = randomAccessFile.readInt();
+                storedSize = randomAccessFile.readInt();
+            }
+            // A segment with no header was created but never written to
+            if (magic != 0 || storedSize != 0) {
+                if (magic != SEGMENT_MAGIC) {
+                    throw new IOException(file + " is not an event log segment");
+                }
+                if (storedSize != segmentSize || randomAccessFile.length() != segmentSize) {
+                    throw new IOException("Event log segment " + file + " has a segment size of " + storedSize
+                            + " bytes, but the store is configured with " + segmentSize + " bytes");
+                }
+            }
+
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putInt(4, segmentSize);
+            return new Segment(index, file, randomAccessFile, buffer);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private static byte[] sequencesOf(List<StoredEvent> events) {
+        ByteBuffer data = ByteBuffer.allocate(events.size() * 8);
+        for (StoredEvent event : events) {
+            data.putLong(event.sequence);
+        }
+        return data.array();
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static long[] readSequences(ByteBuffer record) {
+        long[] sequences = new long[record.remaining() / 8];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = record.getLong();
+        }
+        return sequences;
+    }
+
+    private static class Segment {
+        final long index;
+        final File file;
+        final RandomAccessFile randomAccessFile;
+        final MappedByteBuffer buffer;
+        int position = SEGMENT_HEADER_SIZE;
+        int liveEvents = 0;
+        boolean syncPending = false;
+
+        Segment(long index, File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+            this.index = index;
+            this.file = file;
+            this.randomAccessFile = randomAccessFile;
+            this.buffer = buffer;
+        }
+
+        // The buffer must not be used after it is unmapped
+        void close(boolean unmap) {
+            if (unmap) {
+                Unmapper.unmap(buffer);
+            }
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close event log segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Releases a mapped buffer straight away, rather than when it is garbage collected,
+     * so that a deleted segment doesn't keep its file and address space.
+     * There is no public API for this, so it uses Unsafe.invokeCleaner on Java 9 and later,
+     * and the buffer's Cleaner on Java 8. If neither is accessible, the buffer is left to GC.
+     */
+    private static class Unmapper {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+            } catch (Exception e) {
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void unmap(MappedByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not unmap event log segment: {}", e.toString());
+            }
+        }
+    }
+
+    private static class StoredEvent {
+        final long sequence;
+        final Segment segment;
+        final TrackerPayload payload;
+
+        StoredEvent(long sequence, Segment segment, TrackerPayload payload) {
+            this.sequence = sequence;
+            this.segment = segment;
+            this.payload = payload;
+        }
+    }
+
+    private static class RecoveredEvent {
+        final Segment segment;
+        final byte[] json;
+
+        RecoveredEvent(Segment segment, byte[] json) {
+            this.segment = segment;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Buffers events (as TrackerPayloads) in a preallocated ring buffer for sending via the BatchEmitter.
+ *
+ * This is an alternative to {@link InMemoryEventStore} for applications that track events from many threads.
+ * Adding an event does not take a lock or allocate a queue node: each producer claims a slot by
+ * advancing a padded sequence counter, then publishes the payload into that slot.
+ * Batches are removed by the BatchEmitter threads, which are serialized between themselves
+ * but never block producers.
+ *
+ * The retry semantics are the same as for InMemoryEventStore. Events from a failed request are returned
+ * to the head of the buffer, and are sent before any events still in the ring. If there is no space for them,
+ * the newest buffered events are removed to make room.
+ */
+public class RingBufferEventStore implements EventStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RingBufferEventStore.class);
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
+    private final AtomicLong batchId = new AtomicLong(1);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<TrackerPayload> ring;
+
+    // Next sequence to be claimed by a producer
+    private final Sequence producerSequence = new Sequence();
+    // Next sequence to be read by a consumer
+    private final Sequence consumerSequence = new Sequence();
+
+    // Events returned for retry, sent before anything still in the ring.
+    // Only accessed while holding consumerLock.
+    private final ArrayDeque<TrackerPayload> retryBuffer = new ArrayDeque<>();
+    private volatile int retryBufferSize = 0;
+    private final Object consumerLock = new Object();
+
+    private final ConcurrentHashMap<Long, List<TrackerPayload>> eventsBeingSent = new ConcurrentHashMap<>();
+
+    /**
+     * Create a RingBufferEventStore object with custom capacity. The default is 10 000 events.
+     * The ring is preallocated to the next power of two at or above the capacity.
+     *
+     * @param bufferCapacity the maximum number of events to buffer at once
+     */
+    public RingBufferEventStore(int bufferCapacity) {
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("bufferCapacity must be greater than 0");
+        }
+        if (bufferCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("bufferCapacity must not be greater than 2^30");
+        }
+        int ringSize = Integer.highestOneBit(bufferCapacity);
+        if (ringSize < bufferCapacity) {
+            ringSize <<= 1;
+        }
+        this.capacity = bufferCapacity;
+        this.mask = ringSize - 1;
+        this.ring = new AtomicReferenceArray<>(ringSize);
+    }
+
+    /**
+     * Create a RingBufferEventStore object with default capacity (10 000 events).
+     */
+    public RingBufferEventStore() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Add TrackerPayload to buffer. Returns false if the buffer was full.
+     * Note that the event is lost in this case.
+     *
+     * @param trackerPayload the payload to add
+     * @return success or not
+     */
+    @Override
+    public boolean addEvent(TrackerPayload trackerPayload) {
+        Objects.requireNonNull(trackerPayload);
+        long sequence;
+        do {
+            sequence = producerSequence.get();
+            if (sequence - consumerSequence.get() + retryBufferSize >= capacity) {
+                return false;
+            }
+        } while (!producerSequence.compareAndSet(sequence, sequence + 1));
+
+        ring.lazySet(index(sequence), trackerPayload);
+        return true;
+    }
+
+    /**
+     * Remove some TrackerPayloads from the buffer. Events waiting for retry are taken first.
+     * They are wrapped as a BatchPayload to return, and also stored in a separate collection
+     * until the result of their POST request is known.
+     *
+     * @param numberToGet how many payloads to get
+     * @return a BatchPayload wrapper, or null
+     */
+    @Override
+    public BatchPayload getEventsBatch(int numberToGet) {
+        List<TrackerPayload> eventsToSend;
+
+        synchronized (consumerLock) {
+            if (size() < numberToGet) {
+                return null;
+            }
+            eventsToSend = takeEvents(numberToGet);
+        }
+        return registerBatch(eventsToSend);
+    }
+
+    /**
+     * Remove some TrackerPayloads from the buffer, limited by both count and total byte size.
+     * Events waiting for retry are taken first.
+     *
+     * @param numberToGet the maximum number of payloads to get
+     * @param maxBytes the maximum total size of the payloads
+     * @return a BatchPayload wrapper, or null
+     */
+    @Override
+    public BatchPayload getEventsBatch(int numberToGet, long maxBytes) {
+        List<TrackerPayload> eventsToSend;
+
+        synchronized (consumerLock) {
+            int count = BatchPayload.countFullBatch(publishedEvents(), numberToGet, maxBytes);
+            if (count < 0) {
+                return null;
+            }
+            eventsToSend = takeEvents(count);
+        }
+        return registerBatch(eventsToSend);
+    }
+
+    // Must be called while holding consumerLock
+    private List<TrackerPayload> takeEvents(int count) {
+        List<TrackerPayload> events = new ArrayList<>(count);
+        while (events.size() < count && !retryBuffer.isEmpty()) {
+            events.add(retryBuffer.pollFirst());
+        }
+        retryBufferSize = retryBuffer.size();
+        drainRing(events, count - events.size());
+        return events;
+    }
+
+    private BatchPayload registerBatch(List<TrackerPayload> eventsToSend) {
+        BatchPayload batchedEvents = new BatchPayload(batchId.getAndIncrement(), eventsToSend);
+        if (!eventsToSend.isEmpty()) {
+            eventsBeingSent.put(batchedEvents.getBatchId(), batchedEvents.getPayloads());
+        }
+        return batchedEvents;
+    }
+
+    // Must be called while holding consumerLock.
+    // Iterates over the buffered events in order, stopping at the first slot that isn't published yet.
+    private Iterator<TrackerPayload> publishedEvents() {
+        final Iterator<TrackerPayload> retried = retryBuffer.iterator();
+        final long end = producerSequence.get();
+
+        return new Iterator<TrackerPayload>() {
+            private long sequence = consumerSequence.get();
+            private TrackerPayload next = advance();
+
+            private TrackerPayload advance() {
+                if (retried.hasNext()) {
+                    return retried.next();
+                }
+                return sequence < end ? ring.get(index(sequence++)) : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public TrackerPayload next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                TrackerPayload current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Finish processing events after a request has been made. If the request was successful,
+     * the events are deleted. If not, they are reinserted at the beginning of the buffer for another attempt.
+     *
+     * @param needRetry if true, move events back to the buffer instead of deleting
+     * @param batchId the ID of the batch of events
+     * @return newer TrackerPayloads deleted from the buffer to make space for older payloads
+     */
+    @Override
+    public List<TrackerPayload> cleanupAfterSendingAttempt(boolean needRetry, long batchId) {
+        List<TrackerPayload> events = eventsBeingSent.remove(batchId);
+        List<TrackerPayload> removedEvents = new ArrayList<>();
+
+        if (!needRetry || events == null) {
+            return removedEvents;
+        }
+
+        synchronized (consumerLock) {
+            ListIterator<TrackerPayload> iterator = events.listIterator(events.size());
+            while (iterator.hasPrevious()) {
+                retryBuffer.addFirst(iterator.previous());
+            }
+            retryBufferSize = retryBuffer.size();
+
+            int overflow = size() - capacity;
+            if (overflow > 0) {
+                LOGGER.error("Event buffer is full. Dropping {} newer payloads to reinsert older payloads", overflow);
+                // The newest events are at the producer end of the ring, which can't be removed from directly.
+                // Move the whole ring behind the retried events, then drop from the end. The moved events
+                // are counted before their ring slots are released, so that producers can't refill them meanwhile.
+                int ringEvents = (int) (producerSequence.get() - consumerSequence.get());
+                retryBufferSize = retryBuffer.size() + ringEvents;
+                drainRing(retryBuffer, ringEvents);
+                for (int i = 0; i < overflow && !retryBuffer.isEmpty(); i++) {
+                    removedEvents.add(retryBuffer.pollLast());
+                }
+                retryBufferSize = retryBuffer.size();
+            }
+        }
+        return removedEvents;
+    }
+
+    /**
+     * Get a copy of all the TrackerPayloads in the buffer. This does not include any events
+     * currently being sent by the BatchEmitter.
+     *
+     * @return List of all the stored events
+     */
+    @Override
+    public List<TrackerPayload> getAllEvents() {
+        synchronized (consumerLock) {
+            List<TrackerPayload> events = new ArrayList<>(retryBuffer);
+            long end = producerSequence.get();
+            for (long sequence = consumerSequence.get(); sequence < end; sequence++) {
+                TrackerPayload payload = ring.get(index(sequence));
+                // A slot can be claimed but not yet published
+                if (payload != null) {
+                    events.add(payload);
+                }
+            }
+            return events;
+        }
+    }
+
+    /**
+     * Get the current size of the buffer. This does not include any events
+     * currently being sent by the BatchEmitter.
+     *
+     * @return number of events currently in the buffer
+     */
+    @Override
+    public int size() {
+        // The consumer sequence is read first, as it never passes the producer sequence,
+        // but the counters aren't read atomically, so the result is clamped
+        long consumer = consumerSequence.get();
+        return Math.max(0, (int) (producerSequence.get() - consumer) + retryBufferSize);
+    }
+
+    /**
+     * Get the maximum number of events this store can buffer.
+     *
+     * @return the buffer capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    // Must be called while holding consumerLock
+    private void drainRing(Collection<TrackerPayload> destination, int count) {
+        long sequence = consumerSequence.get();
+        for (int i = 0; i < count; i++, sequence++) {
+            int index = index(sequence);
+            TrackerPayload payload;
+            // The producer has claimed this slot but may not have published the payload yet
+            while ((payload = ring.get(index)) == null) {
+                Thread.yield();
+            }
+            ring.lazySet(index, null);
+            destination.add(payload);
+        }
+        consumerSequence.lazySet(sequence);
+    }
+
+    /**
+     * A sequence counter padded on both sides, so that the producer and consumer
+     * counters never share a cache line with each other or with other fields.
+     */
+    static class LeftPadding {
+        protected long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static class SequenceValue extends LeftPadding {
+        protected volatile long value;
+    }
+
+    static class Sequence extends SequenceValue {
+        private static final AtomicLongFieldUpdater<SequenceValue> UPDATER =
+                AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+        protected long p11, p12, p13, p14, p15, p16, p17;
+
+        long get() {
+            return value;
+        }
+
+        void lazySet(long newValue) {
+            UPDATER.lazySet(this, newValue);
+        }
+
+        boolean compareAndSet(long expected, long newValue) {
+            return UPDATER.compareAndSet(this, expected, newValue);
+        }
+    }
+}
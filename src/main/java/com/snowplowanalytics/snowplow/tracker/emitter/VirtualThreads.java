@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual-thread executors when running on JDK 21 or later.
+ * The tracker is compiled for Java 8, so the virtual thread API is accessed reflectively.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+    // On JDK 19 and 20 these methods exist as a preview API, and throw unless preview features are enabled
+    private static final boolean AVAILABLE = canCreateExecutor(OF_VIRTUAL, NEW_THREAD_PER_TASK_EXECUTOR);
+
+    private VirtualThreads() {}
+
+    /**
+     * @return whether the running JVM supports virtual threads
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Creates an ExecutorService that starts a new virtual thread for each task.
+     *
+     * @param namePrefix the prefix for thread names, followed by a counter
+     * @return the executor
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        if (!AVAILABLE) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        return newExecutor(OF_VIRTUAL, NEW_THREAD_PER_TASK_EXECUTOR, namePrefix);
+    }
+
+    // Creating a thread factory shows whether virtual threads can be used, without starting a thread
+    static boolean canCreateExecutor(Method ofVirtual, Method newThreadPerTaskExecutor) {
+        if (ofVirtual == null || newThreadPerTaskExecutor == null) {
+            return false;
+        }
+        try {
+            newThreadFactory(ofVirtual, "snowplow-emitter-virtual-request-thread-");
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    static ExecutorService newExecutor(Method ofVirtual, Method newThreadPerTaskExecutor, String namePrefix) {
+        ThreadFactory threadFactory = newThreadFactory(ofVirtual, namePrefix);
+        try {
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(Method ofVirtual, String namePrefix) {
+        try {
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    private static Method findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
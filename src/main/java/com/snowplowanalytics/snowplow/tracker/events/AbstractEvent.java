@@ -14,12 +14,16 @@ package com.snowplowanalytics.snowplow.tracker.events;
 
 // Java
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 // This library
 import com.snowplowanalytics.snowplow.tracker.Subject;
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import com.snowplowanalytics.snowplow.tracker.payload.Payload;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
@@ -36,7 +40,12 @@ import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
  */
 public abstract class AbstractEvent implements Event {
 
+    // Envelope maps reused by the self-describing payloads built on each thread.
+    // They are serialized into the payload and cleared before it is returned.
+    private static final ThreadLocal<ScratchMaps> SCRATCH_MAPS = ThreadLocal.withInitial(ScratchMaps::new);
+
     protected final List<SelfDescribingJson> context;
+    private final List<SelfDescribingJson> contextView;
 
     /**
      * The trueTimestamp may be null if none is set.
@@ -105,6 +114,7 @@ public abstract class AbstractEvent implements Event {
         Objects.requireNonNull(builder.context);
 
         this.context = builder.context;
+        this.contextView = Collections.unmodifiableList(builder.context);
         this.trueTimestamp = builder.trueTimestamp;
         this.subject = builder.subject;
     }
@@ -117,6 +127,15 @@ public abstract class AbstractEvent implements Event {
         return new ArrayList<>(this.context);
     }
 
+    /**
+     * Returns the custom context without copying it, as an unmodifiable view.
+     *
+     * @return the events custom context
+     */
+    public List<SelfDescribingJson> getContextView() {
+        return this.contextView;
+    }
+
     /**
      * @return the event's true timestamp.
      */
@@ -151,4 +170,75 @@ public abstract class AbstractEvent implements Event {
         }
         return payload;
     }
+
+    /**
+     * Returns the TrackerPayload that is sent when this event is tracked.
+     * Events that are sent as self-describing events, such as Timing and ScreenView,
+     * build the self-describing payload directly.
+     *
+     * @param base64Encoded whether to base64 encode self-describing event data
+     * @return the payload to be sent.
+     */
+    public TrackerPayload getTrackerPayload(boolean base64Encoded) {
+        return (TrackerPayload) getPayload();
+    }
+
+    /**
+     * Builds the payload of a self-describing event, wrapping the event data in the
+     * self-describing event envelope.
+     *
+     * @param eventData the map of the event's SelfDescribingJson
+     * @param base64Encoded whether to base64 encode the event data
+     * @return the TrackerPayload with the true timestamp
+     */
+    TrackerPayload selfDescribingPayload(Map<String, Object> eventData, boolean base64Encoded) {
+        Map<String, Object> envelope = SCRATCH_MAPS.get().envelope;
+        try {
+            envelope.put(Parameter.SCHEMA, Constants.SCHEMA_SELF_DESCRIBING_EVENT);
+            envelope.put(Parameter.DATA, eventData);
+
+            TrackerPayload payload = new TrackerPayload();
+            payload.add(Parameter.EVENT, Constants.EVENT_SELF_DESCRIBING);
+            payload.addMap(envelope, base64Encoded, Parameter.SELF_DESCRIBING_ENCODED, Parameter.SELF_DESCRIBING);
+            return putTrueTimestamp(payload);
+        } finally {
+            envelope.clear();
+        }
+    }
+
+    /**
+     * Builds the payload of a self-describing event from the data filled in by putData,
+     * without creating a SelfDescribingJson.
+     *
+     * @param schema the schema of the event data
+     * @param base64Encoded whether to base64 encode the event data
+     * @return the TrackerPayload with the true timestamp
+     */
+    TrackerPayload selfDescribingPayload(String schema, boolean base64Encoded) {
+        ScratchMaps maps = SCRATCH_MAPS.get();
+        try {
+            putData(maps.data);
+            maps.eventData.put(Parameter.SCHEMA, schema);
+            maps.eventData.put(Parameter.DATA, maps.data);
+            return selfDescribingPayload(maps.eventData, base64Encoded);
+        } finally {
+            maps.eventData.clear();
+            maps.data.clear();
+        }
+    }
+
+    /**
+     * Puts the data of the self-describing event that this event is sent as.
+     * Overridden by the events that use {@link #selfDescribingPayload(String, boolean)}.
+     *
+     * @param data the map to fill
+     */
+    void putData(Map<String, Object> data) {
+    }
+
+    private static final class ScratchMaps {
+        final Map<String, Object> envelope = new LinkedHashMap<>();
+        final Map<String, Object> eventData = new LinkedHashMap<>();
+        final Map<String, Object> data = new LinkedHashMap<>();
+    }
 }
@@ -15,8 +15,10 @@ package com.snowplowanalytics.snowplow.tracker.events;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Constructs a ScreenView event object.
@@ -91,8 +93,25 @@ public class ScreenView extends AbstractEvent {
      */
     public SelfDescribingJson getPayload() {
         LinkedHashMap<String,Object> payload = new LinkedHashMap<>();
-        payload.put(Parameter.SV_ID, this.id);
-        payload.put(Parameter.SV_NAME, this.name);
+        putData(payload);
         return new SelfDescribingJson(Constants.SCHEMA_SCREEN_VIEW, payload);
     }
+
+    /**
+     * Returns the payload of the SelfDescribing event that a ScreenView is sent as,
+     * without creating the intermediate SelfDescribing event.
+     *
+     * @param base64Encoded whether to base64 encode the event data
+     * @return the payload to be sent.
+     */
+    @Override
+    public TrackerPayload getTrackerPayload(boolean base64Encoded) {
+        return selfDescribingPayload(Constants.SCHEMA_SCREEN_VIEW, base64Encoded);
+    }
+
+    @Override
+    void putData(Map<String, Object> data) {
+        data.put(Parameter.SV_ID, this.id);
+        data.put(Parameter.SV_NAME, this.name);
+    }
 }
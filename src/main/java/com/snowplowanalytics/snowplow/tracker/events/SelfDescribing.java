@@ -13,8 +13,6 @@
 package com.snowplowanalytics.snowplow.tracker.events;
 
 // This library
-import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
-import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
@@ -87,12 +85,18 @@ public class SelfDescribing extends AbstractEvent {
      * @return the payload to be sent.
      */
     public TrackerPayload getPayload() {
-        TrackerPayload payload = new TrackerPayload();
-        SelfDescribingJson envelope = new SelfDescribingJson(
-                Constants.SCHEMA_SELF_DESCRIBING_EVENT, this.eventData.getMap());
-        payload.add(Parameter.EVENT, Constants.EVENT_SELF_DESCRIBING);
-        payload.addMap(envelope.getMap(), this.base64Encode,
-                Parameter.SELF_DESCRIBING_ENCODED, Parameter.SELF_DESCRIBING);
-        return putTrueTimestamp(payload);
+        return selfDescribingPayload(this.eventData.getMap(), this.base64Encode);
+    }
+
+    /**
+     * Returns a TrackerPayload which can be passed to an Emitter,
+     * without changing the base64Encode setting of the event.
+     *
+     * @param base64Encoded whether to base64Encode the event data
+     * @return the payload to be sent.
+     */
+    @Override
+    public TrackerPayload getTrackerPayload(boolean base64Encoded) {
+        return selfDescribingPayload(this.eventData.getMap(), base64Encoded);
     }
 }
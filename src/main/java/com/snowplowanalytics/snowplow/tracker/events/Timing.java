@@ -14,12 +14,14 @@ package com.snowplowanalytics.snowplow.tracker.events;
 
 // Java
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 // This library
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
 /**
  * Constructs a Timing event object.
@@ -128,10 +130,27 @@ public class Timing extends AbstractEvent {
      */
     public SelfDescribingJson getPayload() {
         LinkedHashMap<String,Object> payload = new LinkedHashMap<>();
-        payload.put(Parameter.UT_CATEGORY, this.category);
-        payload.put(Parameter.UT_LABEL, this.label);
-        payload.put(Parameter.UT_TIMING, this.timing);
-        payload.put(Parameter.UT_VARIABLE, this.variable);
+        putData(payload);
         return new SelfDescribingJson(Constants.SCHEMA_USER_TIMINGS, payload);
     }
+
+    /**
+     * Returns the payload of the SelfDescribing event that a Timing event is sent as,
+     * without creating the intermediate SelfDescribing event.
+     *
+     * @param base64Encoded whether to base64 encode the event data
+     * @return the payload to be sent.
+     */
+    @Override
+    public TrackerPayload getTrackerPayload(boolean base64Encoded) {
+        return selfDescribingPayload(Constants.SCHEMA_USER_TIMINGS, base64Encoded);
+    }
+
+    @Override
+    void putData(Map<String, Object> data) {
+        data.put(Parameter.UT_CATEGORY, this.category);
+        data.put(Parameter.UT_LABEL, this.label);
+        data.put(Parameter.UT_TIMING, this.timing);
+        data.put(Parameter.UT_VARIABLE, this.variable);
+    }
 }
@@ -12,8 +12,18 @@
  */
 package com.snowplowanalytics.snowplow.tracker.http;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
 import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.Utils;
+import com.snowplowanalytics.snowplow.tracker.jfr.FlightRecorderEvents;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 
@@ -23,9 +33,18 @@ import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
 
     protected final String url;
+    protected final RequestCompression compression;
 
     public AbstractHttpClientAdapter(String url) {
+        this(url, RequestCompression.NONE);
+    }
+
+    public AbstractHttpClientAdapter(String url, RequestCompression compression) {
+        // Precondition checks
+        Objects.requireNonNull(compression);
+
         this.url = url.replaceFirst("/*$", "");
+        this.compression = compression;
     }
 
     /**
@@ -78,6 +97,7 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
         }
 
         this.url = builder.url;
+        this.compression = RequestCompression.NONE;
     }
 
     /**
@@ -90,6 +110,15 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
         return this.url;
     }
 
+    /**
+     * Returns the compression applied to POST request bodies.
+     *
+     * @return the RequestCompression
+     */
+    public RequestCompression getCompression() {
+        return compression;
+    }
+
     /**
      * Sends a payload via a POST request.
      *
@@ -97,9 +126,21 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
      */
     @Override
     public int post(SelfDescribingJson payload) {
+        Objects.requireNonNull(payload);
         String url = this.url + "/" + Constants.PROTOCOL_VENDOR + "/" + Constants.PROTOCOL_VERSION;
-        String body = payload.toString();
-        return doPost(url, body);
+        return doPost(url, payload);
+    }
+
+    /**
+     * Sends a payload via a POST request, without blocking the calling thread.
+     *
+     * @param payload the SelfDescribingJson to send
+     */
+    @Override
+    public CompletableFuture<Integer> postAsync(SelfDescribingJson payload) {
+        Objects.requireNonNull(payload);
+        String url = this.url + "/" + Constants.PROTOCOL_VENDOR + "/" + Constants.PROTOCOL_VERSION;
+        return doPostAsync(url, payload);
     }
 
     /**
@@ -109,7 +150,7 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
      */
     @Override
     public int get(TrackerPayload payload) {
-        String url = this.url + "/i?" + Utils.mapToQueryString(payload.getMap());
+        String url = this.url + "/i?" + payload.toQueryString();
         return doGet(url);
     }
 
@@ -131,6 +172,75 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
      */
     protected abstract int doPost(String url, String payload);
 
+    /**
+     * Sends the SelfDescribingJson containing the events as a POST request to the endpoint.
+     * By default, the payload is serialized to a String and passed to {@link #doPost(String, String)}.
+     * Adapters can override this to stream the JSON body directly into the request.
+     *
+     * @param url the URL to send to
+     * @param payload the event payload
+     * @return the result of the send
+     */
+    protected int doPost(String url, SelfDescribingJson payload) {
+        return doPost(url, payload.toString());
+    }
+
+    /**
+     * Sends the SelfDescribingJson containing the events as a POST request to the endpoint,
+     * completing the returned future when the request finishes.
+     * By default, the request is made on the calling thread using {@link #doPost(String, SelfDescribingJson)}.
+     * Adapters for HTTP clients with a non-blocking API should override this.
+     *
+     * @param url the URL to send to
+     * @param payload the event payload
+     * @return a future for the result of the send
+     */
+    protected CompletableFuture<Integer> doPostAsync(String url, SelfDescribingJson payload) {
+        return CompletableFuture.completedFuture(doPost(url, payload));
+    }
+
+    /**
+     * Writes the JSON body of a POST request, compressing it as it is written
+     * if the adapter was created with a RequestCompression.
+     * The output stream is not closed.
+     *
+     * @param payload the event payload
+     * @param outputStream the stream to write the request body to
+     * @throws IOException if the body can't be written
+     */
+    protected void writeBody(SelfDescribingJson payload, OutputStream outputStream) throws IOException {
+        Object serialization = FlightRecorderEvents.beginSerialization();
+        if (compression == RequestCompression.GZIP) {
+            // Closing the GZIPOutputStream releases its native Deflater, but mustn't close the request stream
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(new NonClosingOutputStream(outputStream), 8192)) {
+                payload.writeTo(gzipOutputStream);
+            }
+        } else {
+            payload.writeTo(outputStream);
+        }
+        FlightRecorderEvents.commitSerialization(serialization, compression.name());
+    }
+
+    /**
+     * Compresses a POST request body that has already been serialized,
+     * using the adapter's RequestCompression.
+     *
+     * @param payload the event payload String
+     * @return the compressed body
+     * @throws IOException if the body can't be compressed
+     */
+    protected byte[] compressBody(String payload) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (compression == RequestCompression.GZIP) {
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(body)) {
+                gzipOutputStream.write(payload.getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            body.write(payload.getBytes(StandardCharsets.UTF_8));
+        }
+        return body.toByteArray();
+    }
+
     /**
      * Sends the Map of key-value pairs for the event
      * as a GET request to the endpoint.
@@ -139,4 +249,21 @@ public abstract class AbstractHttpClientAdapter implements HttpClientAdapter {
      * @return the result of the send
      */
     protected abstract int doGet(String url);
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A HttpClient built using Apache HttpAsyncClient to send events via
+ * GET or POST requests.
+ *
+ * POST requests made through {@link #postAsync(SelfDescribingJson)} don't block any thread
+ * while waiting for the collector: the client's I/O reactor completes the request.
+ * The number of concurrent requests is limited by the connection pool settings of the client.
+ */
+public class ApacheHttpAsyncClientAdapter extends AbstractHttpClientAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApacheHttpAsyncClientAdapter.class);
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Creates an adapter for a CloseableHttpAsyncClient.
+     * The client is started if it isn't running already.
+     *
+     * @param url the collector url
+     * @param httpClient the Apache HttpAsyncClient to use
+     */
+    public ApacheHttpAsyncClientAdapter(String url, CloseableHttpAsyncClient httpClient) {
+        this(url, httpClient, RequestCompression.NONE);
+    }
+
+    /**
+     * Creates an adapter for a CloseableHttpAsyncClient that compresses POST request bodies.
+     * The client is started if it isn't running already.
+     *
+     * @param url the collector url
+     * @param httpClient the Apache HttpAsyncClient to use
+     * @param compression the compression to apply to POST request bodies
+     */
+    public ApacheHttpAsyncClientAdapter(String url, CloseableHttpAsyncClient httpClient, RequestCompression compression) {
+        super(url, compression);
+
+        // Precondition checks
+        Objects.requireNonNull(httpClient);
+
+        this.httpClient = httpClient;
+        if (!httpClient.isRunning()) {
+            httpClient.start();
+        }
+    }
+
+    /**
+     * Returns the HttpClient in use; it is up to the developer
+     * to cast it back to its original class.
+     *
+     * @return the http client
+     */
+    public Object getHttpClient() {
+        return this.httpClient;
+    }
+
+    /**
+     * Attempts to send a group of payloads with a
+     * GET request to the configured endpoint.
+     *
+     * @param url the URL send
+     * @return the HttpResponse for the Request
+     */
+    public int doGet(String url) {
+        try {
+            HttpResponse httpResponse = httpClient.execute(new HttpGet(url), null).get();
+            return httpResponse.getStatusLine().getStatusCode();
+        } catch (Exception e) {
+            LOGGER.error("ApacheHttpAsyncClient GET Request failed: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Attempts to send a group of payloads with a
+     * POST request to the configured endpoint.
+     *
+     * @param url the URL to send to
+     * @param payload the payload to send
+     * @return the HttpResponse for the Request
+     */
+    public int doPost(String url, String payload) {
+        if (compression == RequestCompression.NONE) {
+            return doPostAsync(url, new StringEntity(payload, ContentType.APPLICATION_JSON)).join();
+        }
+        try {
+            return doPostAsync(url, new ByteArrayEntity(compressBody(payload), ContentType.APPLICATION_JSON)).join();
+        } catch (IOException e) {
+            LOGGER.error("ApacheHttpAsyncClient POST Request failed: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Sends a POST request for a group of payloads to the configured endpoint.
+     * The returned future is completed by the client's I/O reactor.
+     *
+     * @param url the URL to send to
+     * @param payload the payload to send
+     * @return a future for the HttpResponse code for the Request, or -1 if the request failed
+     */
+    @Override
+    protected CompletableFuture<Integer> doPostAsync(String url, SelfDescribingJson payload) {
+        // The async client reads request entities as content streams, so the body is serialized up front
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            writeBody(payload, body);
+        } catch (IOException e) {
+            LOGGER.error("ApacheHttpAsyncClient POST Request failed: {}", e.getMessage());
+            return CompletableFuture.completedFuture(-1);
+        }
+        return doPostAsync(url, new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_JSON));
+    }
+
+    private CompletableFuture<Integer> doPostAsync(String url, HttpEntity entity) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.addHeader("Content-Type", Constants.POST_CONTENT_TYPE);
+        if (compression.getContentEncoding() != null) {
+            httpPost.addHeader("Content-Encoding", compression.getContentEncoding());
+        }
+        httpPost.setEntity(entity);
+        try {
+            httpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse httpResponse) {
+                    future.complete(httpResponse.getStatusLine().getStatusCode());
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    LOGGER.error("ApacheHttpAsyncClient POST Request failed: {}", e.getMessage());
+                    future.complete(-1);
+                }
+
+                @Override
+                public void cancelled() {
+                    LOGGER.error("ApacheHttpAsyncClient POST Request cancelled");
+                    future.complete(-1);
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.error("ApacheHttpAsyncClient POST Request failed: {}", e.getMessage());
+            future.complete(-1);
+        }
+        return future;
+    }
+}
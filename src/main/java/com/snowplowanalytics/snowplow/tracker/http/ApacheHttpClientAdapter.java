@@ -15,7 +15,10 @@ package com.snowplowanalytics.snowplow.tracker.http;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 
@@ -23,7 +26,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 
+import java.io.IOException;
 import java.util.Objects;
 
 /**
@@ -36,7 +41,18 @@ public class ApacheHttpClientAdapter extends AbstractHttpClientAdapter {
     private CloseableHttpClient httpClient;
 
     public ApacheHttpClientAdapter(String url, CloseableHttpClient httpClient) {
-        super(url);
+        this(url, httpClient, RequestCompression.NONE);
+    }
+
+    /**
+     * Creates an adapter that compresses POST request bodies.
+     *
+     * @param url the collector url
+     * @param httpClient the Apache HTTP Client to use
+     * @param compression the compression to apply to POST request bodies
+     */
+    public ApacheHttpClientAdapter(String url, CloseableHttpClient httpClient, RequestCompression compression) {
+        super(url, compression);
 
         // Precondition checks
         Objects.requireNonNull(httpClient);
@@ -135,11 +151,41 @@ public class ApacheHttpClientAdapter extends AbstractHttpClientAdapter {
      * @return the HttpResponse for the Request
      */
     public int doPost(String url, String payload) {
+        if (compression == RequestCompression.NONE) {
+            return doPost(url, new StringEntity(payload, ContentType.APPLICATION_JSON));
+        }
+        try {
+            return doPost(url, new ByteArrayEntity(compressBody(payload), ContentType.APPLICATION_JSON));
+        } catch (IOException e) {
+            LOGGER.error("ApacheHttpClient POST Request failed: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Attempts to send a group of payloads with a
+     * POST request to the configured endpoint.
+     * The JSON body is written directly into the request output stream.
+     *
+     * @param url the URL to send to
+     * @param payload the payload to send
+     * @return the HttpResponse for the Request
+     */
+    @Override
+    protected int doPost(String url, SelfDescribingJson payload) {
+        EntityTemplate entity = new EntityTemplate(outputStream -> writeBody(payload, outputStream));
+        entity.setContentType(ContentType.APPLICATION_JSON.toString());
+        return doPost(url, entity);
+    }
+
+    private int doPost(String url, HttpEntity entity) {
         try {
             HttpPost httpPost = new HttpPost(url);
             httpPost.addHeader("Content-Type", Constants.POST_CONTENT_TYPE);
-            StringEntity params = new StringEntity(payload, ContentType.APPLICATION_JSON);
-            httpPost.setEntity(params);
+            if (compression.getContentEncoding() != null) {
+                httpPost.addHeader("Content-Encoding", compression.getContentEncoding());
+            }
+            httpPost.setEntity(entity);
             HttpResponse httpResponse = httpClient.execute(httpPost);
             httpPost.releaseConnection();
             return httpResponse.getStatusLine().getStatusCode();
@@ -12,6 +12,9 @@
  */
 package com.snowplowanalytics.snowplow.tracker.http;
 
+// Java
+import java.util.concurrent.CompletableFuture;
+
 // This library
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
@@ -30,6 +33,22 @@ public interface HttpClientAdapter {
      */
     int post(SelfDescribingJson payload);
 
+    /**
+     * Sends a group of events compressed into a
+     * single SelfDescribingJson payload, without blocking
+     * the calling thread for the request.
+     *
+     * The returned future completes with the status code when
+     * the request finishes. The default implementation calls
+     * {@link #post(SelfDescribingJson)} on the calling thread.
+     *
+     * @param payload the final event payload
+     * @return a future for the status code
+     */
+    default CompletableFuture<Integer> postAsync(SelfDescribingJson payload) {
+        return CompletableFuture.completedFuture(post(payload));
+    }
+
     /**
      * Sends a single TrackerPayload via a
      * GET request
@@ -15,9 +15,11 @@ package com.snowplowanalytics.snowplow.tracker.http;
 // Java
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 // SquareUp
 import okhttp3.*;
+import okio.BufferedSink;
 
 // Slf4j
 import org.slf4j.Logger;
@@ -25,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 // This library
 import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
 
 /**
  * A HttpClient built using OkHttp to send events via
@@ -37,7 +40,18 @@ public class OkHttpClientAdapter extends AbstractHttpClientAdapter {
     private OkHttpClient httpClient;
 
     public OkHttpClientAdapter(String url, OkHttpClient httpClient) {
-        super(url);
+        this(url, httpClient, RequestCompression.NONE);
+    }
+
+    /**
+     * Creates an adapter that compresses POST request bodies.
+     *
+     * @param url the collector url
+     * @param httpClient the OkHttpClient to use
+     * @param compression the compression to apply to POST request bodies
+     */
+    public OkHttpClientAdapter(String url, OkHttpClient httpClient, RequestCompression compression) {
+        super(url, compression);
 
         // Precondition checks
         Objects.requireNonNull(httpClient);
@@ -143,20 +157,98 @@ public class OkHttpClientAdapter extends AbstractHttpClientAdapter {
      * @return the HttpResponse code for the Request or -1 if exception is caught
      */
     public int doPost(String url, String payload) {
-        int returnValue = -1;
+        if (compression == RequestCompression.NONE) {
+            return doPost(url, RequestBody.create(payload, JSON));
+        }
+        try {
+            return doPost(url, RequestBody.create(compressBody(payload), JSON));
+        } catch (IOException e) {
+            LOGGER.error("OkHttpClient POST Request failed: {}", e.getMessage());
+            return -1;
+        }
+    }
 
-        RequestBody body = RequestBody.create(payload, JSON);
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Content-Type", Constants.POST_CONTENT_TYPE)
-                .post(body)
-                .build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                LOGGER.error("OkHttpClient POST Request failed: {}", response);
-            } else {
-                returnValue = response.code();
+    /**
+     * Attempts to send a group of payloads with a
+     * POST request to the configured endpoint.
+     * The JSON body is written directly into the request sink.
+     *
+     * @param url the URL to send to
+     * @param payload the payload to send
+     * @return the HttpResponse code for the Request or -1 if exception is caught
+     */
+    @Override
+    protected int doPost(String url, final SelfDescribingJson payload) {
+        return doPost(url, streamingBody(payload));
+    }
+
+    /**
+     * Enqueues a POST request for a group of payloads to the configured endpoint.
+     * The request is made by the OkHttp Dispatcher, so no thread is blocked waiting for the response.
+     * The number of concurrent requests is limited by the Dispatcher settings of the OkHttpClient.
+     *
+     * @param url the URL to send to
+     * @param payload the payload to send
+     * @return a future for the HttpResponse code for the Request, or -1 if the request failed
+     */
+    @Override
+    protected CompletableFuture<Integer> doPostAsync(String url, SelfDescribingJson payload) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        httpClient.newCall(buildPostRequest(url, streamingBody(payload))).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOGGER.error("OkHttpClient POST Request failed: {}", e.getMessage());
+                future.complete(-1);
             }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    future.complete(handlePostResponse(r));
+                }
+            }
+        });
+        return future;
+    }
+
+    private RequestBody streamingBody(final SelfDescribingJson payload) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeBody(payload, sink.outputStream());
+            }
+        };
+    }
+
+    private Request buildPostRequest(String url, RequestBody body) {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .addHeader("Content-Type", Constants.POST_CONTENT_TYPE);
+        if (compression.getContentEncoding() != null) {
+            builder.addHeader("Content-Encoding", compression.getContentEncoding());
+        }
+        return builder.post(body).build();
+    }
+
+    private int handlePostResponse(Response response) {
+        if (!response.isSuccessful()) {
+            LOGGER.error("OkHttpClient POST Request failed: {}", response);
+            return -1;
+        }
+        return response.code();
+    }
+
+    private int doPost(String url, RequestBody body) {
+        int returnValue = -1;
+
+        try (Response response = httpClient.newCall(buildPostRequest(url, body)).execute()) {
+            returnValue = handlePostResponse(response);
         } catch (IOException e) {
             LOGGER.error("OkHttpClient POST Request failed: {}", e.getMessage());
         }
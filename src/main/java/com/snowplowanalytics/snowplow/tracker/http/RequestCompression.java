@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.http;
+
+/**
+ * The supported compression options for POST request bodies.
+ */
+public enum RequestCompression {
+    /**
+     * Request bodies are sent uncompressed.
+     */
+    NONE(null),
+
+    /**
+     * Request bodies are gzip compressed as they are written,
+     * and sent with the "Content-Encoding: gzip" header.
+     */
+    GZIP("gzip");
+
+    private final String contentEncoding;
+
+    RequestCompression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Returns the value of the Content-Encoding header for this compression.
+     *
+     * @return the content encoding, or null if bodies are not compressed
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
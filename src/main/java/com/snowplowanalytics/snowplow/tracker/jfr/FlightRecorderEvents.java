@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.jfr;
+
+/**
+ * Emits JDK Flight Recorder events for the tracking pipeline.
+ * It is used by the Tracker, BatchEmitter and HTTP client adapters, and isn't meant to be called by applications.
+ *
+ * This is the Java 8 version, which does nothing. The tracker jar is a multi-release jar:
+ * on Java 11 and later, a version of this class from META-INF/versions/11 is loaded instead,
+ * which emits the events in the "Snowplow" category. They are enabled and configured like any
+ * other JFR event, for example in a .jfc settings file, and cost a check of the event's
+ * enabled state when they are disabled.
+ *
+ * Events with a duration are started by a begin method, which returns null if the event is disabled,
+ * and ended by the matching commit method, which ignores null.
+ */
+public final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Starts a Track event, for a call to Tracker.track or Tracker.trackFast.
+     *
+     * @return the event, or null if it is disabled
+     */
+    public static Object beginTrack() {
+        return null;
+    }
+
+    /**
+     * Ends a Track event, with the time spent in each stage of the call.
+     *
+     * @param event the event returned by {@link #beginTrack()}
+     * @param eventType the class of the tracked event
+     * @param payloads the number of payloads created
+     * @param payloadsDropped the number of payloads the emitter didn't accept
+     * @param preprocessingNanos the time spent preparing the event, such as converting it into a SelfDescribing event
+     * @param payloadNanos the time spent building the event payload and adding the tracker parameters
+     * @param contextNanos the time spent encoding the context entities
+     * @param subjectNanos the time spent taking and merging the Subject parameters
+     * @param storeNanos the time spent adding the payloads to the emitter
+     */
+    public static void commitTrack(Object event, String eventType, int payloads, int payloadsDropped,
+                                   long preprocessingNanos, long payloadNanos, long contextNanos,
+                                   long subjectNanos, long storeNanos) {
+    }
+
+    /**
+     * Starts a BatchWait event, for taking a batch of events from the EventStore.
+     *
+     * @return the event, or null if it is disabled
+     */
+    public static Object beginBatchWait() {
+        return null;
+    }
+
+    /**
+     * Ends a BatchWait event.
+     *
+     * @param event the event returned by {@link #beginBatchWait()}
+     * @param requested the maximum number of events requested
+     * @param returned the number of events in the batch
+     */
+    public static void commitBatchWait(Object event, int requested, int returned) {
+    }
+
+    /**
+     * Starts a BatchSerialization event, for writing the JSON body of a POST request.
+     *
+     * @return the event, or null if it is disabled
+     */
+    public static Object beginSerialization() {
+        return null;
+    }
+
+    /**
+     * Ends a BatchSerialization event.
+     *
+     * @param event the event returned by {@link #beginSerialization()}
+     * @param compression the request compression
+     */
+    public static void commitSerialization(Object event, String compression) {
+    }
+
+    /**
+     * Starts a CollectorRequest event, for the round-trip of a POST request.
+     *
+     * @return the event, or null if it is disabled
+     */
+    public static Object beginRequest() {
+        return null;
+    }
+
+    /**
+     * Ends a CollectorRequest event.
+     *
+     * @param event the event returned by {@link #beginRequest()}
+     * @param events the number of events in the request
+     * @param statusCode the HTTP status code, or -1 if the request failed without a response
+     */
+    public static void commitRequest(Object event, int events, int statusCode) {
+    }
+
+    /**
+     * Emits a Retry event, when the events of a failed request are returned to the buffer to be sent again.
+     *
+     * @param events the number of events in the request
+     * @param failureType the type of failure
+     * @param statusCode the HTTP status code, or -1 if the request failed without a response
+     * @param backoffMillis the retry delay after this failure
+     */
+    public static void retry(int events, String failureType, int statusCode, long backoffMillis) {
+    }
+
+    /**
+     * Emits a BufferFull event, when events are lost because the EventStore is full.
+     *
+     * @param events the number of events lost
+     * @param evicted whether buffered events were removed to make space for retried events,
+     *                rather than a new event being refused
+     */
+    public static void bufferFull(int events, boolean evicted) {
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import com.snowplowanalytics.snowplow.tracker.Utils;
+
+/**
+ * A parameter value shared by many payloads, with its JSON and query string encodings.
+ */
+final class EncodedValue {
+    final String value;
+    // The escaped UTF-8 bytes of the value as a JSON string, without quotes
+    final byte[] json;
+    final String queryValue;
+
+    EncodedValue(String value) {
+        this.value = value;
+        this.json = FlatJsonWriter.escape(value);
+        this.queryValue = Utils.urlEncodeUTF8(value);
+    }
+
+    // Payload slots hold a String, an EncodedValue or an EventId
+    static String text(Object slot) {
+        if (slot instanceof EncodedValue) {
+            return ((EncodedValue) slot).value;
+        }
+        return slot == null ? null : slot.toString();
+    }
+}
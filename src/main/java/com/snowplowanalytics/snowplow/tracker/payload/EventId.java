@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * An event ID (eid), a UUID held as two longs.
+ * The ID is only formatted as a String when the payload it belongs to is read or serialized.
+ */
+public final class EventId {
+
+    // Length of the formatted ID, e.g. "123e4567-e89b-12d3-a456-426614174000"
+    public static final int LENGTH = 36;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    public EventId(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * Creates an EventId from a UUID.
+     *
+     * @param uuid the UUID
+     * @return the EventId
+     */
+    public static EventId fromUUID(UUID uuid) {
+        return new EventId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    public UUID toUUID() {
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Returns the ID in the standard UUID format, as UUID.toString() does.
+     *
+     * @return the formatted ID
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[LENGTH];
+        formatTo(bytes, 0);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    // Writes the formatted ID as LENGTH ASCII bytes
+    void formatTo(byte[] bytes, int offset) {
+        formatHex(bytes, offset, mostSignificantBits >>> 32, 8);
+        bytes[offset + 8] = '-';
+        formatHex(bytes, offset + 9, mostSignificantBits >>> 16, 4);
+        bytes[offset + 13] = '-';
+        formatHex(bytes, offset + 14, mostSignificantBits, 4);
+        bytes[offset + 18] = '-';
+        formatHex(bytes, offset + 19, leastSignificantBits >>> 48, 4);
+        bytes[offset + 23] = '-';
+        formatHex(bytes, offset + 24, leastSignificantBits, 12);
+    }
+
+    private static void formatHex(byte[] bytes, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            bytes[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EventId)) {
+            return false;
+        }
+        EventId eventId = (EventId) o;
+        return mostSignificantBits == eventId.mostSignificantBits && leastSignificantBits == eventId.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = mostSignificantBits ^ leastSignificantBits;
+        return (int) (bits >> 32) ^ (int) bits;
+    }
+}
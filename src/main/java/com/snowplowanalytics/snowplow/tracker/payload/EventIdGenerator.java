@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+/**
+ * Generates the event ID (eid) of each tracked event.
+ * Implementations must be thread-safe, as a Tracker may be used from many threads.
+ *
+ * The built-in implementations are:
+ * <ul>
+ *     <li>{@link SecureRandomEventIdGenerator}, the default: random (version 4) UUIDs, as UUID.randomUUID()</li>
+ *     <li>{@link ThreadLocalRandomEventIdGenerator}: random UUIDs that don't contend on a shared SecureRandom</li>
+ *     <li>{@link TimeOrderedEventIdGenerator}: time-ordered (version 7) UUIDs</li>
+ *     <li>{@link PooledEventIdGenerator}: IDs from another generator, generated ahead of time in the background</li>
+ * </ul>
+ */
+public interface EventIdGenerator {
+
+    /**
+     * Generates a new event ID.
+     *
+     * @return the event ID
+     */
+    EventId generate();
+}
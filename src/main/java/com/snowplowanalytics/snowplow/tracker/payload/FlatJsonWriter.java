@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes TrackerPayloads, and batches of them, as UTF-8 encoded JSON without going through Jackson.
+ *
+ * Payloads are flat maps of strings, mostly with known parameter keys. Their keys are written
+ * from pre-escaped bytes, and values are escaped with a lookup table, into a buffer reused by each thread.
+ * The output is identical to the UTF-8 output of Jackson's default ObjectMapper.
+ */
+final class FlatJsonWriter {
+
+    private static final int FLUSH_SIZE = 8192;
+    // Strings are escaped this many characters at a time, so that a long value needs buffer space
+    // for the worst case escaping of one chunk, rather than of the whole value
+    private static final int STRING_CHUNK = 1024;
+    // Buffers larger than this are not kept for reuse, so one huge batch doesn't pin memory to a thread
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<FlatJsonWriter> WRITERS = ThreadLocal.withInitial(FlatJsonWriter::new);
+    // For encoding single payloads while a batch is being written
+    private static final ThreadLocal<FlatJsonWriter> SCRATCH_WRITERS = ThreadLocal.withInitial(FlatJsonWriter::new);
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    // For each ASCII character: 0 if it is written as is, 'u' for a \\u00XX escape, or the character of its short escape
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+    }
+
+    private byte[] buf = new byte[FLUSH_SIZE];
+    private int count;
+    // If set, the buffer is flushed to this stream as it fills up
+    private OutputStream out;
+
+    private FlatJsonWriter() {
+    }
+
+    /**
+     * Returns the payload as a JSON String.
+     */
+    static String toJSONString(TrackerPayload payload) {
+        FlatJsonWriter writer = start(null);
+        try {
+            payload.writeJSON(writer);
+            return new String(writer.buf, 0, writer.count, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // Not possible without an OutputStream
+            throw new IllegalStateException(e);
+        } finally {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Returns the payload as UTF-8 encoded JSON.
+     */
+    static byte[] toJSONBytes(TrackerPayload payload) {
+        FlatJsonWriter writer = start(null);
+        try {
+            payload.writeJSON(writer);
+            return Arrays.copyOf(writer.buf, writer.count);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes the payload as UTF-8 encoded JSON into an OutputStream.
+     */
+    static void write(TrackerPayload payload, OutputStream outputStream) throws IOException {
+        FlatJsonWriter writer = start(outputStream);
+        try {
+            payload.writeJSON(writer);
+            writer.flush();
+            outputStream.flush();
+        } finally {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Returns whether a SelfDescribingJson map can be written by this writer: a map of
+     * String values, or of lists of TrackerPayload maps, such as a batch POST request body.
+     */
+    static boolean canWrite(Map<String, Object> map) {
+        for (Object value : map.values()) {
+            if (value instanceof List) {
+                for (Object element : (List<?>) value) {
+                    if (TrackerPayload.fromMap(element) == null) {
+                        return false;
+                    }
+                }
+            } else if (!(value instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a map accepted by {@link #canWrite(Map)} as a JSON String.
+     */
+    static String toJSONString(Map<String, Object> map) {
+        FlatJsonWriter writer = start(null);
+        try {
+            writer.writeMap(map);
+            return new String(writer.buf, 0, writer.count, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes a map accepted by {@link #canWrite(Map)} as UTF-8 encoded JSON into an OutputStream.
+     */
+    static void write(Map<String, Object> map, OutputStream outputStream) throws IOException {
+        FlatJsonWriter writer = start(outputStream);
+        try {
+            writer.writeMap(map);
+            writer.flush();
+            outputStream.flush();
+        } finally {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Returns the escaped UTF-8 bytes of a value as a JSON string, without the quotes.
+     */
+    static byte[] escape(String value) {
+        FlatJsonWriter writer = new FlatJsonWriter();
+        try {
+            writer.writeString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOfRange(writer.buf, 1, writer.count - 1);
+    }
+
+    /**
+     * Returns a writer for encoding into its buffer, to be read with {@link #toByteArray()}.
+     * It must be released with {@link #finish()}.
+     */
+    static FlatJsonWriter startScratch() {
+        FlatJsonWriter writer = SCRATCH_WRITERS.get();
+        if (writer.count != 0) {
+            writer = new FlatJsonWriter();
+        }
+        return writer;
+    }
+
+    private static FlatJsonWriter start(OutputStream outputStream) {
+        FlatJsonWriter writer = WRITERS.get();
+        if (writer.out != null || writer.count != 0) {
+            // Already in use further up this thread's stack, e.g. by an OutputStream that serializes
+            writer = new FlatJsonWriter();
+        }
+        writer.out = outputStream;
+        return writer;
+    }
+
+    void finish() {
+        out = null;
+        count = 0;
+        if (buf.length > MAX_RETAINED_BUFFER) {
+            buf = new byte[FLUSH_SIZE];
+        }
+    }
+
+    private void writeMap(Map<String, Object> map) throws IOException {
+        writeByte('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            writeString(entry.getKey());
+            writeByte(':');
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                writeString((String) value);
+            } else {
+                writeByte('[');
+                boolean firstPayload = true;
+                for (Object element : (List<?>) value) {
+                    if (!firstPayload) {
+                        writeByte(',');
+                    }
+                    firstPayload = false;
+                    TrackerPayload.fromMap(element).writeJSON(this);
+                }
+                writeByte(']');
+            }
+        }
+        writeByte('}');
+    }
+
+    void writeByte(char c) throws IOException {
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+    }
+
+    void writeRaw(byte[] bytes) throws IOException {
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buf.length && out != null) {
+            // Too large to be worth copying into the buffer
+            flush();
+            out.write(bytes, offset, length);
+            return;
+        }
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    // The number of bytes written, if the writer has no OutputStream
+    int size() {
+        return count;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    // Writes already escaped UTF-8 bytes as a JSON string
+    void writeQuoted(byte[] escapedBytes) throws IOException {
+        ensureCapacity(escapedBytes.length + 2);
+        buf[count++] = '"';
+        System.arraycopy(escapedBytes, 0, buf, count, escapedBytes.length);
+        count += escapedBytes.length;
+        buf[count++] = '"';
+    }
+
+    void writeEventId(EventId eventId) throws IOException {
+        ensureCapacity(EventId.LENGTH + 2);
+        buf[count++] = '"';
+        eventId.formatTo(buf, count);
+        count += EventId.LENGTH;
+        buf[count++] = '"';
+    }
+
+    void writeString(String value) throws IOException {
+        int length = value.length();
+        writeByte('"');
+        for (int start = 0; start < length; start += STRING_CHUNK) {
+            writeChunk(value, start, Math.min(length, start + STRING_CHUNK));
+        }
+        writeByte('"');
+    }
+
+    private void writeChunk(String value, int start, int end) throws IOException {
+        // Each character takes at most 6 bytes, as a \\u escape
+        ensureCapacity((end - start) * 6);
+        byte[] buf = this.buf;
+        int count = this.count;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                byte escape = ESCAPES[c];
+                if (escape == 0) {
+                    buf[count++] = (byte) c;
+                } else if (escape == 'u') {
+                    count = writeUnicodeEscape(buf, count, c);
+                } else {
+                    buf[count++] = '\\';
+                    buf[count++] = escape;
+                }
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xc0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // As Jackson does, characters outside the Basic Multilingual Plane are written
+                // as two escaped surrogates rather than as 4 UTF-8 bytes
+                count = writeUnicodeEscape(buf, count, c);
+            } else {
+                buf[count++] = (byte) (0xe0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        this.count = count;
+    }
+
+    private static int writeUnicodeEscape(byte[] buf, int count, char c) {
+        buf[count++] = '\\';
+        buf[count++] = 'u';
+        buf[count++] = HEX_DIGITS[(c >> 12) & 0xf];
+        buf[count++] = HEX_DIGITS[(c >> 8) & 0xf];
+        buf[count++] = HEX_DIGITS[(c >> 4) & 0xf];
+        buf[count++] = HEX_DIGITS[c & 0xf];
+        return count;
+    }
+
+    private void ensureCapacity(int extra) throws IOException {
+        if (count + extra <= buf.length) {
+            return;
+        }
+        if (out != null && count > 0) {
+            flush();
+            if (extra <= buf.length) {
+                return;
+            }
+        }
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+    }
+
+    private void flush() throws IOException {
+        out.write(buf, 0, count);
+        count = 0;
+    }
+}
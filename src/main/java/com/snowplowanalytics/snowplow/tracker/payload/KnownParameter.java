@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import com.snowplowanalytics.snowplow.tracker.Utils;
+import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
+
+/**
+ * The event parameters that a TrackerPayload stores in its fixed array slots.
+ * Parameters are listed in the order of the {@link Parameter} constants,
+ * which is also the order in which they are serialized.
+ */
+enum KnownParameter {
+    EVENT(Parameter.EVENT),
+    EID(Parameter.EID),
+    TRUE_TIMESTAMP(Parameter.TRUE_TIMESTAMP),
+    DEVICE_CREATED_TIMESTAMP(Parameter.DEVICE_CREATED_TIMESTAMP),
+    DEVICE_SENT_TIMESTAMP(Parameter.DEVICE_SENT_TIMESTAMP),
+    TRACKER_VERSION(Parameter.TRACKER_VERSION),
+    APP_ID(Parameter.APP_ID),
+    NAMESPACE(Parameter.NAMESPACE),
+    UID(Parameter.UID),
+    CONTEXT(Parameter.CONTEXT),
+    CONTEXT_ENCODED(Parameter.CONTEXT_ENCODED),
+    SELF_DESCRIBING(Parameter.SELF_DESCRIBING),
+    SELF_DESCRIBING_ENCODED(Parameter.SELF_DESCRIBING_ENCODED),
+    PLATFORM(Parameter.PLATFORM),
+    RESOLUTION(Parameter.RESOLUTION),
+    VIEWPORT(Parameter.VIEWPORT),
+    COLOR_DEPTH(Parameter.COLOR_DEPTH),
+    TIMEZONE(Parameter.TIMEZONE),
+    LANGUAGE(Parameter.LANGUAGE),
+    IP_ADDRESS(Parameter.IP_ADDRESS),
+    USERAGENT(Parameter.USERAGENT),
+    DOMAIN_UID(Parameter.DOMAIN_UID),
+    NETWORK_UID(Parameter.NETWORK_UID),
+    SESSION_UID(Parameter.SESSION_UID),
+    PAGE_URL(Parameter.PAGE_URL),
+    PAGE_TITLE(Parameter.PAGE_TITLE),
+    PAGE_REFR(Parameter.PAGE_REFR),
+    SE_CATEGORY(Parameter.SE_CATEGORY),
+    SE_ACTION(Parameter.SE_ACTION),
+    SE_LABEL(Parameter.SE_LABEL),
+    SE_PROPERTY(Parameter.SE_PROPERTY),
+    SE_VALUE(Parameter.SE_VALUE),
+    TR_ID(Parameter.TR_ID),
+    TR_TOTAL(Parameter.TR_TOTAL),
+    TR_AFFILIATION(Parameter.TR_AFFILIATION),
+    TR_TAX(Parameter.TR_TAX),
+    TR_SHIPPING(Parameter.TR_SHIPPING),
+    TR_CITY(Parameter.TR_CITY),
+    TR_STATE(Parameter.TR_STATE),
+    TR_COUNTRY(Parameter.TR_COUNTRY),
+    TR_CURRENCY(Parameter.TR_CURRENCY),
+    TI_ITEM_ID(Parameter.TI_ITEM_ID),
+    TI_ITEM_SKU(Parameter.TI_ITEM_SKU),
+    TI_ITEM_NAME(Parameter.TI_ITEM_NAME),
+    TI_ITEM_CATEGORY(Parameter.TI_ITEM_CATEGORY),
+    TI_ITEM_PRICE(Parameter.TI_ITEM_PRICE),
+    TI_ITEM_QUANTITY(Parameter.TI_ITEM_QUANTITY),
+    TI_ITEM_CURRENCY(Parameter.TI_ITEM_CURRENCY),
+    SV_ID(Parameter.SV_ID),
+    SV_NAME(Parameter.SV_NAME),
+    UT_CATEGORY(Parameter.UT_CATEGORY),
+    UT_VARIABLE(Parameter.UT_VARIABLE),
+    UT_TIMING(Parameter.UT_TIMING),
+    UT_LABEL(Parameter.UT_LABEL);
+
+    static final KnownParameter[] VALUES = values();
+    private static final Map<String, KnownParameter> BY_KEY = new HashMap<>();
+
+    static {
+        for (KnownParameter parameter : VALUES) {
+            BY_KEY.put(parameter.key, parameter);
+        }
+    }
+
+    final String key;
+    // Size of the key as a JSON string, including its quotes
+    final long keyByteSize;
+    // The key encoded once, for JSON and query string serialization
+    final SerializedString jsonKey;
+    final String queryKey;
+    // The UTF-8 bytes of "key":
+    final byte[] jsonKeyBytes;
+
+    KnownParameter(String key) {
+        this.key = key;
+        this.keyByteSize = Utils.getJSONStringByteSize(key);
+        this.jsonKey = new SerializedString(key);
+        this.queryKey = Utils.urlEncodeUTF8(key);
+        this.jsonKeyBytes = ("\"" + key + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the known parameter with this key.
+     *
+     * @param key the parameter key
+     * @return the parameter, or null if the key isn't a known parameter
+     */
+    static KnownParameter forKey(Object key) {
+        return BY_KEY.get(key);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.snowplowanalytics.snowplow.tracker.Utils;
+
+/**
+ * An immutable snapshot of key-value pairs to add to many TrackerPayloads,
+ * such as the pairs of a Subject.
+ *
+ * The pairs are validated, and their JSON sizes calculated, once when the snapshot is created.
+ * They can then be added to each payload with {@link TrackerPayload#addPairs(PayloadPairs)}
+ * without copying them into an intermediate map. The values of standard event parameters are
+ * also JSON and URL encoded only once, however many payloads they are sent in.
+ */
+public final class PayloadPairs {
+
+    public static final PayloadPairs EMPTY = new PayloadPairs(Collections.<String, String>emptyMap());
+
+    final String[] keys;
+    final String[] values;
+    // The shared encodings of the values of known parameters, or null for other keys
+    final EncodedValue[] encodedValues;
+    // The KnownParameter ordinal of each key, or -1 if it isn't a known parameter
+    final int[] knownIndexes;
+    // The size of each "key":"value" pair as JSON
+    final long[] pairByteSizes;
+    private final Map<String, String> map;
+
+    /**
+     * Creates a snapshot of the pairs in a map.
+     * As with {@link TrackerPayload#add(String, String)}, pairs with null or empty keys or values are skipped.
+     *
+     * @param pairs the pairs to copy
+     */
+    public PayloadPairs(Map<String, String> pairs) {
+        Map<String, String> validPairs = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : pairs.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (key != null && !key.isEmpty() && value != null && !value.isEmpty()) {
+                validPairs.put(key, value);
+            }
+        }
+
+        int size = validPairs.size();
+        keys = new String[size];
+        values = new String[size];
+        knownIndexes = new int[size];
+        encodedValues = new EncodedValue[size];
+        pairByteSizes = new long[size];
+
+        int i = 0;
+        for (Map.Entry<String, String> entry : validPairs.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            KnownParameter parameter = KnownParameter.forKey(keys[i]);
+            knownIndexes[i] = parameter == null ? -1 : parameter.ordinal();
+            encodedValues[i] = parameter == null ? null : new EncodedValue(values[i]);
+            pairByteSizes[i] = Utils.getJSONStringByteSize(keys[i]) + 1 + Utils.getJSONStringByteSize(values[i]);
+            i++;
+        }
+        map = Collections.unmodifiableMap(validPairs);
+    }
+
+    /**
+     * Returns the number of pairs.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the pairs as an unmodifiable Map.
+     *
+     * @return the pairs
+     */
+    public Map<String, String> getMap() {
+        return map;
+    }
+}
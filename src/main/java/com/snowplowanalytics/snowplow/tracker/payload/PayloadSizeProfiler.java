@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.snowplowanalytics.snowplow.tracker.Utils;
+import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
+
+/**
+ * A sampling profiler that attributes the serialized size of tracked events to what they contain:
+ * their parameters, the schema of their self-describing event data, and the schemas of their
+ * context entities. It shows which parameters, events or entities make the events large.
+ *
+ * A Tracker creates a profiler if its TrackerConfiguration has a payloadSizeSamplingRate above 0,
+ * and passes each event payload to {@link #sample(TrackerPayload)}. Sampled payloads are measured
+ * on the tracking thread: their self-describing JSON is parsed, and decoded first if Base64 encoded,
+ * so sampling rates should be kept low in production. With deferred encoding, sampled payloads
+ * are built when they are sampled.
+ *
+ * Parameters are measured as JSON pairs in a POST request. The self-describing event data and
+ * context entities are measured within their parameter, including its share of any Base64 or
+ * JSON string encoding, so the context entities of an event add up to its "cx" or "co" parameter.
+ * The top contributors are returned by {@link #getTopContributors(Kind, int)}, and logged
+ * at INFO level at most once per report interval.
+ */
+public final class PayloadSizeProfiler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PayloadSizeProfiler.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Limits the memory used if schemas or parameter names are generated dynamically
+    static final int MAX_CONTRIBUTORS = 1000;
+    static final String OTHER = "(other)";
+    private static final int LOGGED_CONTRIBUTORS = 5;
+
+    /**
+     * What a contributor's bytes are attributed to.
+     */
+    public enum Kind {
+        /**
+         * An event parameter, by name, such as "url" or "cx".
+         */
+        PARAMETER,
+        /**
+         * The data of a self-describing event, by its schema URI.
+         */
+        EVENT_SCHEMA,
+        /**
+         * A context entity, by its schema URI.
+         */
+        CONTEXT_SCHEMA
+    }
+
+    private final double samplingRate;
+    private final long reportIntervalMillis;
+    private final LongAdder sampledEvents = new LongAdder();
+    private final LongAdder sampledBytes = new LongAdder();
+    private final EnumMap<Kind, Map<String, Totals>> totals = new EnumMap<>(Kind.class);
+    private final AtomicLong nextReport;
+
+    /**
+     * Creates a profiler.
+     *
+     * @param samplingRate the fraction of events to measure, above 0 and at most 1
+     * @param reportIntervalSeconds the minimum time between log lines, or 0 to disable logging
+     */
+    public PayloadSizeProfiler(double samplingRate, long reportIntervalSeconds) {
+        if (!(samplingRate > 0 && samplingRate <= 1)) {
+            throw new IllegalArgumentException("samplingRate must be greater than 0 and at most 1");
+        }
+        if (reportIntervalSeconds < 0) {
+            throw new IllegalArgumentException("reportIntervalSeconds must not be negative");
+        }
+        this.samplingRate = samplingRate;
+        this.reportIntervalMillis = reportIntervalSeconds * 1000;
+        for (Kind kind : Kind.values()) {
+            totals.put(kind, new ConcurrentHashMap<>());
+        }
+        this.nextReport = new AtomicLong(System.currentTimeMillis() + reportIntervalMillis);
+    }
+
+    /**
+     * Returns the fraction of events that are measured.
+     *
+     * @return the sampling rate
+     */
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * Returns the number of events measured so far.
+     *
+     * @return the number of sampled events
+     */
+    public long getSampledEvents() {
+        return sampledEvents.sum();
+    }
+
+    /**
+     * Measures a payload if it is selected by the sampling rate.
+     * The payload must not be changed by another thread while it is measured.
+     *
+     * @param payload the event payload
+     */
+    public void sample(TrackerPayload payload) {
+        if (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            return;
+        }
+        profile(payload);
+
+        long next = nextReport.get();
+        if (reportIntervalMillis > 0 && System.currentTimeMillis() >= next
+                && nextReport.compareAndSet(next, System.currentTimeMillis() + reportIntervalMillis)) {
+            LOGGER.info(report());
+        }
+    }
+
+    void profile(TrackerPayload payload) {
+        sampledEvents.increment();
+        for (Map.Entry<String, String> pair : payload.getMap().entrySet()) {
+            String key = pair.getKey();
+            String value = pair.getValue();
+            if (value == null) {
+                continue;
+            }
+            // "key":"value", in a POST request
+            long valueBytes = Utils.getJSONStringByteSize(value);
+            long bytes = Utils.getJSONStringByteSize(key) + valueBytes + 2;
+            sampledBytes.add(bytes);
+            record(Kind.PARAMETER, key, bytes);
+
+            switch (key) {
+                case Parameter.SELF_DESCRIBING:
+                case Parameter.SELF_DESCRIBING_ENCODED:
+                    attributeEventData(value, key.equals(Parameter.SELF_DESCRIBING_ENCODED), valueBytes);
+                    break;
+                case Parameter.CONTEXT:
+                case Parameter.CONTEXT_ENCODED:
+                    attributeContext(value, key.equals(Parameter.CONTEXT_ENCODED), valueBytes);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // The event data is the "data" of the unstruct_event envelope
+    private void attributeEventData(String value, boolean encoded, long valueBytes) {
+        JsonNode envelope = parse(value, encoded);
+        if (envelope == null) {
+            return;
+        }
+        String schema = envelope.path(Parameter.DATA).path(Parameter.SCHEMA).asText(OTHER);
+        record(Kind.EVENT_SCHEMA, schema, valueBytes);
+    }
+
+    // Each entity gets the share of the parameter that its JSON takes up in the contexts envelope
+    private void attributeContext(String value, boolean encoded, long valueBytes) {
+        JsonNode envelope = parse(value, encoded);
+        if (envelope == null) {
+            return;
+        }
+        try {
+            long envelopeBytes = OBJECT_MAPPER.writeValueAsBytes(envelope).length;
+            for (JsonNode entity : envelope.path(Parameter.DATA)) {
+                long entityBytes = OBJECT_MAPPER.writeValueAsBytes(entity).length + 1;
+                String schema = entity.path(Parameter.SCHEMA).asText(OTHER);
+                record(Kind.CONTEXT_SCHEMA, schema, entityBytes * valueBytes / envelopeBytes);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not measure context entities: {}", e.getMessage());
+        }
+    }
+
+    private static JsonNode parse(String value, boolean encoded) {
+        try {
+            if (encoded) {
+                return OBJECT_MAPPER.readTree(Base64.getDecoder().decode(value));
+            }
+            return OBJECT_MAPPER.readTree(value);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Could not parse self-describing JSON: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void record(Kind kind, String name, long bytes) {
+        Map<String, Totals> kindTotals = totals.get(kind);
+        Totals contributor = kindTotals.get(name);
+        if (contributor == null) {
+            if (kindTotals.size() >= MAX_CONTRIBUTORS) {
+                name = OTHER;
+            }
+            contributor = kindTotals.computeIfAbsent(name, k -> new Totals());
+        }
+        contributor.bytes.add(bytes);
+        contributor.occurrences.increment();
+    }
+
+    /**
+     * Returns the contributors of a kind that added the most bytes to the sampled events, largest first.
+     *
+     * @param kind the kind of contributor
+     * @param limit the maximum number of contributors to return
+     * @return the top contributors
+     */
+    public List<Contributor> getTopContributors(Kind kind, int limit) {
+        long events = sampledEvents.sum();
+        List<Contributor> contributors = new ArrayList<>();
+        for (Map.Entry<String, Totals> entry : totals.get(kind).entrySet()) {
+            Totals contributor = entry.getValue();
+            contributors.add(new Contributor(kind, entry.getKey(),
+                    contributor.bytes.sum(), contributor.occurrences.sum(), events));
+        }
+        contributors.sort(Comparator.comparingLong(Contributor::getTotalBytes).reversed());
+        return contributors.size() > limit ? new ArrayList<>(contributors.subList(0, limit)) : contributors;
+    }
+
+    /**
+     * Clears the measurements.
+     */
+    public void reset() {
+        for (Map<String, Totals> kindTotals : totals.values()) {
+            kindTotals.clear();
+        }
+        sampledEvents.reset();
+        sampledBytes.reset();
+    }
+
+    String report() {
+        long events = sampledEvents.sum();
+        StringBuilder report = new StringBuilder("Payload size profile of ").append(events)
+                .append(" sampled events, ").append(events == 0 ? 0 : sampledBytes.sum() / events)
+                .append(" bytes per event. Largest parameters: ");
+        appendTopContributors(report, Kind.PARAMETER);
+        report.append(". Largest event schemas: ");
+        appendTopContributors(report, Kind.EVENT_SCHEMA);
+        report.append(". Largest context entities: ");
+        appendTopContributors(report, Kind.CONTEXT_SCHEMA);
+        return report.toString();
+    }
+
+    private void appendTopContributors(StringBuilder report, Kind kind) {
+        List<Contributor> contributors = getTopContributors(kind, LOGGED_CONTRIBUTORS);
+        if (contributors.isEmpty()) {
+            report.append("none");
+        }
+        for (int i = 0; i < contributors.size(); i++) {
+            Contributor contributor = contributors.get(i);
+            if (i > 0) {
+                report.append(", ");
+            }
+            report.append(contributor.getName()).append('=').append(contributor.getBytesPerEvent());
+        }
+    }
+
+    private static final class Totals {
+        final LongAdder bytes = new LongAdder();
+        final LongAdder occurrences = new LongAdder();
+    }
+
+    /**
+     * The bytes attributed to a parameter or schema in the sampled events.
+     */
+    public static final class Contributor {
+        private final Kind kind;
+        private final String name;
+        private final long totalBytes;
+        private final long occurrences;
+        private final long sampledEvents;
+
+        Contributor(Kind kind, String name, long totalBytes, long occurrences, long sampledEvents) {
+            this.kind = kind;
+            this.name = name;
+            this.totalBytes = totalBytes;
+            this.occurrences = occurrences;
+            this.sampledEvents = sampledEvents;
+        }
+
+        /**
+         * @return what the bytes are attributed to
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the parameter name or schema URI
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the bytes attributed to this contributor in all the sampled events
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return the number of times the parameter or schema was found in the sampled events
+         */
+        public long getOccurrences() {
+            return occurrences;
+        }
+
+        /**
+         * @return the bytes this contributor adds to an average sampled event
+         */
+        public long getBytesPerEvent() {
+            return sampledEvents == 0 ? 0 : totalBytes / sampledEvents;
+        }
+
+        @Override
+        public String toString() {
+            return "Contributor{" +
+                    "kind=" + kind +
+                    ", name='" + name + '\'' +
+                    ", totalBytes=" + totalBytes +
+                    ", occurrences=" + occurrences +
+                    ", bytesPerEvent=" + getBytesPerEvent() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes event IDs from a pool, which a background thread refills from another generator.
+ *
+ * This moves the cost of a slow generator, such as the SecureRandom used by
+ * {@link SecureRandomEventIdGenerator}, off the threads that track events.
+ * When the pool holds fewer than half its capacity, a refill is started; if it is empty,
+ * the ID is generated on the calling thread instead. The pool is a lock-free queue, and its size
+ * is tracked in a separate counter, so that taking an ID doesn't contend on a lock with
+ * other tracking threads or with the refill.
+ *
+ * The background thread is a daemon thread, which can be stopped with {@link #close()}.
+ */
+public class PooledEventIdGenerator implements EventIdGenerator, AutoCloseable {
+
+    private final EventIdGenerator source;
+    private final int poolSize;
+    private final ConcurrentLinkedQueue<EventId> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger(0);
+    private final int refillThreshold;
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+    private final ExecutorService refillExecutor;
+    private final Runnable refillTask = this::refill;
+
+    /**
+     * Creates a PooledEventIdGenerator that pools random (version 4) UUIDs from UUID.randomUUID().
+     *
+     * @param poolSize the maximum number of pregenerated IDs
+     */
+    public PooledEventIdGenerator(int poolSize) {
+        this(new SecureRandomEventIdGenerator(), poolSize);
+    }
+
+    /**
+     * Creates a PooledEventIdGenerator.
+     *
+     * @param source the generator the pool is filled from
+     * @param poolSize the maximum number of pregenerated IDs
+     */
+    public PooledEventIdGenerator(EventIdGenerator source, int poolSize) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be greater than 0");
+        }
+        this.source = source;
+        this.poolSize = poolSize;
+        this.refillThreshold = poolSize / 2;
+        this.refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snowplow-event-id-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        requestRefill();
+    }
+
+    @Override
+    public EventId generate() {
+        EventId eventId = pool.poll();
+        if (eventId == null) {
+            requestRefill();
+            return source.generate();
+        }
+        if (pooledCount.decrementAndGet() < refillThreshold && !refilling.get()) {
+            requestRefill();
+        }
+        return eventId;
+    }
+
+    /**
+     * Returns the number of pregenerated IDs in the pool.
+     *
+     * @return the number of IDs
+     */
+    public int getPooledCount() {
+        return Math.max(0, pooledCount.get());
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Stops the background thread. IDs are then generated on the calling thread once the pool is empty.
+     */
+    @Override
+    public void close() {
+        refillExecutor.shutdown();
+    }
+
+    private void requestRefill() {
+        if (!refillExecutor.isShutdown() && refilling.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(refillTask);
+            } catch (RuntimeException e) {
+                // Rejected because the generator was closed
+                refilling.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            // This is the only thread that adds IDs, so the pool never holds more than poolSize
+            while (!refillExecutor.isShutdown() && pooledCount.get() < poolSize) {
+                pool.offer(source.generate());
+                pooledCount.incrementAndGet();
+            }
+        } finally {
+            refilling.set(false);
+        }
+        // IDs taken while the refill was finishing didn't request another one
+        if (pooledCount.get() < refillThreshold) {
+            requestRefill();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs with UUID.randomUUID(), which uses a shared SecureRandom.
+ * This is the default EventIdGenerator.
+ */
+public class SecureRandomEventIdGenerator implements EventIdGenerator {
+
+    @Override
+    public EventId generate() {
+        return EventId.fromUUID(UUID.randomUUID());
+    }
+}
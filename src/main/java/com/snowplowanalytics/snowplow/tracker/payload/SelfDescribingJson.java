@@ -12,6 +12,8 @@
  */
 package com.snowplowanalytics.snowplow.tracker.payload;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -196,6 +198,25 @@ public class SelfDescribingJson implements Payload {
      */
     @Override
     public String toString() {
+        if (FlatJsonWriter.canWrite(payload)) {
+            return FlatJsonWriter.toJSONString(payload);
+        }
         return Utils.mapToJSONString(payload);
     }
+
+    /**
+     * Writes the Payload as UTF-8 encoded JSON directly into an OutputStream.
+     * The output is identical to {@link #toString()}, but no intermediate String is built.
+     *
+     * @param outputStream the stream to write to; it is flushed but not closed
+     * @throws IOException if the Payload could not be serialized or written
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        // Batches of TrackerPayloads are written without Jackson; Jackson serializes any other data
+        if (FlatJsonWriter.canWrite(payload)) {
+            FlatJsonWriter.write(payload, outputStream);
+        } else {
+            Utils.writeJSON(payload, outputStream);
+        }
+    }
 }
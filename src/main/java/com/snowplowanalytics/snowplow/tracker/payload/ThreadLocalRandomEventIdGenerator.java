@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random (version 4) UUIDs using ThreadLocalRandom.
+ *
+ * Unlike UUID.randomUUID(), generating an ID doesn't contend with other threads for a shared
+ * SecureRandom. The IDs are not cryptographically strong, so they shouldn't be used where
+ * event IDs must be unpredictable.
+ */
+public class ThreadLocalRandomEventIdGenerator implements EventIdGenerator {
+
+    @Override
+    public EventId generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Version 4 in bits 48-51 and the IETF variant in the top bits of the second long
+        long mostSignificantBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long leastSignificantBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new EventId(mostSignificantBits, leastSignificantBits);
+    }
+}
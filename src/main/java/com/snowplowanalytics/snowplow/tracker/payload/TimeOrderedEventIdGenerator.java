@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates time-ordered (version 7) UUIDs, as defined by RFC 9562.
+ *
+ * The first 48 bits of each ID are the Unix time in milliseconds, and the other 74 non-fixed bits
+ * are random (from ThreadLocalRandom). IDs generated in different milliseconds therefore sort
+ * in the order they were generated, which also helps downstream storage that partitions or
+ * indexes events by ID. IDs generated within the same millisecond are in random order.
+ */
+public class TimeOrderedEventIdGenerator implements EventIdGenerator {
+
+    @Override
+    public EventId generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long timestamp = System.currentTimeMillis() & 0xffffffffffffL;
+        long mostSignificantBits = (timestamp << 16) | 0x7000L | (random.nextInt() & 0xfffL);
+        long leastSignificantBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new EventId(mostSignificantBits, leastSignificantBits);
+    }
+}
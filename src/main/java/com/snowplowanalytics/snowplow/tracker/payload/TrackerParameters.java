@@ -12,7 +12,11 @@
  */
 package com.snowplowanalytics.snowplow.tracker.payload;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.snowplowanalytics.snowplow.tracker.DevicePlatform;
+import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 
 /**
  * A wrapper for Tracker properties.
@@ -24,6 +28,7 @@ public class TrackerParameters {
     private final DevicePlatform platform;
     private final String namespace;
     private final boolean base64Encoded;
+    private final PayloadPairs pairs;
 
     public TrackerParameters(String appId, DevicePlatform platform, String namespace, String trackerVersion,
             boolean base64Encoded) {
@@ -32,6 +37,23 @@ public class TrackerParameters {
         this.namespace = namespace;
         this.trackerVersion = trackerVersion;
         this.base64Encoded = base64Encoded;
+
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(Parameter.PLATFORM, platform == null ? null : platform.toString());
+        parameters.put(Parameter.APP_ID, appId);
+        parameters.put(Parameter.NAMESPACE, namespace);
+        parameters.put(Parameter.TRACKER_VERSION, trackerVersion);
+        this.pairs = new PayloadPairs(parameters);
+    }
+
+    /**
+     * Returns the platform, appId, namespace and tracker version parameters,
+     * encoded once to be added to every event payload.
+     *
+     * @return the tracker parameter pairs
+     */
+    public PayloadPairs getPairs() {
+        return pairs;
     }
 
     public boolean getBase64Encoded() {
@@ -12,9 +12,22 @@
  */
 package com.snowplowanalytics.snowplow.tracker.payload;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import org.slf4j.Logger;
@@ -30,26 +43,223 @@ import com.snowplowanalytics.snowplow.tracker.Utils;
  * The deviceSentTimestamp ("stm") is added at that point.
  *
  * EventId and deviceCreatedTimestamp are added to the internal map at
- * TrackerPayload initialization.
+ * TrackerPayload initialization. The eventId itself is generated when it is first needed,
+ * so that a Tracker can generate it with its own {@link EventIdGenerator}.
+ *
+ * The values of the standard event parameters are kept in an array slot per parameter,
+ * with any other keys in an overflow map, rather than in a map entry per pair.
+ * {@link #getMap()} returns a live Map view of the pairs.
+ *
+ * A payload created with {@link #deferred(EventIdGenerator, Supplier)} holds only its eventId and
+ * deviceCreatedTimestamp until its other pairs are first needed, usually by an Emitter thread.
+ * If they can't be built, the payload is marked as failed, and must not be sent.
  */
 public class TrackerPayload implements Payload {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TrackerPayload.class);
-    protected final Map<String, String> payload = new LinkedHashMap<>();
+    protected final Map<String, String> payload = new PayloadMap();
+    private static final EventIdGenerator DEFAULT_EVENT_ID_GENERATOR = new SecureRandomEventIdGenerator();
+    private static final int EID_INDEX = KnownParameter.EID.ordinal();
+    private static final int STM_INDEX = KnownParameter.DEVICE_SENT_TIMESTAMP.ordinal();
+    private static final int DTM_INDEX = KnownParameter.DEVICE_CREATED_TIMESTAMP.ordinal();
+    // Held in the eid slot until the eventId is generated
+    private static final Object PENDING_EVENT_ID = new Object();
+
+    // Set if the payload was recreated from a map, otherwise the eventId is generated
     private final String eventId;
+    private volatile EventId generatedEventId;
     private final Long deviceCreatedTimestamp;
+    // Values of the known parameters, indexed by KnownParameter ordinal.
+    // Each is a String, a shared EncodedValue added from PayloadPairs, or the EventId.
+    private final Object[] values = new Object[KnownParameter.VALUES.length];
+    // Pairs whose keys aren't known parameters, created when first needed
+    private Map<String, String> otherPairs;
+    private int size = 0;
+    // Size of the "key":"value" pairs as JSON, excluding braces and commas
+    private long pairsByteSize = 0;
+    // The pairs other than stm, encoded as JSON when the payload is first written.
+    // Cleared when any other pair changes, so that a resent event is only re-encoded if it was changed.
+    private volatile EncodedPairs encodedPairs;
+    // Builds the other pairs of a deferred payload; cleared once they have been added
+    private volatile Supplier<TrackerPayload> deferredPairs;
+    // Set if the deferred pairs couldn't be built
+    private volatile boolean failed = false;
 
 
     public TrackerPayload() {
-        eventId = Utils.getEventId();
+        eventId = null;
         deviceCreatedTimestamp = System.currentTimeMillis();
 
-        add(Parameter.EID, eventId);
+        values[EID_INDEX] = PENDING_EVENT_ID;
+        size++;
+        // "eid":"<36 characters>"
+        pairsByteSize += KnownParameter.EID.keyByteSize + 1 + EventId.LENGTH + 2;
         add(Parameter.DEVICE_CREATED_TIMESTAMP, Long.toString(deviceCreatedTimestamp));
     }
 
+    /**
+     * Recreates a TrackerPayload from the map of an existing payload, for example
+     * one restored from persistent storage. The eventId and deviceCreatedTimestamp
+     * are read from the map instead of being generated.
+     *
+     * @param map the key-value pairs of the existing payload
+     */
+    public TrackerPayload(Map<String, String> map) {
+        Objects.requireNonNull(map);
+        String eid = map.get(Parameter.EID);
+        String dtm = map.get(Parameter.DEVICE_CREATED_TIMESTAMP);
+        if (eid == null || dtm == null) {
+            throw new IllegalArgumentException("map must contain the eid and dtm parameters");
+        }
+
+        eventId = eid;
+        deviceCreatedTimestamp = Long.parseLong(dtm);
+        addMap(map);
+    }
+
+    /**
+     * Creates a payload whose pairs, other than the eventId and deviceCreatedTimestamp, are built later.
+     * The eventId is generated and the deviceCreatedTimestamp taken now. The supplier is called once,
+     * on whichever thread first reads or changes the pairs, and the pairs of the payload it returns
+     * are added to this one, except for its own eventId and deviceCreatedTimestamp.
+     *
+     * @param generator the generator of the eventId
+     * @param pairs builds a payload with the other pairs
+     * @return the deferred payload
+     */
+    public static TrackerPayload deferred(final EventIdGenerator generator, final Supplier<TrackerPayload> pairs) {
+        Objects.requireNonNull(pairs);
+        TrackerPayload payload = new TrackerPayload();
+        payload.generateEventId(generator);
+        payload.deferredPairs = pairs;
+        return payload;
+    }
+
+    /**
+     * Returns whether the pairs of a deferred payload have yet to be built.
+     *
+     * @return true if the pairs are still deferred
+     */
+    public boolean isDeferred() {
+        return deferredPairs != null;
+    }
+
+    /**
+     * Returns whether the pairs of a deferred payload couldn't be built. A failed payload holds
+     * only its eventId and deviceCreatedTimestamp, and is dropped by the Emitter rather than sent.
+     *
+     * @return true if building the pairs failed
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Builds the pairs of a deferred payload, if they haven't been built yet.
+     *
+     * @return false if the payload is failed
+     */
+    public boolean build() {
+        materialize();
+        return !failed;
+    }
+
+    // Adds the deferred pairs, if they haven't been added yet
+    private void materialize() {
+        if (deferredPairs != null) {
+            addDeferredPairs();
+        }
+    }
+
+    private synchronized void addDeferredPairs() {
+        Supplier<TrackerPayload> pairs = deferredPairs;
+        if (pairs == null) {
+            return;
+        }
+        int initialSize = size;
+        long initialByteSize = pairsByteSize;
+        try {
+            TrackerPayload built = pairs.get();
+            built.materialize();
+            // The pairs are added directly, as put() would materialize this payload again
+            for (int i = 0; i < values.length; i++) {
+                Object value = built.values[i];
+                if (i == EID_INDEX || i == DTM_INDEX || value == null) {
+                    continue;
+                }
+                values[i] = value;
+                size++;
+                pairsByteSize += KnownParameter.VALUES[i].keyByteSize + 1 + Utils.getJSONStringByteSize(EncodedValue.text(value));
+            }
+            if (built.otherPairs != null) {
+                otherPairs = new LinkedHashMap<>(built.otherPairs);
+                for (Map.Entry<String, String> entry : otherPairs.entrySet()) {
+                    size++;
+                    pairsByteSize += Utils.getJSONStringByteSize(entry.getKey()) + 1 + Utils.getJSONStringByteSize(entry.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to build the deferred payload of event {}: {}", getEventId(), e.getMessage());
+            // Nothing that was copied before the failure is kept
+            for (int i = 0; i < values.length; i++) {
+                if (i != EID_INDEX && i != DTM_INDEX) {
+                    values[i] = null;
+                }
+            }
+            otherPairs = null;
+            size = initialSize;
+            pairsByteSize = initialByteSize;
+            failed = true;
+        } finally {
+            encodedPairs = null;
+            deferredPairs = null;
+        }
+    }
+
     public String getEventId() {
-        return eventId;
+        return eventId != null ? eventId : resolveEventId(DEFAULT_EVENT_ID_GENERATOR).toString();
+    }
+
+    /**
+     * Generates the eventId with an EventIdGenerator, unless it has already been generated.
+     * Otherwise, a random UUID is generated when the eventId is first needed.
+     *
+     * @param generator the generator to use
+     * @return the generated eventId, or null if the eid parameter holds an eventId that wasn't generated
+     */
+    public EventId generateEventId(final EventIdGenerator generator) {
+        if (values[EID_INDEX] == PENDING_EVENT_ID) {
+            resolveEventId(generator);
+        }
+        Object value = values[EID_INDEX];
+        return value instanceof EventId ? (EventId) value : null;
+    }
+
+    private EventId resolveEventId(EventIdGenerator generator) {
+        EventId id = generatedEventId;
+        if (id == null) {
+            synchronized (this) {
+                id = generatedEventId;
+                if (id == null) {
+                    id = generator.generate();
+                    if (values[EID_INDEX] == PENDING_EVENT_ID) {
+                        values[EID_INDEX] = id;
+                    }
+                    generatedEventId = id;
+                }
+            }
+        }
+        return id;
+    }
+
+    // Returns the value in a slot, generating the eventId if it is pending
+    private Object slot(int index) {
+        Object value = values[index];
+        if (value == PENDING_EVENT_ID) {
+            resolveEventId(DEFAULT_EVENT_ID_GENERATOR);
+            value = values[index];
+        }
+        return value;
     }
 
     public Long getDeviceCreatedTimestamp() {
@@ -73,8 +283,75 @@ public class TrackerPayload implements Payload {
             LOGGER.debug("Null or empty value detected: {}->{}", key, value);
             return;
         }
-        LOGGER.debug("Adding new kv pair: {}->{}", key, value);
-        payload.put(key, value);
+        put(key, value);
+    }
+
+    private String put(String key, String value) {
+        materialize();
+        KnownParameter parameter = KnownParameter.forKey(key);
+        String previousValue;
+        long keyByteSize;
+        if (parameter != null) {
+            previousValue = EncodedValue.text(slot(parameter.ordinal()));
+            values[parameter.ordinal()] = value;
+            keyByteSize = parameter.keyByteSize;
+            changed(parameter.ordinal());
+        } else {
+            encodedPairs = null;
+            if (otherPairs == null) {
+                otherPairs = new LinkedHashMap<>();
+            }
+            previousValue = otherPairs.put(key, value);
+            keyByteSize = Utils.getJSONStringByteSize(key);
+        }
+
+        if (previousValue == null) {
+            size++;
+            // "key":"value"
+            pairsByteSize += keyByteSize + 1 + Utils.getJSONStringByteSize(value);
+        } else {
+            pairsByteSize += Utils.getJSONStringByteSize(value) - Utils.getJSONStringByteSize(previousValue);
+        }
+        return previousValue;
+    }
+
+    private String get(Object key) {
+        materialize();
+        KnownParameter parameter = KnownParameter.forKey(key);
+        if (parameter != null) {
+            return EncodedValue.text(slot(parameter.ordinal()));
+        }
+        return otherPairs == null ? null : otherPairs.get(key);
+    }
+
+    private String remove(Object key) {
+        materialize();
+        KnownParameter parameter = KnownParameter.forKey(key);
+        String previousValue;
+        if (parameter != null) {
+            previousValue = EncodedValue.text(slot(parameter.ordinal()));
+            values[parameter.ordinal()] = null;
+            changed(parameter.ordinal());
+        } else {
+            previousValue = otherPairs == null ? null : otherPairs.remove(key);
+            encodedPairs = null;
+        }
+        if (previousValue != null) {
+            removed((String) key, previousValue);
+        }
+        return previousValue;
+    }
+
+    // Clears the encoded pairs, unless only the stm value changed
+    private void changed(int index) {
+        if (index != STM_INDEX) {
+            encodedPairs = null;
+        }
+    }
+
+    private void removed(String key, String value) {
+        size--;
+        pairsByteSize -= Utils.getJSONStringByteSize(key) + 1 + Utils.getJSONStringByteSize(value);
     }
 
     /**
@@ -95,6 +372,28 @@ public class TrackerPayload implements Payload {
         }
     }
 
+    /**
+     * Add all the pairs of a snapshot. The effect is the equivalent to that of calling
+     * {@link #add(String, String)} for each pair, but the pairs were already validated and
+     * measured when the snapshot was created.
+     *
+     * @param pairs the pairs to be stored in this payload
+     */
+    public void addPairs(final PayloadPairs pairs) {
+        materialize();
+        encodedPairs = null;
+        for (int i = 0; i < pairs.keys.length; i++) {
+            int index = pairs.knownIndexes[i];
+            if (index >= 0 && values[index] == null) {
+                values[index] = pairs.encodedValues[i];
+                size++;
+                pairsByteSize += pairs.pairByteSizes[i];
+            } else {
+                put(pairs.keys[i], pairs.values[i]);
+            }
+        }
+    }
+
     /**
      * Add a map to the Payload with a key dependent on the base 64 encoding option
      * you choose using the two keys provided.
@@ -111,18 +410,19 @@ public class TrackerPayload implements Payload {
             return;
         }
 
-        final String mapString = Utils.mapToJSONString(map);
         LOGGER.debug("Adding new map: {}", map);
 
         if (base64Encoded) {
-            add(typeEncoded, Utils.base64Encode(mapString, StandardCharsets.UTF_8));
+            add(typeEncoded, Utils.mapToBase64JSONString(map));
         } else {
-            add(typeNotEncoded, mapString);
+            add(typeNotEncoded, Utils.mapToJSONString(map));
         }
     }
 
     /**
      * Returns the Payload as a Map.
+     * The Map is a view of the payload, so changes to either are visible in the other.
+     * It does not accept null values.
      *
      * @return A Map of all the key-value entries
      */
@@ -132,13 +432,16 @@ public class TrackerPayload implements Payload {
     }
 
     /**
-     * Returns the byte size of a payload.
+     * Returns the byte size of a payload, as UTF-8 encoded JSON.
+     * The size is updated as pairs are added, so the payload is not serialized.
      *
      * @return A long representing the byte size of the payload.
      */
     @Override
     public long getByteSize() {
-        return Utils.getUTF8Length(toString());
+        materialize();
+        // The pairs, with commas between them, inside braces
+        return 2 + pairsByteSize + Math.max(0, size - 1);
     }
 
     /**
@@ -149,6 +452,300 @@ public class TrackerPayload implements Payload {
      */
     @Override
     public String toString() {
-        return Utils.mapToJSONString(payload);
+        return FlatJsonWriter.toJSONString(this);
+    }
+
+    /**
+     * Returns the Payload as UTF-8 encoded JSON. The bytes are those of {@link #toString()}.
+     *
+     * @return the JSON bytes
+     */
+    public byte[] toJSONBytes() {
+        return FlatJsonWriter.toJSONBytes(this);
+    }
+
+    /**
+     * Writes the Payload as UTF-8 encoded JSON directly into an OutputStream.
+     * The output is identical to {@link #toString()}, but no intermediate String is built.
+     *
+     * @param outputStream the stream to write to; it is flushed but not closed
+     * @throws IOException if the Payload could not be written
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        FlatJsonWriter.write(this, outputStream);
+    }
+
+    // Returns the payload whose getMap() view this is, or null if it isn't a payload map
+    static TrackerPayload fromMap(Object map) {
+        return map instanceof PayloadMap ? ((PayloadMap) map).getPayload() : null;
+    }
+
+    // Writes the encoded pairs, with the current stm value spliced in
+    void writeJSON(FlatJsonWriter writer) throws IOException {
+        materialize();
+        EncodedPairs encoded = encodedPairs;
+        if (encoded == null) {
+            encoded = encodePairs();
+            encodedPairs = encoded;
+        }
+        Object sentTimestamp = values[STM_INDEX];
+        if (sentTimestamp == null) {
+            writer.writeRaw(encoded.bytes, 0, encoded.bytes.length);
+            return;
+        }
+        int offset = encoded.stmOffset;
+        writer.writeRaw(encoded.bytes, 0, offset);
+        // Only the opening brace comes before stm if it is the first pair
+        if (offset > 1) {
+            writer.writeByte(',');
+        }
+        writer.writeRaw(KnownParameter.DEVICE_SENT_TIMESTAMP.jsonKeyBytes);
+        writer.writeString(EncodedValue.text(sentTimestamp));
+        if (offset == 1 && encoded.bytes[offset] != '}') {
+            writer.writeByte(',');
+        }
+        writer.writeRaw(encoded.bytes, offset, encoded.bytes.length - offset);
+    }
+
+    private EncodedPairs encodePairs() throws IOException {
+        FlatJsonWriter writer = FlatJsonWriter.startScratch();
+        try {
+            int stmOffset = 1;
+            writer.writeByte('{');
+            boolean first = true;
+            for (int i = 0; i < values.length; i++) {
+                if (i == STM_INDEX) {
+                    stmOffset = writer.size();
+                    continue;
+                }
+                Object value = slot(i);
+                if (value == null) {
+                    continue;
+                }
+                if (!first) {
+                    writer.writeByte(',');
+                }
+                first = false;
+                writer.writeRaw(KnownParameter.VALUES[i].jsonKeyBytes);
+                if (value instanceof EncodedValue) {
+                    writer.writeQuoted(((EncodedValue) value).json);
+                } else if (value instanceof EventId) {
+                    writer.writeEventId((EventId) value);
+                } else {
+                    writer.writeString((String) value);
+                }
+            }
+            if (otherPairs != null) {
+                for (Map.Entry<String, String> entry : otherPairs.entrySet()) {
+                    if (!first) {
+                        writer.writeByte(',');
+                    }
+                    first = false;
+                    writer.writeString(entry.getKey());
+                    writer.writeByte(':');
+                    writer.writeString(entry.getValue());
+                }
+            }
+            writer.writeByte('}');
+            return new EncodedPairs(writer.toByteArray(), stmOffset);
+        } finally {
+            writer.finish();
+        }
+    }
+
+    // The JSON of the pairs other than stm, and the position at which the stm pair belongs
+    private static final class EncodedPairs {
+        final byte[] bytes;
+        final int stmOffset;
+
+        EncodedPairs(byte[] bytes, int stmOffset) {
+            this.bytes = bytes;
+            this.stmOffset = stmOffset;
+        }
+    }
+
+    /**
+     * Returns the Payload as a URL query string, as sent in GET requests.
+     * Keys and values are URL encoded as by {@link Utils#mapToQueryString(Map)}.
+     *
+     * @return the query string, without a leading "?"
+     */
+    public String toQueryString() {
+        materialize();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            Object value = slot(i);
+            if (value != null) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(KnownParameter.VALUES[i].queryKey).append('=');
+                if (value instanceof EncodedValue) {
+                    sb.append(((EncodedValue) value).queryValue);
+                } else if (value instanceof EventId) {
+                    // UUIDs need no URL encoding
+                    sb.append(value);
+                } else {
+                    sb.append(Utils.urlEncodeUTF8(value));
+                }
+            }
+        }
+        if (otherPairs != null) {
+            for (Map.Entry<String, String> entry : otherPairs.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(Utils.urlEncodeUTF8(entry.getKey())).append('=').append(Utils.urlEncodeUTF8(entry.getValue()));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Writes the pairs as a JSON object through Jackson, using the pre-encoded keys
+    private void writeJSON(JsonGenerator generator) throws IOException {
+        materialize();
+        generator.writeStartObject();
+        for (int i = 0; i < values.length; i++) {
+            Object value = slot(i);
+            if (value != null) {
+                generator.writeFieldName(KnownParameter.VALUES[i].jsonKey);
+                generator.writeString(EncodedValue.text(value));
+            }
+        }
+        if (otherPairs != null) {
+            for (Map.Entry<String, String> entry : otherPairs.entrySet()) {
+                generator.writeStringField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    // A Map view of the known parameter values followed by the other pairs.
+    // Jackson serializes it through JsonSerializable rather than as a generic Map.
+    private class PayloadMap extends AbstractMap<String, String> implements JsonSerializable {
+        private Set<Map.Entry<String, String>> entrySet;
+
+        TrackerPayload getPayload() {
+            return TrackerPayload.this;
+        }
+
+        @Override
+        public int size() {
+            materialize();
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return TrackerPayload.this.get(key) != null;
+        }
+
+        @Override
+        public String get(Object key) {
+            return TrackerPayload.this.get(key);
+        }
+
+        @Override
+        public String put(String key, String value) {
+            Objects.requireNonNull(key);
+            Objects.requireNonNull(value);
+            return TrackerPayload.this.put(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return TrackerPayload.this.remove(key);
+        }
+
+        @Override
+        public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+            writeJSON(generator);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator generator, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+            writeJSON(generator);
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, String>> iterator() {
+                        materialize();
+                        return new PayloadIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        materialize();
+                        return size;
+                    }
+                };
+            }
+            return entrySet;
+        }
+    }
+
+    private class PayloadIterator implements Iterator<Map.Entry<String, String>> {
+        private int nextIndex = nextKnownIndex(0);
+        private int lastIndex = -1;
+        private Iterator<Map.Entry<String, String>> otherIterator;
+        private Map.Entry<String, String> lastOther;
+
+        private int nextKnownIndex(int from) {
+            for (int i = from; i < values.length; i++) {
+                if (values[i] != null) {
+                    return i;
+                }
+            }
+            return values.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextIndex < values.length) {
+                return true;
+            }
+            if (otherIterator == null && otherPairs != null) {
+                otherIterator = otherPairs.entrySet().iterator();
+            }
+            return otherIterator != null && otherIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextIndex < values.length) {
+                lastIndex = nextIndex;
+                nextIndex = nextKnownIndex(nextIndex + 1);
+                return new AbstractMap.SimpleImmutableEntry<>(KnownParameter.VALUES[lastIndex].key, EncodedValue.text(slot(lastIndex)));
+            }
+            lastIndex = -1;
+            lastOther = otherIterator.next();
+            // Changes must go through the payload, to keep the byte size up to date
+            return new AbstractMap.SimpleImmutableEntry<>(lastOther);
+        }
+
+        @Override
+        public void remove() {
+            if (lastIndex >= 0) {
+                String value = EncodedValue.text(slot(lastIndex));
+                values[lastIndex] = null;
+                changed(lastIndex);
+                removed(KnownParameter.VALUES[lastIndex].key, value);
+                lastIndex = -1;
+            } else if (lastOther != null) {
+                otherIterator.remove();
+                encodedPairs = null;
+                removed(lastOther.getKey(), lastOther.getValue());
+                lastOther = null;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.jfr;
+
+/**
+ * Emits JDK Flight Recorder events for the tracking pipeline.
+ * It is used by the Tracker, BatchEmitter and HTTP client adapters, and isn't meant to be called by applications.
+ *
+ * This is the Java 11 version, loaded from META-INF/versions/11 of the multi-release jar.
+ * It must have the same public methods as the Java 8 version, which does nothing.
+ * The events are in the "Snowplow" category, and are enabled and configured like any
+ * other JFR event. They are emitted by {@link JfrEvents}, which is only loaded if the runtime
+ * has the jdk.jfr module: in a runtime image built without it, this class does nothing.
+ */
+public final class FlightRecorderEvents {
+
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private FlightRecorderEvents() {
+    }
+
+    public static Object beginTrack() {
+        return AVAILABLE ? JfrEvents.beginTrack() : null;
+    }
+
+    public static void commitTrack(Object event, String eventType, int payloads, int payloadsDropped,
+                                   long preprocessingNanos, long payloadNanos, long contextNanos,
+                                   long subjectNanos, long storeNanos) {
+        if (event != null) {
+            JfrEvents.commitTrack(event, eventType, payloads, payloadsDropped,
+                    preprocessingNanos, payloadNanos, contextNanos, subjectNanos, storeNanos);
+        }
+    }
+
+    public static Object beginBatchWait() {
+        return AVAILABLE ? JfrEvents.beginBatchWait() : null;
+    }
+
+    public static void commitBatchWait(Object event, int requested, int returned) {
+        if (event != null) {
+            JfrEvents.commitBatchWait(event, requested, returned);
+        }
+    }
+
+    public static Object beginSerialization() {
+        return AVAILABLE ? JfrEvents.beginSerialization() : null;
+    }
+
+    public static void commitSerialization(Object event, String compression) {
+        if (event != null) {
+            JfrEvents.commitSerialization(event, compression);
+        }
+    }
+
+    public static Object beginRequest() {
+        return AVAILABLE ? JfrEvents.beginRequest() : null;
+    }
+
+    public static void commitRequest(Object event, int events, int statusCode) {
+        if (event != null) {
+            JfrEvents.commitRequest(event, events, statusCode);
+        }
+    }
+
+    public static void retry(int events, String failureType, int statusCode, long backoffMillis) {
+        if (AVAILABLE) {
+            JfrEvents.retry(events, failureType, statusCode, backoffMillis);
+        }
+    }
+
+    public static void bufferFull(int events, boolean evicted) {
+        if (AVAILABLE) {
+            JfrEvents.bufferFull(events, evicted);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of the tracking pipeline, emitted through {@link FlightRecorderEvents}.
+ * This class links the jdk.jfr module, so it is only loaded if the module is present.
+ *
+ * When an event is disabled, its begin method returns null after checking
+ * the event type's enabled state, and nothing is allocated.
+ * The Track and BatchWait events happen for every event tracked or sent, so by default
+ * they are only recorded when they take longer than 1 ms.
+ */
+final class JfrEvents {
+
+    private static final String CATEGORY = "Snowplow";
+
+    private static final EventType TRACK = EventType.getEventType(TrackEvent.class);
+    private static final EventType BATCH_WAIT = EventType.getEventType(BatchWaitEvent.class);
+    private static final EventType SERIALIZATION = EventType.getEventType(BatchSerializationEvent.class);
+    private static final EventType REQUEST = EventType.getEventType(CollectorRequestEvent.class);
+    private static final EventType RETRY = EventType.getEventType(RetryEvent.class);
+    private static final EventType BUFFER_FULL = EventType.getEventType(BufferFullEvent.class);
+
+    private JfrEvents() {
+    }
+
+    static Object beginTrack() {
+        if (!TRACK.isEnabled()) {
+            return null;
+        }
+        TrackEvent event = new TrackEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitTrack(Object event, String eventType, int payloads, int payloadsDropped,
+                            long preprocessingNanos, long payloadNanos, long contextNanos,
+                            long subjectNanos, long storeNanos) {
+        if (event == null) {
+            return;
+        }
+        TrackEvent track = (TrackEvent) event;
+        track.end();
+        if (track.shouldCommit()) {
+            track.eventType = eventType;
+            track.payloads = payloads;
+            track.payloadsDropped = payloadsDropped;
+            track.preprocessing = preprocessingNanos;
+            track.payloadBuild = payloadNanos;
+            track.contextEncoding = contextNanos;
+            track.subjectMerge = subjectNanos;
+            track.storeAdd = storeNanos;
+            track.commit();
+        }
+    }
+
+    static Object beginBatchWait() {
+        if (!BATCH_WAIT.isEnabled()) {
+            return null;
+        }
+        BatchWaitEvent event = new BatchWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitBatchWait(Object event, int requested, int returned) {
+        if (event == null) {
+            return;
+        }
+        BatchWaitEvent batchWait = (BatchWaitEvent) event;
+        batchWait.end();
+        if (batchWait.shouldCommit()) {
+            batchWait.requested = requested;
+            batchWait.returned = returned;
+            batchWait.commit();
+        }
+    }
+
+    static Object beginSerialization() {
+        if (!SERIALIZATION.isEnabled()) {
+            return null;
+        }
+        BatchSerializationEvent event = new BatchSerializationEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitSerialization(Object event, String compression) {
+        if (event == null) {
+            return;
+        }
+        BatchSerializationEvent serialization = (BatchSerializationEvent) event;
+        serialization.end();
+        if (serialization.shouldCommit()) {
+            serialization.compression = compression;
+            serialization.commit();
+        }
+    }
+
+    static Object beginRequest() {
+        if (!REQUEST.isEnabled()) {
+            return null;
+        }
+        CollectorRequestEvent event = new CollectorRequestEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitRequest(Object event, int events, int statusCode) {
+        if (event == null) {
+            return;
+        }
+        CollectorRequestEvent request = (CollectorRequestEvent) event;
+        request.end();
+        if (request.shouldCommit()) {
+            request.events = events;
+            request.statusCode = statusCode;
+            request.commit();
+        }
+    }
+
+    static void retry(int events, String failureType, int statusCode, long backoffMillis) {
+        if (!RETRY.isEnabled()) {
+            return;
+        }
+        RetryEvent retry = new RetryEvent();
+        retry.events = events;
+        retry.failureType = failureType;
+        retry.statusCode = statusCode;
+        retry.backoff = backoffMillis;
+        retry.commit();
+    }
+
+    static void bufferFull(int events, boolean evicted) {
+        if (!BUFFER_FULL.isEnabled()) {
+            return;
+        }
+        BufferFullEvent bufferFull = new BufferFullEvent();
+        bufferFull.events = events;
+        bufferFull.evicted = evicted;
+        bufferFull.commit();
+    }
+
+    @Name("com.snowplowanalytics.snowplow.Track")
+    @Label("Track")
+    @Category(CATEGORY)
+    @Description("A call to Tracker.track or Tracker.trackFast, with the time spent in each stage")
+    @Threshold("1 ms")
+    static final class TrackEvent extends Event {
+        @Label("Event Type")
+        String eventType;
+
+        @Label("Payloads")
+        int payloads;
+
+        @Label("Payloads Dropped")
+        @Description("Payloads that the emitter didn't accept")
+        int payloadsDropped;
+
+        @Label("Preprocessing")
+        @Timespan
+        long preprocessing;
+
+        @Label("Payload Build")
+        @Description("Building the event payload and adding the tracker parameters; with deferred encoding, only creating it")
+        @Timespan
+        long payloadBuild;
+
+        @Label("Context Encoding")
+        @Timespan
+        long contextEncoding;
+
+        @Label("Subject Merge")
+        @Timespan
+        long subjectMerge;
+
+        @Label("Store Add")
+        @Description("Adding the payloads to the emitter")
+        @Timespan
+        long storeAdd;
+    }
+
+    @Name("com.snowplowanalytics.snowplow.BatchWait")
+    @Label("Batch Wait")
+    @Category(CATEGORY)
+    @Description("Taking a batch of events from the EventStore to send")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class BatchWaitEvent extends Event {
+        @Label("Requested")
+        int requested;
+
+        @Label("Returned")
+        int returned;
+    }
+
+    @Name("com.snowplowanalytics.snowplow.BatchSerialization")
+    @Label("Batch Serialization")
+    @Category(CATEGORY)
+    @Description("Writing the JSON body of a POST request, including compression and any streaming to the network")
+    @StackTrace(false)
+    static final class BatchSerializationEvent extends Event {
+        @Label("Compression")
+        String compression;
+    }
+
+    @Name("com.snowplowanalytics.snowplow.CollectorRequest")
+    @Label("Collector Request")
+    @Category(CATEGORY)
+    @Description("The round-trip of a POST request to the collector")
+    @StackTrace(false)
+    static final class CollectorRequestEvent extends Event {
+        @Label("Events")
+        int events;
+
+        @Label("Status Code")
+        @Description("The HTTP status code, or -1 if the request failed without a response")
+        int statusCode;
+    }
+
+    @Name("com.snowplowanalytics.snowplow.Retry")
+    @Label("Retry")
+    @Category(CATEGORY)
+    @Description("The events of a failed request were returned to the buffer to be sent again")
+    @StackTrace(false)
+    static final class RetryEvent extends Event {
+        @Label("Events")
+        int events;
+
+        @Label("Failure Type")
+        String failureType;
+
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Backoff")
+        @Timespan(Timespan.MILLISECONDS)
+        long backoff;
+    }
+
+    @Name("com.snowplowanalytics.snowplow.BufferFull")
+    @Label("Buffer Full")
+    @Category(CATEGORY)
+    @Description("Events were lost because the EventStore was full")
+    static final class BufferFullEvent extends Event {
+        @Label("Events")
+        int events;
+
+        @Label("Evicted")
+        @Description("Whether buffered events were removed to make space for retried events, rather than a new event being refused")
+        boolean evicted;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker;
+
+// Java
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static java.util.Collections.singletonList;
+
+// This library
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadPairs;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+
+// JUnit
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ContextCacheTest {
+
+    private static final String EXPECTED_CONTEXTS = "{\"schema\":\"iglu:com.snowplowanalytics.snowplow/contexts/jsonschema/1-0-1\",\"data\":[{\"schema\":\"schema\",\"data\":{\"foo\":\"bar\"}}]}";
+
+    private static List<SelfDescribingJson> context(String value) {
+        return singletonList(new SelfDescribingJson("schema", Collections.singletonMap("foo", value)));
+    }
+
+    @Test
+    public void testReturnsSharedEncodingForEqualContexts() {
+        ContextCache cache = new ContextCache(10, false);
+
+        PayloadPairs pairs = cache.get(context("bar"));
+        PayloadPairs same = cache.get(context("bar"));
+        PayloadPairs other = cache.get(context("baz"));
+
+        assertSame(pairs, same);
+        assertNotSame(pairs, other);
+        assertEquals(Collections.singletonMap("co", EXPECTED_CONTEXTS), pairs.getMap());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEncodesBase64Contexts() {
+        ContextCache cache = new ContextCache(10, true);
+
+        PayloadPairs pairs = cache.get(context("bar"));
+
+        assertEquals(Collections.singletonMap("cx", Utils.base64Encode(EXPECTED_CONTEXTS, StandardCharsets.UTF_8)), pairs.getMap());
+    }
+
+    @Test
+    public void testChangedEntityDataIsEncodedAgain() {
+        ContextCache cache = new ContextCache(10, false);
+        Map<String, Object> data = new HashMap<>();
+        data.put("foo", "bar");
+        List<SelfDescribingJson> entities = singletonList(new SelfDescribingJson("schema", data));
+
+        PayloadPairs pairs = cache.get(entities);
+        data.put("foo", "baz");
+        PayloadPairs changed = cache.get(entities);
+
+        assertNotSame(pairs, changed);
+        assertEquals(EXPECTED_CONTEXTS, pairs.getMap().get("co"));
+        assertEquals(EXPECTED_CONTEXTS.replace("bar", "baz"), changed.getMap().get("co"));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedContext() {
+        ContextCache cache = new ContextCache(2, false);
+
+        PayloadPairs first = cache.get(context("1"));
+        cache.get(context("2"));
+        // Using the first context again makes the second the least recently used
+        assertSame(first, cache.get(context("1")));
+        cache.get(context("3"));
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(context("1")));
+    }
+
+    @Test
+    public void testMaximumSizeMustBePositive() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new ContextCache(0, true));
+        assertEquals("maximumSize must be greater than 0", exception.getMessage());
+    }
+}
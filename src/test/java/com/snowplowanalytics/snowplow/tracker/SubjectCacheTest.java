@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker;
+
+// JUnit
+import com.snowplowanalytics.snowplow.tracker.configuration.SubjectConfiguration;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SubjectCacheTest {
+
+    @Test
+    public void testReturnsSharedSubjectForEqualConfigurations() {
+        SubjectCache cache = new SubjectCache(10);
+
+        Subject subject = cache.get(new SubjectConfiguration().userId("user1").ipAddress("127.0.0.1"));
+        Subject same = cache.get(new SubjectConfiguration().userId("user1").ipAddress("127.0.0.1"));
+        Subject other = cache.get(new SubjectConfiguration().userId("user2").ipAddress("127.0.0.1"));
+
+        assertSame(subject, same);
+        assertNotSame(subject, other);
+        assertEquals("user1", subject.getSubject().get("uid"));
+        assertEquals("user2", other.getSubject().get("uid"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testConfigurationChangesDoNotAffectCachedSubject() {
+        SubjectCache cache = new SubjectCache(10);
+        SubjectConfiguration subjectConfig = new SubjectConfiguration().userId("user1");
+
+        Subject subject = cache.get(subjectConfig);
+        subjectConfig.userId("user2");
+
+        assertEquals("user1", subject.getSubject().get("uid"));
+        assertNotSame(subject, cache.get(subjectConfig));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedSubject() {
+        SubjectCache cache = new SubjectCache(2);
+
+        Subject first = cache.get(new SubjectConfiguration().userId("user1"));
+        cache.get(new SubjectConfiguration().userId("user2"));
+        // Using the first Subject again makes the second the least recently used
+        assertSame(first, cache.get(new SubjectConfiguration().userId("user1")));
+        cache.get(new SubjectConfiguration().userId("user3"));
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(new SubjectConfiguration().userId("user1")));
+    }
+
+    @Test
+    public void testCachedSubjectsAreImmutable() {
+        Subject subject = new SubjectCache(10).get(new SubjectConfiguration().userId("user1"));
+
+        assertTrue(subject.isImmutable());
+        assertThrows(UnsupportedOperationException.class, () -> subject.setUserId("user2"));
+
+        Subject copy = new Subject(subject);
+        copy.setUserId("user2");
+        assertFalse(copy.isImmutable());
+        assertEquals("user2", copy.getSubject().get("uid"));
+        assertEquals("user1", subject.getSubject().get("uid"));
+    }
+
+    @Test
+    public void testMaximumSizeMustBePositive() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new SubjectCache(0));
+        assertEquals("maximumSize must be greater than 0", exception.getMessage());
+    }
+}
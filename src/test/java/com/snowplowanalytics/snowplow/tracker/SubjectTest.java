@@ -18,8 +18,12 @@ import java.util.Map;
 
 // JUnit
 import com.snowplowanalytics.snowplow.tracker.configuration.SubjectConfiguration;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadPairs;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNull;
 
 public class SubjectTest {
 
@@ -125,4 +129,53 @@ public class SubjectTest {
         assertEquals("123x456", subject.getSubject().get("vp"));
         assertEquals("Mac OS", subject.getSubject().get("ua"));
     }
+
+    @Test
+    public void testSnapshotIsReusedUntilAPairChanges() {
+        Subject subject = new Subject();
+        subject.setUserId("user1");
+
+        PayloadPairs snapshot = subject.getSnapshot();
+        assertSame(snapshot, subject.getSnapshot());
+        assertEquals(subject.getSubject(), snapshot.getMap());
+
+        subject.setLanguage("EN");
+        PayloadPairs updated = subject.getSnapshot();
+        assertNotSame(snapshot, updated);
+        assertEquals("EN", updated.getMap().get("lang"));
+        assertEquals(null, snapshot.getMap().get("lang"));
+    }
+
+    @Test
+    public void testSnapshotIsNotStaleAfterConcurrentChanges() throws InterruptedException {
+        Subject subject = new Subject();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    subject.getSnapshot();
+                }
+            });
+            readers[i].start();
+        }
+        try {
+            for (int i = 0; i < 100000; i++) {
+                subject.setUserId("user" + i);
+                assertEquals("user" + i, subject.getSnapshot().getMap().get("uid"));
+            }
+        } finally {
+            for (Thread reader : readers) {
+                reader.interrupt();
+                reader.join();
+            }
+        }
+    }
+
+    @Test
+    public void testGetSubjectReturnsACopy() {
+        Subject subject = new Subject();
+        subject.getSubject().put("uid", "user1");
+        assertNull(subject.getSubject().get("uid"));
+        assertNull(subject.getSnapshot().getMap().get("uid"));
+    }
 }
@@ -12,6 +12,7 @@
  */
 package com.snowplowanalytics.snowplow.tracker;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import static java.util.Collections.singletonList;
 
@@ -19,6 +20,9 @@ import com.snowplowanalytics.snowplow.tracker.configuration.EmitterConfiguration
 import com.snowplowanalytics.snowplow.tracker.configuration.NetworkConfiguration;
 import com.snowplowanalytics.snowplow.tracker.configuration.TrackerConfiguration;
 import com.snowplowanalytics.snowplow.tracker.emitter.BatchEmitter;
+import com.snowplowanalytics.snowplow.tracker.emitter.BatchEmitterTest;
+import com.snowplowanalytics.snowplow.tracker.emitter.EmitterCallback;
+import com.snowplowanalytics.snowplow.tracker.emitter.FailureType;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -26,7 +30,10 @@ import static org.junit.Assert.*;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 import com.snowplowanalytics.snowplow.tracker.emitter.Emitter;
 import com.snowplowanalytics.snowplow.tracker.events.*;
+import com.snowplowanalytics.snowplow.tracker.payload.EventId;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadSizeProfiler;
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TimeOrderedEventIdGenerator;
 
 public class TrackerTest {
 
@@ -561,6 +568,167 @@ public class TrackerTest {
 
     // --- Tracker Setter & Getter Tests
 
+    @Test
+    public void testTrackFastSendsSamePayloadsAsTrack() {
+        List<Event> events = new ArrayList<>();
+        events.add(PageView.builder().pageUrl("url").pageTitle("title").customContext(contexts).build());
+        events.add(Timing.builder().category("category").label("label").variable("variable").timing(10)
+                .customContext(contexts).trueTimestamp(456789L).build());
+        events.add(ScreenView.builder().name("name").id("id").customContext(contexts).build());
+        events.add(SelfDescribing.builder()
+                .eventData(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar")))
+                .trueTimestamp(456789L)
+                .build());
+        events.add(EcommerceTransaction.builder()
+                .orderId("order_id")
+                .totalValue(1.0)
+                .items(EcommerceTransactionItem.builder().itemId("order_id").sku("sku").price(1.0).quantity(2).build())
+                .customContext(contexts)
+                .build());
+
+        for (Event event : events) {
+            tracker.track(event);
+            int tracked = mockEmitter.eventList.size();
+            EventId eventId = tracker.trackFast(event);
+            assertEquals(tracked * 2, mockEmitter.eventList.size());
+
+            for (int i = 0; i < tracked; i++) {
+                Map<String, String> expected = new HashMap<>(mockEmitter.eventList.get(i).getMap());
+                Map<String, String> result = new HashMap<>(mockEmitter.eventList.get(tracked + i).getMap());
+                for (String key : Arrays.asList("eid", "dtm")) {
+                    expected.remove(key);
+                    result.remove(key);
+                }
+                assertEquals(expected, result);
+            }
+            assertEquals(eventId.toString(), mockEmitter.eventList.get(tracked).getEventId());
+            mockEmitter.eventList.clear();
+        }
+    }
+
+    @Test
+    public void testTrackFastBase64EncodesSelfDescribingEvents() {
+        tracker = new Tracker(new TrackerConfiguration("AF003", "cloudfront"), mockEmitter);
+        SelfDescribing event = SelfDescribing.builder()
+                .eventData(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar")))
+                .customContext(contexts)
+                .build();
+
+        tracker.trackFast(event);
+
+        Map<String, String> result = mockEmitter.eventList.get(0).getMap();
+        assertEquals(Utils.base64Encode("{\"schema\":\"iglu:com.snowplowanalytics.snowplow/unstruct_event/jsonschema/1-0-0\",\"data\":{\"schema\":\"schema\",\"data\":{\"foo\":\"bar\"}}}", StandardCharsets.UTF_8), result.get("ue_px"));
+        assertEquals(Utils.base64Encode(EXPECTED_CONTEXTS, StandardCharsets.UTF_8), result.get("cx"));
+        assertFalse(result.containsKey("ue_pr"));
+    }
+
+    @Test
+    public void testPayloadSizeProfilerSamplesTrackedEvents() {
+        assertNull(tracker.getPayloadSizeProfiler());
+
+        tracker = new Tracker(new TrackerConfiguration("AF003", "cloudfront").payloadSizeSamplingRate(1), mockEmitter);
+        tracker.track(ScreenView.builder().name("name").id("id").customContext(contexts).build());
+        tracker.trackFast(PageView.builder().pageUrl("url").customContext(contexts).build());
+
+        PayloadSizeProfiler profiler = tracker.getPayloadSizeProfiler();
+        assertEquals(2, profiler.getSampledEvents());
+        List<PayloadSizeProfiler.Contributor> events = profiler.getTopContributors(PayloadSizeProfiler.Kind.EVENT_SCHEMA, 10);
+        assertEquals(1, events.size());
+        assertEquals("iglu:com.snowplowanalytics.snowplow/screen_view/jsonschema/1-0-0", events.get(0).getName());
+        List<PayloadSizeProfiler.Contributor> entities = profiler.getTopContributors(PayloadSizeProfiler.Kind.CONTEXT_SCHEMA, 10);
+        assertEquals(1, entities.size());
+        assertEquals("schema", entities.get(0).getName());
+        assertEquals(2, entities.get(0).getOccurrences());
+    }
+
+    @Test
+    public void testTrackFastReturnsNullIfEventWasDropped() {
+        Emitter failingEmitter = new MockEmitter() {
+            @Override
+            public boolean add(TrackerPayload payload) { return false; }
+        };
+        tracker = new Tracker(new TrackerConfiguration("AF003", "cloudfront"), failingEmitter);
+
+        assertNull(tracker.trackFast(PageView.builder().pageUrl("url").build()));
+    }
+
+    @Test
+    public void testDeferredEncodingBuildsSamePayloadsWhenNeeded() {
+        MockEmitter deferredEmitter = new MockEmitter();
+        Subject subject = new Subject();
+        subject.setTimezone("Etc/UTC");
+        Tracker deferredTracker = new Tracker(
+                new TrackerConfiguration("AF003", "cloudfront").base64Encoded(false).deferredEncoding(true),
+                deferredEmitter, subject);
+        Timing event = Timing.builder().category("category").variable("variable").timing(10)
+                .customContext(contexts).trueTimestamp(456789L).build();
+
+        tracker.track(event);
+        List<String> eventIds = deferredTracker.track(event);
+        EventId eventId = deferredTracker.trackFast(event);
+        // The Subject pairs were captured when the events were tracked
+        subject.setTimezone("Europe/London");
+
+        assertTrue(deferredTracker.isDeferredEncoding());
+        assertEquals(2, deferredEmitter.eventList.size());
+        assertTrue(deferredEmitter.eventList.get(0).isDeferred());
+        assertEquals(eventIds.get(0), deferredEmitter.eventList.get(0).getEventId());
+        assertEquals(eventId.toString(), deferredEmitter.eventList.get(1).getEventId());
+
+        for (TrackerPayload payload : deferredEmitter.eventList) {
+            Map<String, String> expected = new HashMap<>(mockEmitter.eventList.get(0).getMap());
+            Map<String, String> result = new HashMap<>(payload.getMap());
+            assertFalse(payload.isDeferred());
+            assertEquals(payload.getEventId(), result.remove("eid"));
+            assertEquals(Long.toString(payload.getDeviceCreatedTimestamp()), result.remove("dtm"));
+            expected.remove("eid");
+            expected.remove("dtm");
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testDeferredEventThatCannotBeBuiltIsReportedAndNotSent() throws InterruptedException {
+        List<FailureType> failureTypes = Collections.synchronizedList(new ArrayList<>());
+        List<TrackerPayload> failedPayloads = Collections.synchronizedList(new ArrayList<>());
+        EmitterCallback callback = new EmitterCallback() {
+            @Override
+            public void onSuccess(List<TrackerPayload> payloads) {}
+
+            @Override
+            public void onFailure(FailureType failureType, boolean willRetry, List<TrackerPayload> payloads) {
+                failureTypes.add(failureType);
+                failedPayloads.addAll(payloads);
+            }
+        };
+        BatchEmitterTest.MockHttpClientAdapter adapter = new BatchEmitterTest.MockHttpClientAdapter(200);
+        BatchEmitter emitter = new BatchEmitter(new NetworkConfiguration(adapter),
+                new EmitterConfiguration().batchSize(2).callback(callback));
+        Tracker deferredTracker = new Tracker(
+                new TrackerConfiguration("AF003", "cloudfront").deferredEncoding(true), emitter);
+
+        PageView brokenEvent = new PageView(PageView.builder().pageUrl("url")) {
+            @Override
+            public TrackerPayload getPayload() {
+                throw new IllegalStateException("broken event");
+            }
+        };
+        String brokenEventId = deferredTracker.track(brokenEvent).get(0);
+        String eventId = deferredTracker.track(PageView.builder().pageUrl("url").build()).get(0);
+        Thread.sleep(500);
+
+        assertEquals(singletonList(FailureType.EVENT_BUILD_FAILURE), failureTypes);
+        assertEquals(brokenEventId, failedPayloads.get(0).getEventId());
+        assertEquals(1, emitter.getMetrics().getEventsDropped(FailureType.EVENT_BUILD_FAILURE));
+
+        assertEquals(1, adapter.postCounter);
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> sentEvents = (List<Map<String, String>>) adapter.capturedPayload.getMap().get("data");
+        assertEquals(1, sentEvents.size());
+        assertEquals(eventId, sentEvents.get(0).get("eid"));
+        emitter.close();
+    }
+
     @Test
     public void testCreateWithConfiguration() {
         TrackerConfiguration trackerConfig = new TrackerConfiguration("namespace", "appId");
@@ -609,6 +777,47 @@ public class TrackerTest {
         assertEquals(subjectPairs, tracker.getSubject().getSubject());
     }
 
+    @Test
+    public void testContextCacheEncodesRepeatedContextsOnce() {
+        TrackerConfiguration trackerConfig = new TrackerConfiguration("AF003", "cloudfront")
+                .base64Encoded(false)
+                .contextCacheSize(10);
+        tracker = new Tracker(trackerConfig, mockEmitter);
+
+        for (int i = 0; i < 3; i++) {
+            tracker.track(PageView.builder()
+                    .pageUrl("url")
+                    .customContext(singletonList(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar"))))
+                    .build());
+        }
+
+        assertEquals(3, mockEmitter.eventList.size());
+        for (TrackerPayload payload : mockEmitter.eventList) {
+            assertEquals(EXPECTED_CONTEXTS, payload.getMap().get("co"));
+        }
+        assertEquals(1, tracker.getContextCache().getMissCount());
+        assertEquals(2, tracker.getContextCache().getHitCount());
+    }
+
+    @Test
+    public void testEventIdsAreGeneratedByConfiguredGenerator() {
+        TrackerConfiguration trackerConfig = new TrackerConfiguration("AF003", "cloudfront")
+                .eventIdGenerator(new TimeOrderedEventIdGenerator());
+        tracker = new Tracker(trackerConfig, mockEmitter);
+
+        List<String> eventIds = tracker.track(PageView.builder().pageUrl("url").build());
+
+        assertEquals(7, UUID.fromString(eventIds.get(0)).version());
+        assertEquals(eventIds.get(0), mockEmitter.eventList.get(0).getMap().get("eid"));
+    }
+
+    @Test
+    public void testContextCacheSizeMustNotBeNegative() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> new TrackerConfiguration("AF003", "cloudfront").contextCacheSize(-1));
+        assertEquals("contextCacheSize must not be negative", exception.getMessage());
+    }
+
     @Test
     public void testSetBase64Encoded() {
         TrackerConfiguration trackerConfig = new TrackerConfiguration("AF003", "cloudfront").base64Encoded(false);
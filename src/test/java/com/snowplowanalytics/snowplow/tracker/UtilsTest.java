@@ -16,7 +16,10 @@ package com.snowplowanalytics.snowplow.tracker;
 import org.junit.Test;
 
 // Java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -102,10 +105,50 @@ public class UtilsTest {
 
     }
 
+    @Test
+    public void testMapToBase64JSONString() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("schema", "iglu:com.acme/event/jsonschema/1-0-0");
+        map.put("data", Collections.singletonMap("text", "utf8charsôéàç \"quoted\""));
+
+        assertEquals(Utils.base64Encode(Utils.mapToJSONString(map), StandardCharsets.UTF_8), Utils.mapToBase64JSONString(map));
+
+        // The per-thread buffer is reused, so a smaller map must not include leftovers of a larger one
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            large.append('x');
+        }
+        Map<String, String> largeMap = Collections.singletonMap("large", large.toString());
+        assertEquals(Utils.base64Encode(Utils.mapToJSONString(largeMap), StandardCharsets.UTF_8), Utils.mapToBase64JSONString(largeMap));
+        assertEquals(Utils.base64Encode(Utils.mapToJSONString(map), StandardCharsets.UTF_8), Utils.mapToBase64JSONString(map));
+
+        // Every length of trailing bytes is padded
+        for (String value = ""; value.length() < 6; value += "a") {
+            Map<String, String> shortMap = Collections.singletonMap("k", value);
+            assertEquals(Utils.base64Encode(Utils.mapToJSONString(shortMap), StandardCharsets.UTF_8), Utils.mapToBase64JSONString(shortMap));
+        }
+
+        // Characters outside the Basic Multilingual Plane are encoded as UTF-8, not escaped
+        Map<String, String> emojiMap = Collections.singletonMap("emoji", "smile \uD83D\uDE00 ôé");
+        assertEquals(Utils.base64Encode(Utils.mapToJSONString(emojiMap), StandardCharsets.UTF_8), Utils.mapToBase64JSONString(emojiMap));
+    }
+
     @Test
     public void testGetUtf8Length() {
         long expected = 20;
         long utf8Length = Utils.getUTF8Length("helloworldTest123456");
         assertEquals(expected, utf8Length);
     }
+
+    @Test
+    public void testGetJSONStringByteSize() throws IOException {
+        String[] values = {"", "helloworld", "quote\"back\\slash", "tab\tnew\nline\u0001", "ôéàç", "emoji \uD83D\uDE00"};
+        for (String value : values) {
+            // The size as written into request bodies, without the {"k": and }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            Utils.writeJSON(Collections.singletonMap("k", value), outputStream);
+            long expected = outputStream.size() - 6;
+            assertEquals(expected, Utils.getJSONStringByteSize(value));
+        }
+    }
 }
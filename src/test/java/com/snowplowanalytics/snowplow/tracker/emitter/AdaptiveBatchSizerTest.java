@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBatchSizerTest {
+
+    private EmitterMetrics metrics;
+    private AdaptiveBatchSizer sizer;
+
+    @Before
+    public void setUp() {
+        metrics = new EmitterMetrics(() -> 0, () -> 0, () -> 0);
+        sizer = new AdaptiveBatchSizer(10, 210, 500, metrics);
+    }
+
+    // Sends a window of responses, and returns the batch size after it
+    private int window(int batchSize, int events, long latencyMs, boolean successful) {
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW; i++) {
+            int newBatchSize = sizer.onResponse(batchSize, events, latencyMs, successful);
+            if (i < AdaptiveBatchSizer.WINDOW - 1) {
+                assertEquals(batchSize, newBatchSize);
+            }
+            batchSize = newBatchSize;
+        }
+        return batchSize;
+    }
+
+    @Test
+    public void testIncreasesWhileBatchesAreFullAndFast() {
+        assertEquals(60, window(50, 50, 100, true));
+        assertEquals(70, window(60, 60, 100, true));
+        assertEquals(2, metrics.getBatchSizeIncreases());
+        assertEquals(210, window(205, 205, 100, true));
+        assertEquals(210, window(210, 210, 100, true));
+        assertEquals(3, metrics.getBatchSizeIncreases());
+    }
+
+    @Test
+    public void testHoldsWhileBatchesArentFull() {
+        assertEquals(50, window(50, 20, 100, true));
+        assertEquals(0, metrics.getBatchSizeIncreases());
+        assertEquals(0, metrics.getBatchSizeDecreases());
+    }
+
+    @Test
+    public void testHalvesWhenLatencyIsAboveTarget() {
+        assertEquals(25, window(50, 50, 600, true));
+        assertEquals(12, window(25, 25, 600, true));
+        assertEquals(10, window(12, 12, 600, true));
+        assertEquals(3, metrics.getBatchSizeDecreases());
+    }
+
+    @Test
+    public void testIgnoresASingleSlowResponse() {
+        int batchSize = 100;
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW - 1; i++) {
+            batchSize = sizer.onResponse(batchSize, 100, 100, true);
+        }
+        assertEquals(110, sizer.onResponse(batchSize, 100, 5000, true));
+        assertEquals(0, metrics.getBatchSizeDecreases());
+    }
+
+    @Test
+    public void testHalvesWhenMoreThanOnePercentOfResponsesAreAboveTarget() {
+        int batchSize = 100;
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW - 2; i++) {
+            batchSize = sizer.onResponse(batchSize, 100, 100, true);
+        }
+        batchSize = sizer.onResponse(batchSize, 100, 501, true);
+        assertEquals(50, sizer.onResponse(batchSize, 100, 501, true));
+    }
+
+    @Test
+    public void testHalvesAsSoonAsARequestFails() {
+        int batchSize = 100;
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW / 2; i++) {
+            batchSize = sizer.onResponse(batchSize, 100, 100, true);
+        }
+        assertEquals(50, sizer.onResponse(batchSize, 100, 0, false));
+        assertEquals(1, metrics.getBatchSizeDecreases());
+        assertEquals(25, sizer.onResponse(50, 50, 0, false));
+        assertEquals(2, metrics.getBatchSizeDecreases());
+    }
+
+    @Test
+    public void testFailureStartsANewWindow() {
+        int batchSize = 100;
+        for (int i = 0; i < AdaptiveBatchSizer.WINDOW - 1; i++) {
+            batchSize = sizer.onResponse(batchSize, 100, 100, true);
+        }
+        batchSize = sizer.onResponse(batchSize, 100, 0, false);
+        assertEquals(50, batchSize);
+
+        // The responses before the failure don't count towards the next decision
+        assertEquals(60, window(50, 50, 100, true));
+        assertEquals(1, metrics.getBatchSizeIncreases());
+    }
+
+    @Test
+    public void testWindowEndsAfterWindowMillisAtLowRequestRates() {
+        AtomicLong clock = new AtomicLong(0);
+        sizer = new AdaptiveBatchSizer(10, 210, 500, metrics, clock::get);
+
+        assertEquals(100, sizer.onResponse(100, 100, 600, true));
+        clock.set(TimeUnit.MILLISECONDS.toNanos(AdaptiveBatchSizer.WINDOW_MILLIS / 2));
+        assertEquals(100, sizer.onResponse(100, 100, 600, true));
+        clock.set(TimeUnit.MILLISECONDS.toNanos(AdaptiveBatchSizer.WINDOW_MILLIS));
+        assertEquals(50, sizer.onResponse(100, 100, 600, true));
+        assertEquals(1, metrics.getBatchSizeDecreases());
+    }
+
+    @Test
+    public void testClampsToBounds() {
+        assertEquals(10, sizer.clamp(1));
+        assertEquals(210, sizer.clamp(1000));
+        assertEquals(50, sizer.clamp(50));
+    }
+}
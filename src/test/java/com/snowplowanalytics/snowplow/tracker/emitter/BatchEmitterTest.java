@@ -12,17 +12,26 @@
  */
 package com.snowplowanalytics.snowplow.tracker.emitter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import com.snowplowanalytics.snowplow.tracker.configuration.EmitterConfiguration;
 import com.snowplowanalytics.snowplow.tracker.configuration.NetworkConfiguration;
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.SecureRandomEventIdGenerator;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 import com.snowplowanalytics.snowplow.tracker.events.PageView;
 import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
@@ -90,6 +99,39 @@ public class BatchEmitterTest {
         public Object getHttpClient() { return null; }
     }
 
+    // this class holds every request open until complete() is called
+    static class AsyncHttpClientAdapter implements HttpClientAdapter {
+        final Queue<CompletableFuture<Integer>> pendingRequests = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public int post(SelfDescribingJson payload) {
+            return postAsync(payload).join();
+        }
+
+        @Override
+        public CompletableFuture<Integer> postAsync(SelfDescribingJson payload) {
+            CompletableFuture<Integer> request = new CompletableFuture<>();
+            pendingRequests.add(request);
+            return request;
+        }
+
+        void complete(int statusCode) {
+            CompletableFuture<Integer> request;
+            while ((request = pendingRequests.poll()) != null) {
+                request.complete(statusCode);
+            }
+        }
+
+        @Override
+        public int get(TrackerPayload payload) { return 0; }
+
+        @Override
+        public String getUrl() { return null; }
+
+        @Override
+        public Object getHttpClient() { return null; }
+    }
+
     @Before
     public void setUp() {
         mockHttpClientAdapter = new MockHttpClientAdapter(200);
@@ -110,6 +152,29 @@ public class BatchEmitterTest {
         Assert.assertEquals(payload, emitter.getBuffer().get(0));
     }
 
+    @Test
+    public void addToBuffer_withDeferredPayloads_shouldBuildThemWhenSending() throws InterruptedException {
+        List<TrackerPayload> payloads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            payloads.add(TrackerPayload.deferred(new SecureRandomEventIdGenerator(), this::createPayload));
+            emitter.add(payloads.get(i));
+            if (i < 9) {
+                Assert.assertTrue(payloads.get(i).isDeferred());
+            }
+        }
+
+        Thread.sleep(500);
+
+        Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> capturedPayload = (List<Map<String, String>>) mockHttpClientAdapter.capturedPayload.getMap().get("data");
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(payloads.get(i).isDeferred());
+            Assert.assertEquals(payloads.get(i).getEventId(), capturedPayload.get(i).get("eid"));
+            Assert.assertEquals("pv", capturedPayload.get(i).get("e"));
+        }
+    }
+
     @Test
     public void addToBuffer_withMore10Payloads_shouldEmptyBuffer() throws InterruptedException {
         List<TrackerPayload> payloads = createPayloads(10);
@@ -125,6 +190,154 @@ public class BatchEmitterTest {
         Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
     }
 
+    @Test
+    public void metrics_countSentEventsAndBytes() throws InterruptedException {
+        List<TrackerPayload> payloads = createPayloads(10);
+        for (TrackerPayload payload : payloads) {
+            emitter.add(payload);
+        }
+
+        Thread.sleep(500);
+
+        EmitterMetrics metrics = emitter.getMetrics();
+        long bytes = mockHttpClientAdapter.capturedPayload.toString().getBytes(StandardCharsets.UTF_8).length;
+        Assert.assertEquals(10, metrics.getEventsAccepted());
+        Assert.assertEquals(10, metrics.getEventsSent());
+        Assert.assertEquals(1, metrics.getBatchesSent());
+        Assert.assertEquals(bytes, metrics.getBytesSent());
+        Assert.assertEquals(0, metrics.getEventsDropped());
+        Assert.assertEquals(0, metrics.getBufferSize());
+        Assert.assertEquals(0, metrics.getBatchesInFlight());
+        Assert.assertEquals(1, metrics.getRequestLatency().getTotalCount());
+        Assert.assertEquals(10, metrics.getTimeInBuffer().getTotalCount());
+        Assert.assertEquals(1, metrics.getRecentRequestLatency().getTotalCount());
+        Assert.assertEquals(10, metrics.getRecentTimeInBuffer().getTotalCount());
+        Assert.assertEquals(10, metrics.getRecentEndToEndLatency().getTotalCount());
+    }
+
+    @Test
+    public void latencyListener_isCalledForEachSentBatch() throws InterruptedException {
+        List<BatchLatency> latencies = Collections.synchronizedList(new ArrayList<>());
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(5).latencyListener(latencies::add));
+
+        for (TrackerPayload payload : createPayloads(10)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+
+        Assert.assertEquals(2, latencies.size());
+        for (BatchLatency latency : latencies) {
+            Assert.assertEquals(5, latency.getEventCount());
+            Assert.assertTrue(latency.getMaxTimeInBuffer() >= 0);
+            Assert.assertTrue(latency.getDeliveryLatency() >= 0);
+            Assert.assertEquals(latency.getMaxTimeInBuffer() + latency.getDeliveryLatency(), latency.getMaxEndToEndLatency());
+            Assert.assertSame(emitter.getMetrics(), latency.getMetrics());
+        }
+        Assert.assertEquals(10, emitter.getMetrics().getEndToEndLatency().getTotalCount());
+    }
+
+    @Test
+    public void latencyListener_exceptionsDontStopSending() throws InterruptedException {
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(2).latencyListener(latency -> {
+                    throw new IllegalStateException("listener failure");
+                }));
+
+        emitter.add(createPayload());
+        emitter.add(createPayload());
+        Thread.sleep(500);
+
+        Assert.assertEquals(0, emitter.getBuffer().size());
+        Assert.assertEquals(2, emitter.getMetrics().getEventsSent());
+    }
+
+    @Test
+    public void adaptiveBatchSize_startsWithinBoundsAndIsExposedAsMetric() {
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(500).adaptiveBatchSize(10, 100, 1000));
+
+        Assert.assertEquals(100, emitter.getBatchSize());
+        Assert.assertEquals(100, emitter.getMetrics().getBatchSize());
+
+        emitter.setBatchSize(5);
+        Assert.assertEquals(10, emitter.getBatchSize());
+    }
+
+    @Test
+    public void adaptiveBatchSize_decreasesWhenRequestsFail() throws InterruptedException {
+        mockHttpClientAdapter = new MockHttpClientAdapter(500);
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(1).threadCount(1).adaptiveBatchSize(1, 100, 1000));
+        emitter.setBatchSize(100);
+
+        // A single failed request halves the batch size
+        emitter.add(createPayload());
+        emitter.flushBuffer();
+        Thread.sleep(200);
+
+        Assert.assertEquals(50, emitter.getBatchSize());
+        Assert.assertEquals(1, emitter.getMetrics().getBatchSizeDecreases());
+    }
+
+    @Test
+    public void adaptiveBatchSize_hasValidBounds() {
+        Exception exception = Assert.assertThrows(IllegalArgumentException.class, () -> new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().adaptiveBatchSize(0, 100, 1000)));
+        Assert.assertEquals("minBatchSize must be greater than 0", exception.getMessage());
+
+        exception = Assert.assertThrows(IllegalArgumentException.class, () -> new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().adaptiveBatchSize(100, 10, 1000)));
+        Assert.assertEquals("maxBatchSize must not be less than minBatchSize", exception.getMessage());
+
+        exception = Assert.assertThrows(IllegalArgumentException.class, () -> new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().adaptiveBatchSize(10, 100, 0)));
+        Assert.assertEquals("latencyTargetMs must be greater than 0", exception.getMessage());
+    }
+
+    @Test
+    public void metrics_countFailedBatchesByFailureType() throws InterruptedException {
+        mockHttpClientAdapter = new MockHttpClientAdapter(500);
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(2));
+
+        emitter.add(createPayload());
+        emitter.add(createPayload());
+        Thread.sleep(500);
+
+        EmitterMetrics metrics = emitter.getMetrics();
+        Assert.assertEquals(2, metrics.getEventsAccepted());
+        Assert.assertEquals(1, metrics.getBatchesFailed(FailureType.REJECTED_BY_COLLECTOR));
+        Assert.assertEquals(2, metrics.getEventsRetried());
+        Assert.assertEquals(0, metrics.getEventsSent());
+        Assert.assertEquals(0, metrics.getEventsDropped());
+        Assert.assertEquals(2, metrics.getBufferSize());
+        Assert.assertEquals(1, metrics.getRequestLatency().getTotalCount());
+        Assert.assertEquals(0, metrics.getTimeInBuffer().getTotalCount());
+    }
+
+    @Test
+    public void metrics_countDroppedEventsByFailureType() {
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().bufferCapacity(1));
+
+        emitter.add(createPayload());
+        emitter.add(createPayload());
+
+        Assert.assertEquals(1, emitter.getMetrics().getEventsAccepted());
+        Assert.assertEquals(1, emitter.getMetrics().getEventsDropped(FailureType.TRACKER_STORAGE_FULL));
+        Assert.assertEquals(1, emitter.getMetrics().getEventsDropped());
+    }
+
     @Test
     public void addToBuffer_doesNotAddEventIfBufferFull() {
         emitter = new BatchEmitter(
@@ -245,6 +458,296 @@ public class BatchEmitterTest {
         Assert.assertEquals(20, emitter.getBuffer().size());
     }
 
+    @Test
+    public void sendsConcurrentBatchesWithoutAThreadPerRequest() throws InterruptedException {
+        class TestCallback implements EmitterCallback {
+            int successfulEvents = 0;
+
+            @Override
+            public synchronized void onSuccess(List<TrackerPayload> payloads) {
+                successfulEvents += payloads.size();
+            }
+
+            @Override
+            public void onFailure(FailureType failureType, boolean willRetry, List<TrackerPayload> payloads) {}
+        }
+
+        AsyncHttpClientAdapter adapter = new AsyncHttpClientAdapter();
+        TestCallback callback = new TestCallback();
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(adapter).maxConcurrentRequests(100),
+                new EmitterConfiguration().batchSize(1).threadCount(1).callback(callback));
+
+        for (TrackerPayload payload : createPayloads(100)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+
+        // A single emitter thread has started every request, and none has completed
+        Assert.assertEquals(100, adapter.pendingRequests.size());
+        Assert.assertEquals(0, emitter.getBuffer().size());
+
+        adapter.complete(200);
+        Assert.assertEquals(100, callback.successfulEvents);
+    }
+
+    @Test
+    public void limitsRequestsInFlightSoTheBufferStaysBounded() throws InterruptedException {
+        class TestCallback implements EmitterCallback {
+            int successfulEvents = 0;
+            int droppedEvents = 0;
+
+            @Override
+            public synchronized void onSuccess(List<TrackerPayload> payloads) {
+                successfulEvents += payloads.size();
+            }
+
+            @Override
+            public synchronized void onFailure(FailureType failureType, boolean willRetry, List<TrackerPayload> payloads) {
+                if (failureType == FailureType.TRACKER_STORAGE_FULL) {
+                    droppedEvents += payloads.size();
+                }
+            }
+        }
+
+        AsyncHttpClientAdapter adapter = new AsyncHttpClientAdapter();
+        TestCallback callback = new TestCallback();
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(adapter).maxConcurrentRequests(2),
+                new EmitterConfiguration().batchSize(1).bufferCapacity(5).callback(callback));
+
+        for (TrackerPayload payload : createPayloads(2)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(200);
+        for (TrackerPayload payload : createPayloads(8)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(300);
+
+        // The collector hasn't responded, so later events wait in the buffer until it is full
+        Assert.assertEquals(2, adapter.pendingRequests.size());
+        Assert.assertEquals(5, emitter.getBuffer().size());
+        Assert.assertEquals(3, callback.droppedEvents);
+
+        // Each completed request lets another batch leave the buffer
+        for (int i = 0; i < 20 && callback.successfulEvents < 7; i++) {
+            adapter.complete(200);
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(7, callback.successfulEvents);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void asyncRequestFailureReturnsEventsToBuffer() throws InterruptedException {
+        AsyncHttpClientAdapter adapter = new AsyncHttpClientAdapter();
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(adapter),
+                new EmitterConfiguration().batchSize(2));
+
+        for (TrackerPayload payload : createPayloads(2)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+
+        adapter.pendingRequests.poll().completeExceptionally(new RuntimeException("request failed"));
+        Assert.assertEquals(2, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void sendsBatchOnceMaxBatchBytesIsReached() throws InterruptedException {
+        List<TrackerPayload> payloads = createPayloads(3);
+        long eventBytes = payloads.get(0).getByteSize() + Constants.POST_EVENT_OVERHEAD_BYTES;
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(10).maxBatchBytes(Constants.POST_WRAPPER_BYTES + eventBytes * 2));
+
+        for (TrackerPayload payload : payloads) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+
+        Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
+        Assert.assertEquals(1, emitter.getBuffer().size());
+
+        // Flushing sends the remaining events in requests that respect the limit
+        for (TrackerPayload payload : createPayloads(3)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+        emitter.flushBuffer();
+        Thread.sleep(500);
+
+        Assert.assertEquals(3, mockHttpClientAdapter.postCounter);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void eventLargerThanMaxBatchBytesIsDropped() throws InterruptedException {
+        final List<FailureType> failures = new ArrayList<>();
+        EmitterCallback callback = new EmitterCallback() {
+            @Override
+            public void onSuccess(List<TrackerPayload> payloads) {}
+
+            @Override
+            public void onFailure(FailureType failureType, boolean willRetry, List<TrackerPayload> payloads) {
+                failures.add(failureType);
+            }
+        };
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().maxBatchBytes(Constants.POST_WRAPPER_BYTES + 10).callback(callback));
+
+        Assert.assertFalse(emitter.add(createPayload()));
+        Assert.assertEquals(Collections.singletonList(FailureType.EVENT_TOO_LARGE), failures);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void maxBatchBytesMustLeaveRoomForEvents() {
+        Exception exception = Assert.assertThrows(IllegalArgumentException.class, () -> new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().maxBatchBytes(Constants.POST_WRAPPER_BYTES)));
+        Assert.assertEquals("maxBatchBytes must be greater than " + Constants.POST_WRAPPER_BYTES, exception.getMessage());
+    }
+
+    @Test
+    public void sendsEventsOnceLingerMsHasPassed() throws InterruptedException {
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(10).lingerMs(300));
+
+        for (TrackerPayload payload : createPayloads(3)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(100);
+        Assert.assertFalse(mockHttpClientAdapter.isPostCalled);
+
+        Thread.sleep(500);
+        Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> capturedPayload = (List<Map<String, String>>) mockHttpClientAdapter.capturedPayload.getMap().get("data");
+        Assert.assertEquals(3, capturedPayload.size());
+        Assert.assertEquals(0, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void fullBatchResetsLingerTimer() throws InterruptedException {
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(2).lingerMs(300));
+
+        for (TrackerPayload payload : createPayloads(2)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(100);
+        Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
+
+        // The timer from the first event must not fire for the next, younger event
+        emitter.add(createPayload());
+        Thread.sleep(250);
+        Assert.assertEquals(1, mockHttpClientAdapter.postCounter);
+
+        Thread.sleep(300);
+        Assert.assertEquals(2, mockHttpClientAdapter.postCounter);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+    }
+
+    @Test
+    public void lingerDoesNotBypassRetryBackoff() throws InterruptedException {
+        // Counts the sends that wait out a retry delay
+        final AtomicInteger delayedSends = new AtomicInteger(0);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                if (unit.toMillis(delay) >= 100) {
+                    delayedSends.incrementAndGet();
+                }
+                return super.schedule(command, delay, unit);
+            }
+        };
+        MockHttpClientAdapter failingAdapter = new MockHttpClientAdapter(500);
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(failingAdapter),
+                new EmitterConfiguration().batchSize(1000).lingerMs(20).requestExecutorService(executor));
+
+        // Events keep arriving during the outage, rearming the linger timer every 20 ms
+        for (TrackerPayload payload : createPayloads(100)) {
+            emitter.add(payload);
+            Thread.sleep(10);
+        }
+
+        // A linger send is only scheduled once the previous one has run, and the
+        // retry delay is at least 100 ms, so there is at most one every 120 ms
+        Assert.assertTrue(emitter.getRetryDelay() > 0);
+        Assert.assertTrue(failingAdapter.postCounter <= 10);
+        Assert.assertTrue(delayedSends.get() <= 10);
+    }
+
+    @Test
+    public void lingerMsMustNotBeNegative() {
+        Exception exception = Assert.assertThrows(IllegalArgumentException.class, () -> new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().lingerMs(-1)));
+        Assert.assertEquals("lingerMs must not be negative", exception.getMessage());
+    }
+
+    @Test
+    public void burstOfEventsIsSentByBoundedNumberOfTasks() throws InterruptedException {
+        final AtomicInteger scheduledTasks = new AtomicInteger(0);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                scheduledTasks.incrementAndGet();
+                return super.schedule(command, delay, unit);
+            }
+        };
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(mockHttpClientAdapter),
+                new EmitterConfiguration().batchSize(10).threadCount(1).requestExecutorService(executor));
+
+        for (TrackerPayload payload : createPayloads(1000)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+
+        Assert.assertEquals(0, emitter.getBuffer().size());
+        Assert.assertEquals(100, mockHttpClientAdapter.postCounter);
+        // 991 of the adds found a full batch, but far fewer tasks were needed to send them
+        Assert.assertTrue(scheduledTasks.get() < 100);
+    }
+
+    @Test
+    public void sendsEventsOnVirtualThreadsWhenAvailable() throws InterruptedException {
+        final List<String> requestThreadNames = new ArrayList<>();
+        MockHttpClientAdapter adapter = new MockHttpClientAdapter(200) {
+            @Override
+            public int post(SelfDescribingJson payload) {
+                requestThreadNames.add(Thread.currentThread().getName());
+                return super.post(payload);
+            }
+        };
+        emitter = new BatchEmitter(
+                new NetworkConfiguration(adapter),
+                new EmitterConfiguration().batchSize(2).useVirtualThreads(true));
+
+        for (TrackerPayload payload : createPayloads(2)) {
+            emitter.add(payload);
+        }
+        Thread.sleep(500);
+        emitter.close();
+
+        Assert.assertEquals(1, adapter.postCounter);
+        Assert.assertEquals(0, emitter.getBuffer().size());
+        // Older JVMs fall back to the thread pool
+        String expectedName = VirtualThreads.isAvailable()
+                ? "snowplow-emitter-virtual-request-thread-\\d+"
+                : "snowplow-emitter-pool-\\d+-request-thread-\\d+";
+        Assert.assertTrue(Pattern.matches(expectedName, requestThreadNames.get(0)));
+    }
+
     @Test
     public void createEmitterWithConfiguration() {
         NetworkConfiguration networkConfig = new NetworkConfiguration("http://endpoint");
@@ -309,7 +812,9 @@ public class BatchEmitterTest {
 
         Thread.sleep(500);
 
-        Assert.assertEquals(2, flakyHttpClientAdapter.successfulPostCounter);
+        // once a request succeeds, the drain task keeps going until the buffer is empty
+        Assert.assertEquals(6, flakyHttpClientAdapter.successfulPostCounter);
+        Assert.assertEquals(0, emitter.getBuffer().size());
         Assert.assertEquals(0, emitter.getRetryDelay());
     }
 
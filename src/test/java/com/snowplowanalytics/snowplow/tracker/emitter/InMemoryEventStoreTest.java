@@ -12,6 +12,7 @@
  */
 package com.snowplowanalytics.snowplow.tracker.emitter;
 
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
 import com.snowplowanalytics.snowplow.tracker.events.PageView;
 import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
 import org.junit.Assert;
@@ -55,6 +56,25 @@ public class InMemoryEventStoreTest {
         Assert.assertEquals(2, eventStore.size());
     }
 
+    @Test
+    public void getEventsBatchLimitedByBytes() {
+        for (int i = 0; i < 5; i++) {
+            eventStore.addEvent(trackerPayload);
+        }
+        long eventBytes = trackerPayload.getByteSize() + Constants.POST_EVENT_OVERHEAD_BYTES;
+
+        // Not enough events or bytes for a full batch
+        Assert.assertNull(eventStore.getEventsBatch(10, eventBytes * 10));
+
+        // The third event doesn't fit
+        BatchPayload batch = eventStore.getEventsBatch(10, eventBytes * 3 - 1);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(3, eventStore.size());
+
+        // A single event larger than the limit is still returned
+        Assert.assertEquals(1, eventStore.getEventsBatch(10, 1).size());
+    }
+
     @Test
     public void doNotGetEventsIfFewerPresentThanAskedFor() throws NullPointerException {
         eventStore.addEvent(trackerPayload);
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMaxValue());
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.recordValue(i);
+        }
+
+        assertEquals(20, histogram.getTotalCount());
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(19, histogram.getValueAtPercentile(95));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(10.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testLargeValuesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = {100, 1000, 12345, 600000, 86400000L, Long.MAX_VALUE};
+        for (long value : values) {
+            histogram.recordValue(value);
+        }
+
+        for (long value : values) {
+            long bucketValue = LatencyHistogram.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+            assertTrue(bucketValue >= value);
+            assertTrue(bucketValue - value <= value / 32);
+        }
+        assertEquals(Long.MAX_VALUE, histogram.getMaxValue());
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 12345 && median <= 12345 + 12345 / 32);
+    }
+
+    @Test
+    public void testNegativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(-5);
+
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testRecentHistogramKeepsOnlyTheLastTwoWindows() {
+        AtomicLong clock = new AtomicLong(0);
+        LatencyHistogram histogram = new LatencyHistogram(1000, clock::get);
+        for (int i = 0; i < 100; i++) {
+            histogram.recordValue(10);
+        }
+
+        // The first window's values are still included during the second window
+        clock.set(TimeUnit.MILLISECONDS.toNanos(1500));
+        histogram.recordValue(500);
+        assertEquals(101, histogram.getTotalCount());
+        assertEquals(10, histogram.getValueAtPercentile(99));
+        assertEquals(500, histogram.getMaxValue());
+
+        // Then the latency regression shows straight away in the percentiles
+        clock.set(TimeUnit.MILLISECONDS.toNanos(2600));
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(500, histogram.getValueAtPercentile(50));
+        assertEquals(500, histogram.getMean(), 0);
+
+        // Windows without values leave nothing behind
+        clock.set(TimeUnit.MILLISECONDS.toNanos(10000));
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMaxValue());
+    }
+}
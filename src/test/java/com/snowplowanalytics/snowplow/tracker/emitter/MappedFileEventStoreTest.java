@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import com.snowplowanalytics.snowplow.tracker.configuration.FileStoreConfiguration;
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MappedFileEventStoreTest {
+
+    private File directory;
+    private MappedFileEventStore eventStore;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snowplow-event-store").toFile();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+    }
+
+    @After
+    public void tearDown() {
+        eventStore.close();
+        deleteSegments();
+        directory.delete();
+    }
+
+    @Test
+    public void getEventsFromStorage() {
+        for (int i = 0; i < 4; i++) {
+            eventStore.addEvent(createTrackerPayload("url" + i));
+        }
+
+        BatchPayload batch = eventStore.getEventsBatch(2);
+        Assert.assertEquals(2, batch.getPayloads().size());
+        Assert.assertEquals(2, eventStore.size());
+        Assert.assertNull(eventStore.getEventsBatch(3));
+    }
+
+    @Test
+    public void getEventsBatchLimitedByBytes() {
+        TrackerPayload payload = createTrackerPayload("url");
+        for (int i = 0; i < 5; i++) {
+            eventStore.addEvent(payload);
+        }
+        long eventBytes = payload.getByteSize() + Constants.POST_EVENT_OVERHEAD_BYTES;
+
+        // Not enough events or bytes for a full batch
+        Assert.assertNull(eventStore.getEventsBatch(10, eventBytes * 10));
+
+        // The third event doesn't fit
+        BatchPayload batch = eventStore.getEventsBatch(10, eventBytes * 3 - 1);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(3, eventStore.size());
+
+        // A single event larger than the limit is still returned
+        Assert.assertEquals(1, eventStore.getEventsBatch(10, 1).size());
+    }
+
+    @Test
+    public void returnFailedEventsToBufferBeforeNewerEvents() {
+        eventStore.addEvent(createTrackerPayload("url0"));
+        eventStore.addEvent(createTrackerPayload("url1"));
+        BatchPayload batch = eventStore.getEventsBatch(1);
+        eventStore.addEvent(createTrackerPayload("url2"));
+
+        eventStore.cleanupAfterSendingAttempt(true, batch.getBatchId());
+
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0", "url1", "url2"));
+    }
+
+    @Test
+    public void dropNewerEventsWhenRetriedEventsDoNotFit() throws IOException {
+        eventStore.close();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024).bufferCapacity(2));
+        eventStore.addEvent(createTrackerPayload("url0"));
+        eventStore.addEvent(createTrackerPayload("url1"));
+        BatchPayload batch = eventStore.getEventsBatch(2);
+        eventStore.addEvent(createTrackerPayload("url2"));
+
+        List<TrackerPayload> removed = eventStore.cleanupAfterSendingAttempt(true, batch.getBatchId());
+
+        Assert.assertEquals(urls(removed), listOf("url2"));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0", "url1"));
+    }
+
+    @Test
+    public void restoreBufferedEventsAfterReopening() throws IOException {
+        TrackerPayload payload = createTrackerPayload("url0");
+        eventStore.addEvent(payload);
+        eventStore.addEvent(createTrackerPayload("url1"));
+        eventStore.close();
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+
+        List<TrackerPayload> restored = eventStore.getAllEvents();
+        Assert.assertEquals(urls(restored), listOf("url0", "url1"));
+        Assert.assertEquals(payload.getEventId(), restored.get(0).getEventId());
+        Assert.assertEquals(payload.getDeviceCreatedTimestamp(), restored.get(0).getDeviceCreatedTimestamp());
+        Assert.assertEquals(payload.getMap(), restored.get(0).getMap());
+    }
+
+    @Test
+    public void doNotRestoreSentEvents() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            eventStore.addEvent(createTrackerPayload("url" + i));
+        }
+        BatchPayload batch = eventStore.getEventsBatch(2);
+        eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+        eventStore.close();
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url2"));
+    }
+
+    @Test
+    public void restoreEventsThatWereBeingSent() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            eventStore.addEvent(createTrackerPayload("url" + i));
+        }
+        eventStore.getEventsBatch(2);
+        eventStore.close();
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0", "url1", "url2"));
+    }
+
+    @Test
+    public void doNotRestoreDroppedEvents() throws IOException {
+        eventStore.close();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024).bufferCapacity(1));
+        eventStore.addEvent(createTrackerPayload("url0"));
+        BatchPayload batch = eventStore.getEventsBatch(1);
+        eventStore.addEvent(createTrackerPayload("url1"));
+        eventStore.cleanupAfterSendingAttempt(true, batch.getBatchId());
+        eventStore.close();
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0"));
+    }
+
+    @Test
+    public void deleteSegmentsOnceAllEventsAreSent() throws IOException {
+        eventStore.close();
+        deleteSegments();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(4096));
+        for (int i = 0; i < 100; i++) {
+            eventStore.addEvent(createTrackerPayload("url" + i));
+        }
+        Assert.assertTrue(segmentCount() > 1);
+
+        BatchPayload batch = eventStore.getEventsBatch(100);
+        eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+
+        // Full segments are only deleted once the sync thread has synced them
+        awaitSegmentCount(1);
+        Assert.assertEquals(1, segmentCount());
+        eventStore.close();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(4096));
+        Assert.assertEquals(0, eventStore.size());
+
+        // New events must not reuse sequence numbers referenced by surviving records
+        eventStore.addEvent(createTrackerPayload("url100"));
+        eventStore.close();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(4096));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url100"));
+    }
+
+    @Test
+    public void ignoreTruncatedRecordAtEndOfLog() throws IOException {
+        eventStore.addEvent(createTrackerPayload("url0"));
+        eventStore.addEvent(createTrackerPayload("url1"));
+        eventStore.close();
+
+        // Simulate a crash part way through writing the second record
+        File segment = directory.listFiles()[0];
+        byte[] content = Files.readAllBytes(segment.toPath());
+        // The first record follows the segment header
+        int secondRecord = 8 + 8 + readInt(content, 8);
+        content[secondRecord + 20] ^= 0xFF;
+        Files.write(segment.toPath(), content);
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0"));
+
+        eventStore.addEvent(createTrackerPayload("url2"));
+        eventStore.close();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0", "url2"));
+    }
+
+    @Test
+    public void doNotRestoreEventsFromBatchLargerThanASegment() throws IOException {
+        eventStore.close();
+        deleteSegments();
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(1024));
+        for (int i = 0; i < 200; i++) {
+            eventStore.addEvent(createTrackerPayload("url" + i));
+        }
+
+        // The batch record doesn't fit in one segment
+        BatchPayload batch = eventStore.getEventsBatch(200);
+        eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+        eventStore.close();
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(1024));
+        Assert.assertEquals(0, eventStore.size());
+    }
+
+    @Test
+    public void ignoreSendingResultAfterClosing() throws IOException {
+        eventStore.addEvent(createTrackerPayload("url0"));
+        BatchPayload batch = eventStore.getEventsBatch(1);
+        eventStore.close();
+
+        Assert.assertTrue(eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId()).isEmpty());
+        Assert.assertNull(eventStore.getEventsBatch(1));
+
+        // The batch was never committed, so its event is restored
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0"));
+    }
+
+    @Test
+    public void rejectReopeningWithDifferentSegmentSize() throws IOException {
+        eventStore.addEvent(createTrackerPayload("url0"));
+        eventStore.close();
+
+        Assert.assertThrows(IOException.class,
+                () -> openStore(new FileStoreConfiguration(directory).segmentSize(4096)));
+        Assert.assertEquals(64 * 1024, directory.listFiles()[0].length());
+
+        eventStore = openStore(new FileStoreConfiguration(directory).segmentSize(64 * 1024));
+        Assert.assertEquals(urls(eventStore.getAllEvents()), listOf("url0"));
+    }
+
+    private MappedFileEventStore openStore(FileStoreConfiguration storeConfig) throws IOException {
+        return new MappedFileEventStore(storeConfig);
+    }
+
+    private void deleteSegments() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private void awaitSegmentCount(int expected) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (segmentCount() != expected && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int segmentCount() {
+        return directory.listFiles((dir, name) -> name.endsWith(".log")).length;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static List<String> urls(List<TrackerPayload> payloads) {
+        List<String> urls = new ArrayList<>();
+        for (TrackerPayload payload : payloads) {
+            urls.add(payload.getMap().get("url"));
+        }
+        return urls;
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private TrackerPayload createTrackerPayload(String url) {
+        PageView pv = PageView.builder()
+                .pageUrl(url)
+                .pageTitle("Snowplow")
+                .referrer("https://www.google.com/")
+                .build();
+
+        return pv.getPayload();
+    }
+}
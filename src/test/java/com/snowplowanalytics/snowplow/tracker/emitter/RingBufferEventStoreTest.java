@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class RingBufferEventStoreTest {
+
+    private TrackerPayload trackerPayload;
+    private RingBufferEventStore eventStore;
+
+    @Before
+    public void setUp() {
+        trackerPayload = createTrackerPayload();
+        eventStore = new RingBufferEventStore();
+    }
+
+    @Test
+    public void correctlyAddAnEventToStore() {
+        boolean result = eventStore.addEvent(trackerPayload);
+
+        Assert.assertTrue(result);
+    }
+
+    @Test
+    public void getSize_returnsCorrectNumberOfStoredEvents() {
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+
+        Assert.assertEquals(2, eventStore.size());
+    }
+
+    @Test
+    public void getEventsFromStorage() {
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+
+        Assert.assertEquals(2, eventStore.getEventsBatch(2).getPayloads().size());
+        Assert.assertEquals(2, eventStore.size());
+    }
+
+    @Test
+    public void getEventsBatchLimitedByBytes() {
+        for (int i = 0; i < 5; i++) {
+            eventStore.addEvent(trackerPayload);
+        }
+        long eventBytes = trackerPayload.getByteSize() + Constants.POST_EVENT_OVERHEAD_BYTES;
+
+        // Not enough events or bytes for a full batch
+        Assert.assertNull(eventStore.getEventsBatch(10, eventBytes * 10));
+
+        // The third event doesn't fit
+        BatchPayload batch = eventStore.getEventsBatch(10, eventBytes * 3 - 1);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(3, eventStore.size());
+
+        // A single event larger than the limit is still returned
+        Assert.assertEquals(1, eventStore.getEventsBatch(10, 1).size());
+    }
+
+    @Test
+    public void doNotGetEventsIfFewerPresentThanAskedFor() throws NullPointerException {
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+
+        BatchPayload events = eventStore.getEventsBatch(3);
+
+        Assert.assertNull(events);
+    }
+
+    @Test
+    public void putEventsBackInBufferIfFailedToSend() {
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+        eventStore.getEventsBatch(2);
+
+        Assert.assertEquals(0, eventStore.size());
+
+        eventStore.cleanupAfterSendingAttempt(true, 1L);
+
+        Assert.assertEquals(2, eventStore.size());
+    }
+
+    @Test
+    public void doNotPutEventsBackInBufferIfSent() {
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+        eventStore.getEventsBatch(2);
+
+        Assert.assertEquals(0, eventStore.size());
+
+        eventStore.cleanupAfterSendingAttempt(false, 1L);
+
+        Assert.assertEquals(0, eventStore.size());
+    }
+
+    @Test
+    public void dropNewerEventsOnFailureWhenBufferFull() {
+        eventStore = new RingBufferEventStore(3);
+
+        TrackerPayload differentPayload = createTrackerPayload();
+
+        eventStore.addEvent(differentPayload);
+        eventStore.getEventsBatch(1);
+
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+        eventStore.addEvent(trackerPayload);
+
+        eventStore.cleanupAfterSendingAttempt(true, 1L);
+        Assert.assertEquals(3, eventStore.size());
+        Assert.assertTrue(eventStore.getAllEvents().contains(differentPayload));
+    }
+
+    @Test
+    public void returnFailedEventsBeforeNewerEvents() {
+        TrackerPayload olderPayload = createTrackerPayload();
+        TrackerPayload newerPayload = createTrackerPayload();
+
+        eventStore.addEvent(olderPayload);
+        BatchPayload batch = eventStore.getEventsBatch(1);
+        eventStore.addEvent(newerPayload);
+        eventStore.cleanupAfterSendingAttempt(true, batch.getBatchId());
+
+        List<TrackerPayload> payloads = eventStore.getEventsBatch(2).getPayloads();
+        Assert.assertSame(olderPayload, payloads.get(0));
+        Assert.assertSame(newerPayload, payloads.get(1));
+    }
+
+    @Test
+    public void doNotAddEventsBeyondCapacity() {
+        eventStore = new RingBufferEventStore(3);
+
+        Assert.assertTrue(eventStore.addEvent(trackerPayload));
+        Assert.assertTrue(eventStore.addEvent(trackerPayload));
+        Assert.assertTrue(eventStore.addEvent(trackerPayload));
+        Assert.assertFalse(eventStore.addEvent(trackerPayload));
+        Assert.assertEquals(3, eventStore.size());
+    }
+
+    @Test
+    public void wrapsAroundTheRing() {
+        eventStore = new RingBufferEventStore(4);
+
+        for (int i = 0; i < 20; i++) {
+            TrackerPayload payload = createTrackerPayload();
+            Assert.assertTrue(eventStore.addEvent(payload));
+            BatchPayload batch = eventStore.getEventsBatch(1);
+            Assert.assertSame(payload, batch.getPayloads().get(0));
+            eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+        }
+        Assert.assertEquals(0, eventStore.size());
+    }
+
+    @Test
+    public void acceptsEventsFromConcurrentProducers() throws InterruptedException {
+        final int producers = 8;
+        final int eventsPerProducer = 500;
+        eventStore = new RingBufferEventStore(producers * eventsPerProducer);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < eventsPerProducer; j++) {
+                    eventStore.addEvent(createTrackerPayload());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        Set<String> eventIds = new HashSet<>();
+        while (eventIds.size() < producers * eventsPerProducer) {
+            BatchPayload batch = eventStore.getEventsBatch(1);
+            if (batch != null) {
+                eventIds.add(batch.getPayloads().get(0).getEventId());
+                eventStore.cleanupAfterSendingAttempt(false, batch.getBatchId());
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(producers * eventsPerProducer, eventIds.size());
+        Assert.assertEquals(0, eventStore.size());
+    }
+
+    private TrackerPayload createTrackerPayload() {
+        PageView pv = PageView.builder()
+                .pageUrl("https://www.snowplowanalytics.com/")
+                .pageTitle("Snowplow")
+                .referrer("https://www.google.com/")
+                .build();
+
+        return pv.getPayload();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.emitter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+public class VirtualThreadsTest {
+
+    // Behaves like Thread.ofVirtual() on JDK 19 and 20 without --enable-preview
+    public static Object ofVirtual() {
+        throw new UnsupportedOperationException("Preview Features not enabled, need to run with --enable-preview");
+    }
+
+    public static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        throw new AssertionError("must not be called");
+    }
+
+    @Test
+    public void previewApiWithoutEnablePreviewIsNotAvailable() throws NoSuchMethodException {
+        Method ofVirtual = VirtualThreadsTest.class.getMethod("ofVirtual");
+        Method newThreadPerTaskExecutor = VirtualThreadsTest.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+        Assert.assertFalse(VirtualThreads.canCreateExecutor(ofVirtual, newThreadPerTaskExecutor));
+        Assert.assertThrows(UnsupportedOperationException.class,
+                () -> VirtualThreads.newExecutor(ofVirtual, newThreadPerTaskExecutor, "prefix-"));
+    }
+
+    @Test
+    public void missingApiIsNotAvailable() {
+        Assert.assertFalse(VirtualThreads.canCreateExecutor(null, null));
+    }
+
+    @Test
+    public void availableFromJava21() {
+        String version = System.getProperty("java.specification.version");
+        int feature = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+
+        Assert.assertEquals(feature >= 21, VirtualThreads.isAvailable());
+        if (!VirtualThreads.isAvailable()) {
+            Assert.assertThrows(UnsupportedOperationException.class,
+                    () -> VirtualThreads.newVirtualThreadPerTaskExecutor("prefix-"));
+        }
+    }
+}
@@ -22,8 +22,11 @@ import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.Okio;
 
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -53,6 +56,12 @@ public class HttpClientAdapterTest {
                         return new ApacheHttpClientAdapter(url, HttpClients.createDefault());
                     }
                 }},
+                {new HttpClientAdapterProvider() {
+                    @Override
+                    public HttpClientAdapter provide(String url) {
+                        return new ApacheHttpAsyncClientAdapter(url, HttpAsyncClients.createDefault());
+                    }
+                }},
                 {new HttpClientAdapterProvider() {
                     @Override
                     public HttpClientAdapter provide(String url) {
@@ -114,6 +123,38 @@ public class HttpClientAdapterTest {
         assertEquals("application/json; charset=utf-8", recordedRequest.getHeader("Content-Type"));
     }
 
+    @Test
+    public void postAsync_withSuccessfulStatusCode_isOk() throws Exception {
+        // Given
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200));
+
+        // When
+        int code = adapter.postAsync(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar")))
+                .get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(200, code);
+        assertEquals(1, mockWebServer.getRequestCount());
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        assertEquals("/com.snowplowanalytics.snowplow/tp2", recordedRequest.getPath());
+        assertEquals("{\"schema\":\"schema\",\"data\":{\"foo\":\"bar\"}}", recordedRequest.getBody().readUtf8());
+        assertEquals("POST", recordedRequest.getMethod());
+        assertEquals("application/json; charset=utf-8", recordedRequest.getHeader("Content-Type"));
+    }
+
+    @Test
+    public void postAsync_withConnectionFailure_completesWithError() throws Exception {
+        // Given
+        mockWebServer.shutdown();
+
+        // When
+        int code = adapter.postAsync(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar")))
+                .get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(-1, code);
+    }
+
     @Test
     public void testPostWithNullArgument() {
         Assert.assertThrows(NullPointerException.class, () -> adapter.post(null));
@@ -149,4 +190,31 @@ public class HttpClientAdapterTest {
 
         mockWebServer.shutdown();
     }
+
+    @Test
+    public void postWithGzipCompression() throws IOException, InterruptedException {
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectTimeout(1, TimeUnit.SECONDS)
+                .readTimeout(1, TimeUnit.SECONDS)
+                .writeTimeout(1, TimeUnit.SECONDS)
+                .build();
+        HttpClientAdapter[] adapters = {
+                new OkHttpClientAdapter(mockWebServer.url("/").toString(), httpClient, RequestCompression.GZIP),
+                new ApacheHttpClientAdapter(mockWebServer.url("/").toString(), HttpClients.createDefault(), RequestCompression.GZIP),
+                new ApacheHttpAsyncClientAdapter(mockWebServer.url("/").toString(), HttpAsyncClients.createDefault(), RequestCompression.GZIP)
+        };
+
+        for (HttpClientAdapter gzipAdapter : adapters) {
+            mockWebServer.enqueue(new MockResponse().setResponseCode(200));
+
+            gzipAdapter.post(new SelfDescribingJson("schema", Collections.singletonMap("foo", "bar")));
+
+            RecordedRequest recordedRequest = mockWebServer.takeRequest();
+            assertEquals("gzip", recordedRequest.getHeader("Content-Encoding"));
+            GzipSource body = new GzipSource(recordedRequest.getBody());
+            assertEquals("{\"schema\":\"schema\",\"data\":{\"foo\":\"bar\"}}", Okio.buffer(body).readUtf8());
+        }
+
+        mockWebServer.shutdown();
+    }
 }
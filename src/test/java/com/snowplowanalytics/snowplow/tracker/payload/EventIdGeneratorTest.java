@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+// Java
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+// JUnit
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventIdGeneratorTest {
+
+    private static void assertValidIds(EventIdGenerator generator, int version) {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            EventId eventId = generator.generate();
+            UUID uuid = UUID.fromString(eventId.toString());
+            assertEquals(uuid, eventId.toUUID());
+            assertEquals(version, uuid.version());
+            assertEquals(2, uuid.variant());
+            ids.add(eventId.toString());
+        }
+        assertEquals(1000, ids.size());
+    }
+
+    @Test
+    public void testEventIdIsFormattedAsUUID() {
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            assertEquals(uuid.toString(), EventId.fromUUID(uuid).toString());
+        }
+        assertEquals("00000000-0000-0000-0000-000000000000", new EventId(0, 0).toString());
+        assertEquals("ffffffff-ffff-ffff-ffff-ffffffffffff", new EventId(-1, -1).toString());
+    }
+
+    @Test
+    public void testRandomGeneratorsGenerateVersion4Ids() {
+        assertValidIds(new SecureRandomEventIdGenerator(), 4);
+        assertValidIds(new ThreadLocalRandomEventIdGenerator(), 4);
+    }
+
+    @Test
+    public void testTimeOrderedGeneratorGeneratesVersion7Ids() throws InterruptedException {
+        TimeOrderedEventIdGenerator generator = new TimeOrderedEventIdGenerator();
+        assertValidIds(generator, 7);
+
+        long before = System.currentTimeMillis();
+        EventId first = generator.generate();
+        Thread.sleep(2);
+        EventId second = generator.generate();
+
+        assertTrue((first.getMostSignificantBits() >>> 16) >= before);
+        assertTrue(first.toString().compareTo(second.toString()) < 0);
+    }
+
+    @Test
+    public void testPooledGeneratorRefillsPool() throws InterruptedException {
+        PooledEventIdGenerator generator = new PooledEventIdGenerator(new ThreadLocalRandomEventIdGenerator(), 100);
+        try {
+            assertValidIds(generator, 4);
+
+            // Taking IDs until the pool is below half its capacity starts a refill
+            while (generator.getPooledCount() >= 50) {
+                generator.generate();
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (generator.getPooledCount() < 100 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(100, generator.getPooledCount());
+        } finally {
+            generator.close();
+        }
+    }
+
+    @Test
+    public void testPooledGeneratorStillGeneratesIdsWhenClosed() {
+        PooledEventIdGenerator generator = new PooledEventIdGenerator(new ThreadLocalRandomEventIdGenerator(), 10);
+        generator.close();
+
+        assertValidIds(generator, 4);
+    }
+
+    @Test
+    public void testPoolSizeMustBePositive() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new PooledEventIdGenerator(0));
+        assertEquals("poolSize must be greater than 0", exception.getMessage());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+// Java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Jackson
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// JUnit
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlatJsonWriterTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static String allCharacters() {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 0x800; c++) {
+            sb.append(c);
+        }
+        // A surrogate pair and the last BMP character
+        sb.append("\uD83D\uDE00 \uFFFF");
+        return sb.toString();
+    }
+
+    private static TrackerPayload payload(String value) {
+        Map<String, String> pairs = new HashMap<>();
+        pairs.put("aid", value);
+        pairs.put("tv", "java-1.0.0");
+
+        TrackerPayload payload = new TrackerPayload();
+        payload.addPairs(new PayloadPairs(pairs));
+        payload.add("e", "ue");
+        payload.add("ue_px", value);
+        payload.add("custom \"key\"", value);
+        return payload;
+    }
+
+    @Test
+    public void testPayloadJSONMatchesJackson() throws IOException {
+        TrackerPayload payload = payload(allCharacters());
+        byte[] expected = objectMapper.writeValueAsBytes(new LinkedHashMap<>(payload.getMap()));
+
+        assertArrayEquals(expected, payload.toJSONBytes());
+        assertEquals(new String(expected, StandardCharsets.UTF_8), payload.toString());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        payload.writeTo(outputStream);
+        assertArrayEquals(expected, outputStream.toByteArray());
+    }
+
+    @Test
+    public void testLongValueIsEscapedWithoutWorstCaseBuffer() throws IOException {
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 1024 * 1024) {
+            value.append(allCharacters());
+        }
+        TrackerPayload payload = payload(value.toString());
+        byte[] expected = objectMapper.writeValueAsBytes(new LinkedHashMap<>(payload.getMap()));
+        assertArrayEquals(expected, payload.toJSONBytes());
+
+        // When writing to a stream, the buffer is flushed as it fills, so it never grows past its initial size
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("schema", value.toString());
+        final int[] largestWrite = {0};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                largestWrite[0] = Math.max(largestWrite[0], len);
+                super.write(b, off, len);
+            }
+        };
+        FlatJsonWriter.write(map, outputStream);
+        assertArrayEquals(objectMapper.writeValueAsBytes(map), outputStream.toByteArray());
+        assertTrue(largestWrite[0] <= 8192);
+    }
+
+    @Test
+    public void testBatchJSONMatchesJackson() throws IOException {
+        List<Map<String, String>> payloadMaps = new ArrayList<>();
+        List<Map<String, String>> copies = new ArrayList<>();
+        // Larger than the writer's buffer, so it is flushed to the stream part way through
+        for (int i = 0; i < 50; i++) {
+            TrackerPayload payload = payload("value " + i + " \u00e9 \uD83D\uDE00 \"quoted\"");
+            payloadMaps.add(payload.getMap());
+            copies.add(new LinkedHashMap<>(payload.getMap()));
+        }
+        SelfDescribingJson batch = new SelfDescribingJson("iglu:com.snowplowanalytics.snowplow/payload_data/jsonschema/1-0-4", payloadMaps);
+        Map<String, Object> copy = new LinkedHashMap<>();
+        copy.put("schema", "iglu:com.snowplowanalytics.snowplow/payload_data/jsonschema/1-0-4");
+        copy.put("data", copies);
+        byte[] expected = objectMapper.writeValueAsBytes(copy);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        batch.writeTo(outputStream);
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+        assertArrayEquals(expected, outputStream.toByteArray());
+        assertEquals(new String(expected, StandardCharsets.UTF_8), batch.toString());
+    }
+
+    @Test
+    public void testOtherDataIsWrittenByJackson() throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("number", 1);
+        data.put("list", Arrays.asList("a", "b"));
+        SelfDescribingJson json = new SelfDescribingJson("schema", data);
+
+        assertFalse(FlatJsonWriter.canWrite(json.getMap()));
+        assertEquals("{\"schema\":\"schema\",\"data\":{\"number\":1,\"list\":[\"a\",\"b\"]}}", json.toString());
+    }
+
+    @Test
+    public void testSentTimestampIsSplicedIntoEncodedPayload() throws IOException {
+        TrackerPayload payload = payload("value");
+        payload.add("stm", "1");
+        assertEquals(new String(objectMapper.writeValueAsBytes(new LinkedHashMap<>(payload.getMap())), StandardCharsets.UTF_8), payload.toString());
+
+        // A new stm, as when a batch is resent, is written with the pairs encoded before
+        payload.add("stm", "2");
+        assertEquals(new String(objectMapper.writeValueAsBytes(new LinkedHashMap<>(payload.getMap())), StandardCharsets.UTF_8), payload.toString());
+
+        // Changing any other pair encodes the payload again
+        payload.add("aid", "changed");
+        payload.add("other", "added");
+        assertEquals(new String(objectMapper.writeValueAsBytes(new LinkedHashMap<>(payload.getMap())), StandardCharsets.UTF_8), payload.toString());
+    }
+
+    @Test
+    public void testSentTimestampIsSplicedAsFirstOrOnlyPair() {
+        TrackerPayload payload = new TrackerPayload();
+        payload.getMap().remove("e");
+        payload.getMap().remove("eid");
+        payload.getMap().remove("dtm");
+        payload.add("stm", "1");
+        assertEquals("{\"stm\":\"1\"}", payload.toString());
+
+        payload.add("tv", "java-1.0.0");
+        assertEquals("{\"stm\":\"1\",\"tv\":\"java-1.0.0\"}", payload.toString());
+        payload.add("stm", "2");
+        assertEquals("{\"stm\":\"2\",\"tv\":\"java-1.0.0\"}", payload.toString());
+        payload.getMap().remove("stm");
+        assertEquals("{\"tv\":\"java-1.0.0\"}", payload.toString());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.payload;
+
+// Java
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// JUnit
+import org.junit.Test;
+
+// This library
+import com.snowplowanalytics.snowplow.tracker.constants.Constants;
+import com.snowplowanalytics.snowplow.tracker.constants.Parameter;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadSizeProfiler.Contributor;
+import com.snowplowanalytics.snowplow.tracker.payload.PayloadSizeProfiler.Kind;
+
+import static org.junit.Assert.*;
+
+public class PayloadSizeProfilerTest {
+
+    private static final String EVENT_SCHEMA = "iglu:com.acme/event/jsonschema/1-0-0";
+    private static final String SMALL_ENTITY_SCHEMA = "iglu:com.acme/small/jsonschema/1-0-0";
+    private static final String LARGE_ENTITY_SCHEMA = "iglu:com.acme/large/jsonschema/1-0-0";
+
+    private static TrackerPayload createPayload(boolean base64Encoded) {
+        TrackerPayload payload = new TrackerPayload();
+        payload.add(Parameter.EVENT, Constants.EVENT_SELF_DESCRIBING);
+        payload.add(Parameter.APP_ID, "app");
+
+        SelfDescribingJson eventData = new SelfDescribingJson(EVENT_SCHEMA, Collections.singletonMap("name", "value"));
+        SelfDescribingJson envelope = new SelfDescribingJson(Constants.SCHEMA_SELF_DESCRIBING_EVENT, eventData.getMap());
+        payload.addMap(envelope.getMap(), base64Encoded, Parameter.SELF_DESCRIBING_ENCODED, Parameter.SELF_DESCRIBING);
+
+        StringBuilder largeValue = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            largeValue.append("0123456789");
+        }
+        List<Map<String, Object>> entities = new ArrayList<>();
+        entities.add(new SelfDescribingJson(SMALL_ENTITY_SCHEMA, Collections.singletonMap("a", "b")).getMap());
+        entities.add(new SelfDescribingJson(LARGE_ENTITY_SCHEMA, Collections.singletonMap("a", largeValue.toString())).getMap());
+        payload.addMap(new SelfDescribingJson(Constants.SCHEMA_CONTEXTS, entities).getMap(),
+                base64Encoded, Parameter.CONTEXT_ENCODED, Parameter.CONTEXT);
+        return payload;
+    }
+
+    private static long bytesOf(List<Contributor> contributors, String name) {
+        for (Contributor contributor : contributors) {
+            if (contributor.getName().equals(name)) {
+                return contributor.getTotalBytes();
+            }
+        }
+        throw new AssertionError("No contributor " + name);
+    }
+
+    @Test
+    public void testAttributesBytesToParametersAndSchemas() {
+        for (boolean base64Encoded : new boolean[]{true, false}) {
+            PayloadSizeProfiler profiler = new PayloadSizeProfiler(1, 0);
+            TrackerPayload payload = createPayload(base64Encoded);
+            profiler.sample(payload);
+            profiler.sample(payload);
+
+            assertEquals(2, profiler.getSampledEvents());
+
+            List<Contributor> parameters = profiler.getTopContributors(Kind.PARAMETER, 10);
+            // The eid and dtm are also parameters
+            assertEquals(6, parameters.size());
+            String contextParameter = base64Encoded ? Parameter.CONTEXT_ENCODED : Parameter.CONTEXT;
+            assertEquals(contextParameter, parameters.get(0).getName());
+            // Each pair is counted with a comma, so they add up to the payload apart from one brace
+            long pairBytes = 0;
+            for (Contributor parameter : parameters) {
+                assertEquals(2, parameter.getOccurrences());
+                pairBytes += parameter.getBytesPerEvent();
+            }
+            assertEquals(payload.getByteSize(), pairBytes + 1);
+
+            List<Contributor> events = profiler.getTopContributors(Kind.EVENT_SCHEMA, 10);
+            assertEquals(1, events.size());
+            assertEquals(EVENT_SCHEMA, events.get(0).getName());
+            assertEquals(Kind.EVENT_SCHEMA, events.get(0).getKind());
+
+            List<Contributor> entities = profiler.getTopContributors(Kind.CONTEXT_SCHEMA, 10);
+            assertEquals(2, entities.size());
+            assertEquals(LARGE_ENTITY_SCHEMA, entities.get(0).getName());
+            assertEquals(SMALL_ENTITY_SCHEMA, entities.get(1).getName());
+            // The entities take up nearly all of the context parameter
+            long contextBytes = bytesOf(parameters, contextParameter);
+            long entityBytes = bytesOf(entities, LARGE_ENTITY_SCHEMA) + bytesOf(entities, SMALL_ENTITY_SCHEMA);
+            assertTrue(entityBytes < contextBytes);
+            assertTrue(entityBytes > contextBytes * 9 / 10);
+
+            assertEquals(1, profiler.getTopContributors(Kind.CONTEXT_SCHEMA, 1).size());
+        }
+    }
+
+    @Test
+    public void testSamplingRate() {
+        PayloadSizeProfiler profiler = new PayloadSizeProfiler(0.1, 0);
+        TrackerPayload payload = createPayload(true);
+        for (int i = 0; i < 10000; i++) {
+            profiler.sample(payload);
+        }
+
+        long sampled = profiler.getSampledEvents();
+        assertTrue(sampled > 800 && sampled < 1200);
+    }
+
+    @Test
+    public void testResetAndReport() {
+        PayloadSizeProfiler profiler = new PayloadSizeProfiler(1, 0);
+        profiler.sample(createPayload(true));
+
+        String report = profiler.report();
+        assertTrue(report.startsWith("Payload size profile of 1 sampled events"));
+        assertTrue(report.contains(LARGE_ENTITY_SCHEMA + "="));
+
+        profiler.reset();
+        assertEquals(0, profiler.getSampledEvents());
+        assertTrue(profiler.getTopContributors(Kind.PARAMETER, 10).isEmpty());
+    }
+
+    @Test
+    public void testLimitsTheNumberOfContributors() {
+        PayloadSizeProfiler profiler = new PayloadSizeProfiler(1, 0);
+        TrackerPayload payload = new TrackerPayload();
+        for (int i = 0; i < PayloadSizeProfiler.MAX_CONTRIBUTORS + 10; i++) {
+            payload.add("key" + i, "value");
+        }
+        profiler.sample(payload);
+
+        List<Contributor> parameters = profiler.getTopContributors(Kind.PARAMETER, Integer.MAX_VALUE);
+        assertEquals(PayloadSizeProfiler.MAX_CONTRIBUTORS + 1, parameters.size());
+        for (Contributor parameter : parameters) {
+            if (parameter.getName().equals(PayloadSizeProfiler.OTHER)) {
+                assertEquals(payload.getMap().size() - PayloadSizeProfiler.MAX_CONTRIBUTORS, parameter.getOccurrences());
+            }
+        }
+    }
+
+    @Test
+    public void testSamplingRateMustBePositive() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> new PayloadSizeProfiler(0, 60));
+        assertEquals("samplingRate must be greater than 0 and at most 1", exception.getMessage());
+    }
+}
@@ -13,6 +13,9 @@
 package com.snowplowanalytics.snowplow.tracker.payload;
 
 // Java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -67,4 +70,16 @@ public class SelfDescribingJsonTest {
         assertNotNull(sdj);
         assertEquals(expected, sdjString);
     }
+
+    @Test
+    public void testWriteToMatchesToString() throws IOException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("key", "välue");
+        SelfDescribingJson sdj = new SelfDescribingJson("schema_string", data);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        sdj.writeTo(outputStream);
+
+        assertEquals(sdj.toString(), new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
 }
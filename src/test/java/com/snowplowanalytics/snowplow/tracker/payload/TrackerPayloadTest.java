@@ -14,9 +14,13 @@ package com.snowplowanalytics.snowplow.tracker.payload;
 
 // Java
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
+// This library
+import com.snowplowanalytics.snowplow.tracker.Utils;
+
 // JUnit
 import org.junit.Test;
 
@@ -40,6 +44,74 @@ public class TrackerPayloadTest {
         assertEquals(payload.getEventId(), payload.getMap().get("eid"));
     }
 
+    @Test
+    public void testGenerateEventId() {
+        EventId eventId = new EventId(1, 2);
+        TrackerPayload payload = new TrackerPayload();
+        payload.generateEventId(() -> eventId);
+
+        assertEquals(eventId.toString(), payload.getEventId());
+        assertEquals(eventId.toString(), payload.getMap().get("eid"));
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+
+        // Once generated, the eventId doesn't change
+        TrackerPayload generated = new TrackerPayload();
+        String generatedEventId = generated.getEventId();
+        generated.generateEventId(() -> eventId);
+        assertEquals(generatedEventId, generated.getMap().get("eid"));
+    }
+
+    @Test
+    public void testDeferredPayloadBuildsPairsWhenFirstNeeded() {
+        EventId eventId = new EventId(1, 2);
+        int[] calls = new int[1];
+        TrackerPayload payload = TrackerPayload.deferred(() -> eventId, () -> {
+            calls[0]++;
+            TrackerPayload pairs = new TrackerPayload();
+            pairs.add("e", "pv");
+            pairs.add("custom", "value");
+            return pairs;
+        });
+
+        assertTrue(payload.isDeferred());
+        assertEquals(eventId.toString(), payload.getEventId());
+        assertNotNull(payload.getDeviceCreatedTimestamp());
+        assertEquals(0, calls[0]);
+
+        assertEquals("pv", payload.getMap().get("e"));
+        assertFalse(payload.isDeferred());
+        assertEquals(1, calls[0]);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("e", "pv");
+        expected.put("custom", "value");
+        expected.put("eid", eventId.toString());
+        expected.put("dtm", Long.toString(payload.getDeviceCreatedTimestamp()));
+        assertEquals(expected, payload.getMap());
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void testDeferredPayloadIsFailedIfPairsCannotBeBuilt() {
+        EventId eventId = new EventId(1, 2);
+        TrackerPayload payload = TrackerPayload.deferred(() -> eventId, () -> {
+            throw new IllegalStateException("broken event");
+        });
+
+        assertFalse(payload.isFailed());
+        assertFalse(payload.build());
+        assertTrue(payload.isFailed());
+        assertFalse(payload.isDeferred());
+
+        // Only the eventId and deviceCreatedTimestamp are left
+        Map<String, String> expected = new HashMap<>();
+        expected.put("eid", eventId.toString());
+        expected.put("dtm", Long.toString(payload.getDeviceCreatedTimestamp()));
+        assertEquals(expected, payload.getMap());
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+    }
+
     @Test
     public void testGetDeviceCreatedTimestamp() {
         long currentTime = System.currentTimeMillis();
@@ -128,4 +200,98 @@ public class TrackerPayloadTest {
         assertTrue(payload.getMap().containsKey("non_encoded"));
         assertEquals("{\"key\":\"value\"}", payload.getMap().get("non_encoded"));
     }
+
+    @Test
+    public void testGetByteSizeMatchesSerializedPayload() {
+        TrackerPayload payload = new TrackerPayload();
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+
+        payload.add("url", "https://www.example.com/?q=\"quoted\"");
+        payload.add("page", "Café ☕ \uD83D\uDE00");
+        payload.add("ignored", "");
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+
+        // Replacing a value adjusts the size
+        payload.add("page", "short");
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+    }
+
+    @Test
+    public void testGetMapIsAViewOfKnownAndOtherParameters() {
+        TrackerPayload payload = new TrackerPayload();
+        payload.add("e", "pv");
+        payload.add("custom", "value");
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("eid", payload.getEventId());
+        expected.put("dtm", Long.toString(payload.getDeviceCreatedTimestamp()));
+        expected.put("e", "pv");
+        expected.put("custom", "value");
+        assertEquals(expected, payload.getMap());
+        assertEquals(expected, new HashMap<>(payload.getMap()));
+
+        // Changes to the view are applied to the payload
+        payload.getMap().put("url", "https://www.example.com");
+        payload.getMap().remove("custom");
+        payload.getMap().entrySet().removeIf(entry -> entry.getKey().equals("e"));
+        assertEquals(3, payload.getMap().size());
+        assertEquals("https://www.example.com", payload.getMap().get("url"));
+        assertFalse(payload.getMap().containsKey("custom"));
+        assertFalse(payload.getMap().containsKey("e"));
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+    }
+
+    @Test
+    public void testAddPairsMatchesAddMap() {
+        Map<String, String> pairs = new HashMap<>();
+        pairs.put("uid", "user \"1\"");
+        pairs.put("tz", "Europe/London");
+        pairs.put("custom", "value");
+        pairs.put("empty", "");
+
+        TrackerPayload expected = new TrackerPayload();
+        expected.add("uid", "previous");
+        expected.addMap(pairs);
+        TrackerPayload payload = new TrackerPayload();
+        payload.add("uid", "previous");
+        payload.addPairs(new PayloadPairs(pairs));
+
+        expected.getMap().remove("eid");
+        expected.getMap().remove("dtm");
+        payload.getMap().remove("eid");
+        payload.getMap().remove("dtm");
+        assertEquals(expected.getMap(), payload.getMap());
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+    }
+
+    @Test
+    public void testPreEncodedPairsSerializeAsPlainMap() {
+        Map<String, String> pairs = new HashMap<>();
+        pairs.put("aid", "app \"1\" é&=");
+        pairs.put("tv", "java-1.0.0");
+        pairs.put("custom", "a b");
+
+        TrackerPayload payload = new TrackerPayload();
+        payload.addPairs(new PayloadPairs(pairs));
+        payload.add("e", "se");
+        payload.add("other", "x/y");
+
+        // A copy with the same iteration order is serialized by Jackson's generic Map serializer
+        Map<String, String> copy = new LinkedHashMap<>(payload.getMap());
+        assertEquals(Utils.mapToJSONString(copy), payload.toString());
+        assertEquals(Utils.getUTF8Length(payload.toString()), payload.getByteSize());
+    }
+
+    @Test
+    public void testToQueryStringMatchesMapToQueryString() {
+        Map<String, String> pairs = new HashMap<>();
+        pairs.put("aid", "app 1 é&=");
+        pairs.put("custom key", "a b");
+
+        TrackerPayload payload = new TrackerPayload();
+        payload.addPairs(new PayloadPairs(pairs));
+        payload.add("e", "se");
+
+        assertEquals(Utils.mapToQueryString(payload.getMap()), payload.toQueryString());
+    }
 }
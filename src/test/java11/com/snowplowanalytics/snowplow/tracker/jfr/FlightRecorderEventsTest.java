@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014-2022 Snowplow Analytics Ltd. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+package com.snowplowanalytics.snowplow.tracker.jfr;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import com.snowplowanalytics.snowplow.tracker.Tracker;
+import com.snowplowanalytics.snowplow.tracker.configuration.EmitterConfiguration;
+import com.snowplowanalytics.snowplow.tracker.configuration.NetworkConfiguration;
+import com.snowplowanalytics.snowplow.tracker.configuration.TrackerConfiguration;
+import com.snowplowanalytics.snowplow.tracker.emitter.BatchEmitter;
+import com.snowplowanalytics.snowplow.tracker.events.PageView;
+import com.snowplowanalytics.snowplow.tracker.http.HttpClientAdapter;
+import com.snowplowanalytics.snowplow.tracker.payload.SelfDescribingJson;
+import com.snowplowanalytics.snowplow.tracker.payload.TrackerPayload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderEventsTest {
+
+    private static final String TRACK = "com.snowplowanalytics.snowplow.Track";
+    private static final String COLLECTOR_REQUEST = "com.snowplowanalytics.snowplow.CollectorRequest";
+    private static final String RETRY = "com.snowplowanalytics.snowplow.Retry";
+
+    // Fails every request with a 500, so that the events are retried
+    static class FailingHttpClientAdapter implements HttpClientAdapter {
+        @Override
+        public int post(SelfDescribingJson payload) {
+            return 500;
+        }
+
+        @Override
+        public int get(TrackerPayload payload) {
+            return 500;
+        }
+
+        @Override
+        public String getUrl() {
+            return null;
+        }
+
+        @Override
+        public Object getHttpClient() {
+            return null;
+        }
+    }
+
+    @Test
+    public void recordsTrackCollectorRequestAndRetryEvents() throws Exception {
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("snowplow", ".jfr");
+        try (Recording recording = new Recording()) {
+            // The Track event is usually only recorded when it takes longer than 1 ms
+            recording.enable(TRACK).withThreshold(Duration.ZERO);
+            recording.enable(COLLECTOR_REQUEST);
+            recording.enable(RETRY);
+            recording.start();
+
+            BatchEmitter emitter = new BatchEmitter(new NetworkConfiguration(new FailingHttpClientAdapter()),
+                    new EmitterConfiguration().batchSize(1));
+            Tracker tracker = new Tracker(new TrackerConfiguration("namespace", "appId"), emitter);
+            tracker.track(PageView.builder().pageUrl("https://example.com").build());
+            Thread.sleep(500);
+            emitter.close();
+
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        RecordedEvent track = find(events, TRACK);
+        assertEquals(PageView.class.getName(), track.getString("eventType"));
+        assertEquals(1, track.getInt("payloads"));
+
+        RecordedEvent request = find(events, COLLECTOR_REQUEST);
+        assertEquals(1, request.getInt("events"));
+        assertEquals(500, request.getInt("statusCode"));
+
+        RecordedEvent retry = find(events, RETRY);
+        assertEquals(1, retry.getInt("events"));
+        assertEquals("REJECTED_BY_COLLECTOR", retry.getString("failureType"));
+        assertEquals(500, retry.getInt("statusCode"));
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                found.add(event);
+            }
+        }
+        assertTrue("No " + name + " event was recorded", !found.isEmpty());
+        return found.get(0);
+    }
+}